@@ -0,0 +1,562 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+
+// scores a position that the search does not look past, from the point of
+// view of the player to move. Scores must stay within +/- 5000, well short
+// of the WIN - MAX_PLY of the slowest proven result, so they are never
+// mistaken for one
+interface Evaluator {
+
+  // score of the position for the player to move
+  int evaluate(GameEngine game);
+
+  // an evaluator scoring the same way for one more search, which may run
+  // at the same time as this evaluator's: the evaluator itself if it keeps
+  // no state between positions
+  default Evaluator forNewGame() {
+    return this;
+  }
+}
+
+// an evaluator that calls every unsolved position even, so a depth limited
+// search only tells proven wins and losses apart
+class NeutralEvaluator implements Evaluator {
+
+  // every unsolved position is even
+  public int evaluate(GameEngine game) {
+    return 0;
+  }
+}
+
+// random keys for Zobrist hashing of positions on one board size. Only the
+// cells that initializeGame() leaves empty can change hands, so only they
+// get keys; the hash of a position is the XOR of the key of every claimed
+// cell for its owner, plus a key when player2 is to move. The lattice
+// leaves empty the cells whose column and row add up to an even number
+class ZobristKeys {
+  static final long SEED = 0x5EED;
+
+  int size;
+  long[] player1;
+  long[] player2;
+  long player2ToMove;
+
+  // constructor for keys drawn from a fixed seed, so hashes are repeatable
+  ZobristKeys(int size, long seed) {
+    SplittableRandom random = new SplittableRandom(seed);
+    this.size = size;
+    this.player1 = new long[size * size];
+    this.player2 = new long[size * size];
+    for (int row = 1; row < size - 1; row++) {
+      for (int col = 2 - row % 2; col < size - 1; col += 2) {
+        this.player1[row * size + col] = random.nextLong();
+        this.player2[row * size + col] = random.nextLong();
+      }
+    }
+    this.player2ToMove = random.nextLong();
+  }
+
+  // the hash of the game's position
+  long hash(GameEngine game) {
+    long hash = game.turn ? 0 : this.player2ToMove;
+    for (int row = 1; row < this.size - 1; row++) {
+      for (int col = 2 - row % 2; col < this.size - 1; col += 2) {
+        hash ^= this.key(row * this.size + col, game.board.ownerAt(col, row));
+      }
+    }
+    return hash;
+  }
+
+  // the key of the numbered cell when it belongs to the owner
+  long key(int move, int owner) {
+    if (owner == BoardState.PLAYER1) {
+      return this.player1[move];
+    }
+    else if (owner == BoardState.PLAYER2) {
+      return this.player2[move];
+    }
+    else {
+      return 0;
+    }
+  }
+}
+
+// a fixed-size transposition table that any number of threads may share
+// without locks. Each bucket has a depth-preferred slot, replaced only by
+// deeper results or results from a newer search, and an always-replaced
+// slot. A slot stores its data and (key XOR data), so a slot torn by a
+// racing write fails the key check and reads as a miss instead of as
+// another position's result
+class TranspositionTable {
+
+  // kinds of stored scores
+  static final int EXACT = 0;
+  static final int LOWER = 1;
+  static final int UPPER = 2;
+
+  long[] keys;
+  long[] data;
+  int mask;
+  int generation;
+
+  // constructor for a table with at least the given number of slots
+  // (rounded up to a power of two)
+  TranspositionTable(int slots) {
+    int capacity = Integer.highestOneBit(Math.max(2, slots - 1)) << 1;
+    this.keys = new long[capacity];
+    this.data = new long[capacity];
+    this.mask = capacity / 2 - 1;
+    this.generation = 1;
+  }
+
+  // EFFECT: forgets every stored result
+  void clear() {
+    Arrays.fill(this.keys, 0);
+    Arrays.fill(this.data, 0);
+  }
+
+  // EFFECT: starts a new search, so older results become replaceable
+  void newSearch() {
+    this.generation = (this.generation + 1) & 0xFF;
+  }
+
+  // packs a result: score in bits 0-15, kind 16-17, depth 18-25,
+  // generation 26-33 and move + 1 from bit 34
+  long pack(int score, int kind, int depth, int move) {
+    return (score & 0xFFFFL) | ((long) kind << 16) | ((long) Math.min(depth, 255) << 18)
+        | ((long) this.generation << 26) | ((long) (move + 1) << 34);
+  }
+
+  // the stored data for the hash, or 0 if the position is not stored
+  long probe(long hash) {
+    int bucket = ((int) hash & this.mask) << 1;
+    for (int slot = bucket; slot < bucket + 2; slot++) {
+      long entry = this.data[slot];
+      if (entry != 0 && (this.keys[slot] ^ entry) == hash) {
+        return entry;
+      }
+    }
+    return 0;
+  }
+
+  // EFFECT: stores a result for the hash
+  void store(long hash, int score, int kind, int depth, int move) {
+    int bucket = ((int) hash & this.mask) << 1;
+    long entry = this.pack(score, kind, depth, move);
+    long old = this.data[bucket];
+    int slot = bucket + 1;
+    if (old == 0 || (this.keys[bucket] ^ old) == hash || depthOf(old) <= depth
+        || generationOf(old) != this.generation) {
+      slot = bucket;
+    }
+    this.data[slot] = entry;
+    this.keys[slot] = hash ^ entry;
+  }
+
+  // the parts of a stored entry
+  static int scoreOf(long entry) {
+    return (short) (entry & 0xFFFF);
+  }
+
+  static int kindOf(long entry) {
+    return (int) (entry >>> 16) & 0x3;
+  }
+
+  static int depthOf(long entry) {
+    return (int) (entry >>> 18) & 0xFF;
+  }
+
+  static int generationOf(long entry) {
+    return (int) (entry >>> 26) & 0xFF;
+  }
+
+  static int moveOf(long entry) {
+    return (int) (entry >>> 34) - 1;
+  }
+}
+
+// a computer player and solver using negamax alpha-beta search with
+// iterative deepening, a shared transposition table and killer-move
+// ordering. Proven wins score WIN minus the number of moves to reach them,
+// so the search prefers the fastest win and the slowest loss. Searches
+// stop short of MAX_PLY moves, so a proven score is always more than
+// WIN - MAX_PLY in size, and no evaluation comes near it. With an
+// opening book for the board size, a position in the book is played from
+// it without searching. Run it alone to solve or analyse the opening
+// position of a board:
+//   java AlphaBetaPlayer [size] [millis] [book]
+class AlphaBetaPlayer implements Strategy, Cancellable {
+  static final int WIN = 10000;
+  static final int INFINITY = 30000;
+  static final int MAX_PLY = 1000;
+
+  int maxDepth;
+  long millis;
+  Evaluator evaluator;
+  TranspositionTable table;
+  ZobristKeys keys;
+  int[] order;
+  int[] rootOrder;
+  int[][] killers;
+  OpeningBook book;
+
+  // search state and counters
+  int rootMove;
+  long deadline;
+  boolean aborted;
+
+  // set from another thread to stop searching early
+  volatile boolean cancelled;
+  long nodes;
+  long probes;
+  long hits;
+  long lastNanos;
+  int lastDepth;
+  int lastScore;
+
+  // constructor for a search of at most the given depth and time (a zero
+  // limit means no limit) using a table with the given number of slots
+  AlphaBetaPlayer(int maxDepth, long millis, Evaluator evaluator, int tableSlots) {
+    this.maxDepth = maxDepth <= 0 ? Integer.MAX_VALUE : maxDepth;
+    this.millis = millis;
+    this.evaluator = evaluator;
+    this.table = new TranspositionTable(tableSlots);
+    this.keys = null;
+    this.book = null;
+  }
+
+  public static void main(String[] args) throws IOException {
+    int size = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+    long millis = args.length > 1 ? Long.parseLong(args[1]) : 0;
+
+    Evaluator evaluator = millis > 0 ? new ResistanceEvaluator(1e-3) : new NeutralEvaluator();
+    AlphaBetaPlayer player = new AlphaBetaPlayer(0, millis, evaluator, 1 << 22);
+    if (args.length > 2) {
+      player.book = new OpeningBook(Paths.get(args[2]));
+    }
+    int move = player.chooseMove(new GameEngine(size), new SplittableRandom(42));
+    System.out.println("move " + move + ": " + player.report());
+  }
+
+  // EFFECT: stops the search in progress at its next check, keeping the
+  // best move of the deepest search finished
+  public void cancel() {
+    this.cancelled = true;
+  }
+
+  // EFFECT: lets searches run to their depth and time limits again
+  public void resume() {
+    this.cancelled = false;
+  }
+
+  // searches the game and returns the best move found
+  public int chooseMove(GameEngine game, SplittableRandom random) {
+    return this.search(game);
+  }
+
+  // a player searching the same way with a table, killers and counters of
+  // its own, sharing the opening book
+  public Strategy forNewGame() {
+    AlphaBetaPlayer player = new AlphaBetaPlayer(this.maxDepth, this.millis,
+        this.evaluator.forNewGame(), this.table.keys.length);
+    player.book = this.book;
+    return player;
+  }
+
+  // the best move for the player to move, searching deeper until the depth
+  // or time limit is reached or the game is solved
+  int search(GameEngine game) {
+    if (game.isOver()) {
+      throw new IllegalStateException("game is over");
+    }
+    this.prepare(game.size());
+
+    long start = System.nanoTime();
+    this.deadline = this.millis > 0 ? start + this.millis * 1000000 : Long.MAX_VALUE;
+    this.aborted = false;
+    this.nodes = 0;
+    this.probes = 0;
+    this.hits = 0;
+
+    // plays straight from the book when it knows the position
+    long hash = this.keys.hash(game);
+    int known = this.probeBook(hash);
+    if (known != OpeningBook.MISSING) {
+      this.lastDepth = 0;
+      this.lastScore = OpeningBook.scoreOf(known);
+      this.lastNanos = System.nanoTime() - start;
+      return OpeningBook.moveOf(known);
+    }
+
+    this.orderRoot(game);
+    this.table.newSearch();
+    for (int[] slots : this.killers) {
+      Arrays.fill(slots, -1);
+    }
+
+    // searches a copy of the game by making and unmaking moves on it
+    GameEngine work = game.copy();
+    work.keepHistory();
+    int best = game.open[0];
+    int limit = Math.min(Math.min(this.maxDepth, game.openCount), MAX_PLY - 1);
+    for (int depth = 1; depth <= limit; depth++) {
+      int score = this.negamax(work, hash, depth, -INFINITY, INFINITY, 0);
+      if (this.aborted) {
+        break;
+      }
+
+      best = this.rootMove;
+      this.lastDepth = depth;
+      this.lastScore = score;
+
+      // a proven result will not change with more depth
+      if (isProven(score)) {
+        break;
+      }
+    }
+
+    this.lastNanos = System.nanoTime() - start;
+    return best;
+  }
+
+  // is the score a proven win or loss rather than an evaluation?
+  static boolean isProven(int score) {
+    return Math.abs(score) > WIN - MAX_PLY;
+  }
+
+  // the exact result of the game for the player to move: positive if that
+  // player wins, negative if it loses, with the number of moves left to the
+  // end given by WIN - |score|. Games with MAX_PLY or more open cells are
+  // only searched that deep, so their result may not be exact
+  int solve(GameEngine game) {
+    int depth = this.maxDepth;
+    this.maxDepth = Integer.MAX_VALUE;
+    long time = this.millis;
+    this.millis = 0;
+    this.search(game);
+    this.maxDepth = depth;
+    this.millis = time;
+    return this.lastScore;
+  }
+
+  // EFFECT: sets up the keys, move order and killer slots for the board
+  // size, and empties the table of another size's positions (the opening
+  // positions of every size hash to 0, so they would find each other's
+  // moves)
+  void prepare(int size) {
+    if (this.keys != null && this.keys.size == size) {
+      return;
+    }
+    if (this.keys != null) {
+      this.table.clear();
+    }
+    this.keys = new ZobristKeys(size, ZobristKeys.SEED);
+    this.killers = new int[size * size + 1][2];
+
+    // tries cells near the middle of the board first, sorting each cell
+    // number by its distance from the middle
+    int middle = size / 2;
+    long[] cells = new long[size * size];
+    for (int i = 0; i < cells.length; i++) {
+      long distance = Math.abs(i / size - middle) + Math.abs(i % size - middle);
+      cells[i] = (distance << 32) | i;
+    }
+    Arrays.sort(cells);
+    this.order = new int[cells.length];
+    for (int i = 0; i < cells.length; i++) {
+      this.order[i] = (int) cells[i];
+    }
+  }
+
+  // EFFECT: orders the moves of the root to try the cells of the
+  // opponent's minimum cut first, then the cells of the player's own, then
+  // the rest: claiming a cut cell brings the opponent closer to being
+  // blocked or keeps the player from it, so these are the moves most
+  // likely to be best
+  void orderRoot(GameEngine game) {
+    CutTracker cuts = new CutTracker(game.board);
+    int player = game.currentPlayer();
+    int opponent = player == BoardState.PLAYER1 ? BoardState.PLAYER2 : BoardState.PLAYER1;
+    boolean[] first = new boolean[this.order.length];
+    this.rootOrder = new int[this.order.length];
+    int count = 0;
+    for (int move : cuts.cut(opponent)) {
+      first[move] = true;
+      this.rootOrder[count] = move;
+      count++;
+    }
+    for (int move : cuts.cut(player)) {
+      if (!first[move]) {
+        first[move] = true;
+        this.rootOrder[count] = move;
+        count++;
+      }
+    }
+    for (int move : this.order) {
+      if (!first[move]) {
+        this.rootOrder[count] = move;
+        count++;
+      }
+    }
+  }
+
+  // the negamax value of the position for the player to move, searched to
+  // the given depth within the (alpha, beta) window
+  int negamax(GameEngine game, long hash, int depth, int alpha, int beta, int ply) {
+    this.nodes++;
+    if ((this.nodes & 1023) == 0 && (System.nanoTime() > this.deadline || this.cancelled)) {
+      this.aborted = true;
+    }
+    if (this.aborted) {
+      return 0;
+    }
+
+    // the player who just moved may have won
+    if (game.isOver()) {
+      int winner = game.winner();
+      if (winner == BoardState.EMPTY) {
+        return 0;
+      }
+      return winner == game.currentPlayer() ? WIN - ply : -(WIN - ply);
+    }
+    if (depth == 0) {
+      return this.evaluator.evaluate(game);
+    }
+
+    // uses a stored result if it is deep enough, otherwise its move. The
+    // root always searches, so it has a move to play
+    int ttMove = -1;
+    this.probes++;
+    long entry = this.table.probe(hash);
+    if (entry != 0) {
+      this.hits++;
+      ttMove = TranspositionTable.moveOf(entry);
+      if (ply > 0 && TranspositionTable.depthOf(entry) >= depth) {
+        int score = this.fromTable(TranspositionTable.scoreOf(entry), ply);
+        int kind = TranspositionTable.kindOf(entry);
+        if (kind == TranspositionTable.EXACT
+            || (kind == TranspositionTable.LOWER && score >= beta)
+            || (kind == TranspositionTable.UPPER && score <= alpha)) {
+          return score;
+        }
+      }
+    }
+
+    int originalAlpha = alpha;
+    int bestScore = -INFINITY;
+    int bestMove = -1;
+    int[] killer = this.killers[ply];
+
+    // tries the stored move, then the killers, then every other cell
+    int[] order = ply == 0 ? this.rootOrder : this.order;
+    for (int i = -3; i < order.length; i++) {
+      int move;
+      if (i == -3) {
+        move = ttMove;
+      }
+      else if (i < 0) {
+        move = killer[i + 2];
+        if (move == ttMove) {
+          continue;
+        }
+      }
+      else {
+        move = order[i];
+        if (move == ttMove || move == killer[0] || move == killer[1]) {
+          continue;
+        }
+      }
+      if (move < 0 || game.slot[move] < 0) {
+        continue;
+      }
+
+      long childHash = hash ^ this.keys.key(move, game.currentPlayer()) ^ this.keys.player2ToMove;
+      game.applyMove(move);
+      int score = -this.negamax(game, childHash, depth - 1, -beta, -alpha, ply + 1);
+      game.undo();
+      if (this.aborted) {
+        return 0;
+      }
+
+      if (score > bestScore) {
+        bestScore = score;
+        bestMove = move;
+      }
+      if (score > alpha) {
+        alpha = score;
+      }
+      if (alpha >= beta) {
+
+        // remembers the move that cut off this ply
+        if (killer[0] != move) {
+          killer[1] = killer[0];
+          killer[0] = move;
+        }
+        break;
+      }
+    }
+
+    if (ply == 0) {
+      this.rootMove = bestMove;
+    }
+
+    int kind = bestScore <= originalAlpha ? TranspositionTable.UPPER
+        : bestScore >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+    this.table.store(hash, this.toTable(bestScore, ply), kind, depth, bestMove);
+    return bestScore;
+  }
+
+  // the book's packed result for the position with the hash, or MISSING
+  // if there is no book for this board size or it lacks the position
+  int probeBook(long hash) {
+    if (this.book == null || this.book.size != this.keys.size) {
+      return OpeningBook.MISSING;
+    }
+    return this.book.probe(hash);
+  }
+
+  // a score to store, counting wins from the stored position instead of
+  // from the root
+  int toTable(int score, int ply) {
+    if (score > WIN - MAX_PLY) {
+      return score + ply;
+    }
+    else if (score < -(WIN - MAX_PLY)) {
+      return score - ply;
+    }
+    return score;
+  }
+
+  // a stored score, counting wins from the root again
+  int fromTable(int score, int ply) {
+    if (score > WIN - MAX_PLY) {
+      return score - ply;
+    }
+    else if (score < -(WIN - MAX_PLY)) {
+      return score + ply;
+    }
+    return score;
+  }
+
+  // nodes searched per second in the last search
+  double nodesPerSecond() {
+    return this.nodes / (this.lastNanos / 1e9);
+  }
+
+  // fraction of table probes that found their position in the last search
+  double hitRate() {
+    return this.probes == 0 ? 0 : (double) this.hits / this.probes;
+  }
+
+  // summary of the last search
+  String report() {
+    return String.format(Locale.ROOT,
+        "depth %d, score %d, %d nodes in %.3f s (%.0f nodes/s), table hit rate %.1f%%",
+        this.lastDepth, this.lastScore, this.nodes, this.lastNanos / 1e9,
+        this.nodesPerSecond(), 100 * this.hitRate());
+  }
+}
@@ -0,0 +1,828 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+
+// represents the cells of a BridgIt board independently of how they are
+// stored, so game logic, AI and rendering can run on any backend. Cells
+// are addressed by column (the outer index of BridgIt.board) and row
+interface BoardState {
+
+  // owners of a cell
+  int EMPTY = 0;
+  int PLAYER1 = 1;
+  int PLAYER2 = 2;
+
+  // number of cells along each side of the board
+  int size();
+
+  // which player (if any) owns the cell
+  int ownerAt(int col, int row);
+
+  // EFFECT: gives the cell to the owner
+  void setOwner(int col, int row, int owner);
+
+  // number of empty cells left off the edges of the board
+  int emptyCount();
+
+  // has the player joined its goal edges? player1 joins the left and right
+  // columns, player2 joins the top and bottom rows
+  boolean connects(int player);
+
+  // returns an independent copy of this board
+  BoardState copy();
+
+  // can the cell still be claimed (empty and off the edges of the board)?
+  default boolean isPlayable(int col, int row) {
+    return col > 0 && col < this.size() - 1 && row > 0 && row < this.size() - 1
+        && this.ownerAt(col, row) == EMPTY;
+  }
+
+  // the player who has connected its goal edges, or EMPTY if neither has
+  default int winner() {
+    if (this.connects(PLAYER1)) {
+      return PLAYER1;
+    }
+    else if (this.connects(PLAYER2)) {
+      return PLAYER2;
+    }
+    else {
+      return EMPTY;
+    }
+  }
+
+  // has a player won or the board run out of empty cells?
+  default boolean isOver() {
+    return this.winner() != EMPTY || this.emptyCount() == 0;
+  }
+}
+
+// a BoardState over the Cell graph of a BridgIt game, where each cell's
+// color is its owner
+class CellBoard implements BoardState {
+  ArrayList<ArrayList<Cell>> board;
+
+  // constructor viewing the given board
+  CellBoard(ArrayList<ArrayList<Cell>> board) {
+    this.board = board;
+  }
+
+  // number of cells along each side of the board
+  public int size() {
+    return this.board.size();
+  }
+
+  // which player (if any) owns the cell
+  public int ownerAt(int col, int row) {
+    return new GameConstants().ownerOf(this.board.get(col).get(row).color);
+  }
+
+  // EFFECT: recolors the cell for the owner
+  public void setOwner(int col, int row, int owner) {
+    this.board.get(col).get(row).color = new GameConstants().colorOf(owner);
+  }
+
+  // number of white cells left off the edges of the board
+  public int emptyCount() {
+    int count = 0;
+    for (int col = 1; col < this.size() - 1; col++) {
+      for (int row = 1; row < this.size() - 1; row++) {
+        if (this.ownerAt(col, row) == EMPTY) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  // has the player joined its goal edges? searches the cells of its color
+  // from every cell of its starting edge at once
+  public boolean connects(int player) {
+    GameConstants constants = new GameConstants();
+    boolean horizontal = player == PLAYER1;
+    PathSearch search = new PathSearch(constants.colorOf(player), horizontal,
+        new Queue<Cell>(), this.size() * this.size());
+    for (int i = 0; i < this.size(); i++) {
+      if (horizontal) {
+        search.seed(this.board.get(0).get(i));
+      }
+      else {
+        search.seed(this.board.get(i).get(0));
+      }
+    }
+    return search.run();
+  }
+
+  // returns a copy with new cells of the same colors, each linked to the
+  // copied cells around it
+  public BoardState copy() {
+    ArrayList<ArrayList<Cell>> cells = new ArrayList<ArrayList<Cell>>();
+    for (ArrayList<Cell> column : this.board) {
+      ArrayList<Cell> copied = new ArrayList<Cell>();
+      for (Cell c : column) {
+        copied.add(new Cell(c.color, null, null, null, null, c.posn));
+      }
+      cells.add(copied);
+    }
+
+    int last = cells.size() - 1;
+    for (int col = 0; col <= last; col++) {
+      for (int row = 0; row <= last; row++) {
+        cells.get(col).get(row).setLocation(
+            row > 0 ? cells.get(col).get(row - 1) : null,
+            row < last ? cells.get(col).get(row + 1) : null,
+            col < last ? cells.get(col + 1).get(row) : null,
+            col > 0 ? cells.get(col - 1).get(row) : null);
+      }
+    }
+    return new CellBoard(cells);
+  }
+}
+
+// a BoardState stored as bitboards: one bit per cell in row-major order
+// (index row * size + col) for each player, plus a mask of empty cells
+class BitBoard implements BoardState {
+
+  // the bits of a word at even and at odd positions
+  static final long EVEN_BITS = 0x5555555555555555L;
+  static final long ODD_BITS = 0xAAAAAAAAAAAAAAAAL;
+
+  int size;
+  long[] player1;
+  long[] player2;
+  long[] empty;
+
+  // constructor for a board with the starting lattice of a new game
+  BitBoard(int size) {
+    this.size = size;
+    int words = (size * size + 63) >>> 6;
+    this.player1 = new long[words];
+    this.player2 = new long[words];
+    this.empty = new long[words];
+    this.reset();
+  }
+
+  // constructor copying the cells of any other board
+  BitBoard(BoardState other) {
+    this(other.size());
+    for (int row = 0; row < this.size; row++) {
+      for (int col = 0; col < this.size; col++) {
+        this.setOwner(col, row, other.ownerAt(col, row));
+      }
+    }
+  }
+
+  // constructor sharing the given bitboards
+  BitBoard(int size, long[] player1, long[] player2, long[] empty) {
+    this.size = size;
+    this.player1 = player1;
+    this.player2 = player2;
+    this.empty = empty;
+  }
+
+  // EFFECT: sets the bits [from, to) of the bitboard that are set in the
+  // pattern, a word at a time
+  static void fill(long[] words, int from, int to, long pattern) {
+    while (from < to) {
+      int word = from >>> 6;
+      int end = Math.min(to, (word + 1) << 6);
+      long mask = (-1L << from) & (-1L >>> (64 - (end - (word << 6))));
+      words[word] |= pattern & mask;
+      from = end;
+    }
+  }
+
+  // EFFECT: puts back the starting lattice a word at a time instead of a
+  // cell at a time. The size is odd, so a cell's index has the parity of
+  // col + row: the empty cells are the even indices, and the odd ones
+  // belong to player1 on odd rows and to player2 on even rows
+  void reset() {
+    Arrays.fill(this.player1, 0);
+    Arrays.fill(this.player2, 0);
+    Arrays.fill(this.empty, 0);
+    fill(this.empty, 0, this.size * this.size, EVEN_BITS);
+    for (int row = 0; row < this.size; row++) {
+      fill(row % 2 == 1 ? this.player1 : this.player2, row * this.size,
+          (row + 1) * this.size, ODD_BITS);
+    }
+  }
+
+  // number of cells along each side of the board
+  public int size() {
+    return this.size;
+  }
+
+  // which player (if any) owns the cell
+  public int ownerAt(int col, int row) {
+    int index = row * this.size + col;
+    long bit = 1L << index;
+    if ((this.player1[index >>> 6] & bit) != 0) {
+      return PLAYER1;
+    }
+    else if ((this.player2[index >>> 6] & bit) != 0) {
+      return PLAYER2;
+    }
+    else {
+      return EMPTY;
+    }
+  }
+
+  // EFFECT: gives the cell to the owner, clearing its other bits
+  public void setOwner(int col, int row, int owner) {
+    int index = row * this.size + col;
+    int word = index >>> 6;
+    long bit = 1L << index;
+    this.player1[word] &= ~bit;
+    this.player2[word] &= ~bit;
+    this.empty[word] &= ~bit;
+
+    if (owner == PLAYER1) {
+      this.player1[word] |= bit;
+    }
+    else if (owner == PLAYER2) {
+      this.player2[word] |= bit;
+    }
+    else {
+      this.empty[word] |= bit;
+    }
+  }
+
+  // number of empty cells left off the edges of the board
+  public int emptyCount() {
+    int count = 0;
+    for (long word : this.empty) {
+      count += Long.bitCount(word);
+    }
+
+    // empty cells on the edges are never playable, so they are taken back out
+    for (int i = 0; i < this.size; i++) {
+      count -= this.emptyBit(i, 0) + this.emptyBit(i, this.size - 1);
+    }
+    for (int i = 1; i < this.size - 1; i++) {
+      count -= this.emptyBit(0, i) + this.emptyBit(this.size - 1, i);
+    }
+    return count;
+  }
+
+  // 1 if the cell is empty, 0 otherwise
+  int emptyBit(int col, int row) {
+    int index = row * this.size + col;
+    return (int) (this.empty[index >>> 6] >>> index) & 1;
+  }
+
+  // has the player joined its goal edges? searches outward from every
+  // cell of the player's starting edge, visiting each cell once
+  public boolean connects(int player) {
+    return this.connects(player, new long[this.player1.length], 
+        new int[this.size * this.size]);
+  }
+
+  // has the player joined its goal edges? uses the given scratch bitset
+  // (with a word per 64 cells) and worklist (with a slot per cell), so
+  // repeated checks do not allocate
+  boolean connects(int player, long[] seen, int[] worklist) {
+    long[] own = player == PLAYER1 ? this.player1 : this.player2;
+    Arrays.fill(seen, 0);
+    int count = 0;
+
+    // seeds the left column for player1 and the top row for player2
+    for (int i = 0; i < this.size; i++) {
+      int index = player == PLAYER1 ? i * this.size : i;
+      if ((own[index >>> 6] & (1L << index)) != 0) {
+        seen[index >>> 6] |= 1L << index;
+        worklist[count] = index;
+        count++;
+      }
+    }
+
+    while (count > 0) {
+      count--;
+      int index = worklist[count];
+      int col = index % this.size;
+      int row = index / this.size;
+
+      if ((player == PLAYER1 ? col : row) == this.size - 1) {
+        return true;
+      }
+
+      // pushes each unseen neighbor the player owns
+      for (int dir = 0; dir < 4; dir++) {
+        int next;
+        if (dir == 0 && col > 0) {
+          next = index - 1;
+        }
+        else if (dir == 1 && col < this.size - 1) {
+          next = index + 1;
+        }
+        else if (dir == 2 && row > 0) {
+          next = index - this.size;
+        }
+        else if (dir == 3 && row < this.size - 1) {
+          next = index + this.size;
+        }
+        else {
+          continue;
+        }
+
+        long bit = 1L << next;
+        if ((own[next >>> 6] & bit) != 0 && (seen[next >>> 6] & bit) == 0) {
+          seen[next >>> 6] |= bit;
+          worklist[count] = next;
+          count++;
+        }
+      }
+    }
+
+    return false;
+  }
+
+  // EFFECT: makes this board the same as the other one, of the same size
+  void copyFrom(BitBoard other) {
+    System.arraycopy(other.player1, 0, this.player1, 0, this.player1.length);
+    System.arraycopy(other.player2, 0, this.player2, 0, this.player2.length);
+    System.arraycopy(other.empty, 0, this.empty, 0, this.empty.length);
+  }
+
+  // returns a copy with its own bitboards
+  public BoardState copy() {
+    return new BitBoard(this.size, this.player1.clone(), this.player2.clone(), 
+        this.empty.clone());
+  }
+}
+
+// a BoardState stored as one byte per cell, column by column (index
+// col * size + row, in the order of the columns of BridgIt.board), so a
+// cell's neighbors are found by index arithmetic and traversals read
+// contiguous memory. This is the board of a BridgIt world: the Cells the
+// world hands out are views made the first time they are asked for, each
+// kept up to date with its owner here, and colors written to a view
+// directly are read back by readCells
+class ByteBoard implements BoardState {
+  static final int ABOVE = 0;
+  static final int BELOW = 1;
+  static final int LEFT = 2;
+  static final int RIGHT = 3;
+
+  int size;
+  byte[] owners;
+
+  // views of the cells handed out so far (null until the first)
+  Cell[] cells;
+
+  // scratch state for connects, allocated on first use, and the number of
+  // cells the last search visited
+  boolean[] seen;
+  int[] worklist;
+  int visited;
+
+  // constructor for a board with the starting lattice of a new game
+  ByteBoard(int size) {
+    this.size = size;
+    this.owners = new byte[size * size];
+    this.reset();
+  }
+
+  // constructor copying the cells of any other board
+  ByteBoard(BoardState other) {
+    this.size = other.size();
+    this.owners = new byte[this.size * this.size];
+    for (int col = 0; col < this.size; col++) {
+      for (int row = 0; row < this.size; row++) {
+        this.owners[col * this.size + row] = (byte) other.ownerAt(col, row);
+      }
+    }
+  }
+
+  // EFFECT: puts back the starting lattice, column by column
+  void reset() {
+    GameConstants constants = new GameConstants();
+    for (int col = 0; col < this.size; col++) {
+      for (int row = 0; row < this.size; row++) {
+        this.owners[col * this.size + row] = (byte) constants.latticeOwner(col, row);
+      }
+    }
+    if (this.cells != null) {
+      for (Cell c : this.cells) {
+        if (c != null) {
+          c.color = constants.colorOf(this.owners[c.index]);
+        }
+      }
+    }
+  }
+
+  // number of cells along each side of the board
+  public int size() {
+    return this.size;
+  }
+
+  // which player (if any) owns the cell
+  public int ownerAt(int col, int row) {
+    return this.owners[col * this.size + row];
+  }
+
+  // EFFECT: gives the cell to the owner, recoloring its view if it has one
+  public void setOwner(int col, int row, int owner) {
+    int index = col * this.size + row;
+    this.owners[index] = (byte) owner;
+    if (this.cells != null && this.cells[index] != null) {
+      this.cells[index].color = new GameConstants().colorOf(owner);
+    }
+  }
+
+  // number of empty cells left off the edges of the board
+  public int emptyCount() {
+    int count = 0;
+    for (int col = 1; col < this.size - 1; col++) {
+      int index = col * this.size;
+      for (int row = 1; row < this.size - 1; row++) {
+        if (this.owners[index + row] == EMPTY) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  // the index of the cell next to the given one in the direction, or -1
+  // past the edge of the board
+  int neighbor(int index, int direction) {
+    int row = index % this.size;
+    if (direction == ABOVE) {
+      return row > 0 ? index - 1 : -1;
+    }
+    else if (direction == BELOW) {
+      return row < this.size - 1 ? index + 1 : -1;
+    }
+    else if (direction == LEFT) {
+      return index >= this.size ? index - this.size : -1;
+    }
+    else {
+      return index < this.owners.length - this.size ? index + this.size : -1;
+    }
+  }
+
+  // has the player joined its goal edges? searches outward from every
+  // cell of the player's starting edge, visiting each cell once
+  public boolean connects(int player) {
+    if (this.seen == null) {
+      this.seen = new boolean[this.owners.length];
+      this.worklist = new int[this.owners.length];
+    }
+    Arrays.fill(this.seen, false);
+    this.visited = 0;
+    int count = 0;
+
+    // seeds the left column for player1 and the top row for player2
+    for (int i = 0; i < this.size; i++) {
+      int index = player == PLAYER1 ? i : i * this.size;
+      if (this.owners[index] == player) {
+        this.seen[index] = true;
+        this.worklist[count] = index;
+        count++;
+      }
+    }
+
+    while (count > 0) {
+      count--;
+      int index = this.worklist[count];
+      this.visited++;
+      if (player == PLAYER1 ? index >= this.owners.length - this.size
+          : index % this.size == this.size - 1) {
+        return true;
+      }
+
+      // pushes each unseen neighbor the player owns
+      for (int direction = ABOVE; direction <= RIGHT; direction++) {
+        int next = this.neighbor(index, direction);
+        if (next >= 0 && this.owners[next] == player && !this.seen[next]) {
+          this.seen[next] = true;
+          this.worklist[count] = next;
+          count++;
+        }
+      }
+    }
+
+    return false;
+  }
+
+  // the view of the cell at the given index, made the first time it is
+  // asked for
+  Cell cellAt(int index) {
+    if (this.cells == null) {
+      this.cells = new Cell[this.owners.length];
+    }
+    if (this.cells[index] == null) {
+      this.cells[index] = new Cell(this, index);
+    }
+    return this.cells[index];
+  }
+
+  // the view of the cell at the given column and row
+  Cell cell(int col, int row) {
+    return this.cellAt(col * this.size + row);
+  }
+
+  // EFFECT: takes the owner of every cell with a view from the view's
+  // color, for views recolored directly
+  void readCells() {
+    if (this.cells != null) {
+      GameConstants constants = new GameConstants();
+      for (Cell c : this.cells) {
+        if (c != null) {
+          this.owners[c.index] = (byte) constants.ownerOf(c.color);
+        }
+      }
+    }
+  }
+
+  // returns a copy with its own cells and no views
+  public BoardState copy() {
+    ByteBoard copy = new ByteBoard(0);
+    copy.size = this.size;
+    copy.owners = this.owners.clone();
+    return copy;
+  }
+}
+
+// a BoardState for boards far too large for a Cell graph or a bitboard per
+// player. Only the cells a move can claim are stored, at 2 bits each (the
+// owner) in pages of longs; the edges and the pre-colored lattice never
+// change, so their owners are worked out from the coordinates instead.
+// Claimable cells are numbered row by row, so a row of the board is a run
+// of consecutive slots, and connects() streams over the board a row at a
+// time keeping only one row of component labels
+class PackedBoard implements BoardState {
+
+  // cells per long, and longs per page
+  static final int CELLS_PER_WORD = 32;
+  static final int PAGE_BITS = 16;
+
+  int size;
+  int half;
+  int empty;
+  long[][] pages;
+
+  // scratch state for connects, allocated on first use
+  int[] above;
+  int[] here;
+  int[] parent;
+  byte[] reach;
+  int[] renumber;
+  byte[] carried;
+
+  public static void main(String[] args) {
+    int size = args.length > 0 ? Integer.parseInt(args[0]) : 16383;
+    double fill = args.length > 1 ? Double.parseDouble(args[1]) : 0.5;
+
+    // claims the given share of the cells at random, alternating players
+    PackedBoard board = new PackedBoard(size);
+    SplittableRandom random = new SplittableRandom(42);
+    boolean player1 = true;
+    for (int row = 1; row < size - 1; row++) {
+      for (int col = 2 - row % 2; col < size - 1; col += 2) {
+        if (random.nextDouble() < fill) {
+          board.setOwner(col, row, player1 ? PLAYER1 : PLAYER2);
+          player1 = !player1;
+        }
+      }
+    }
+
+    long start = System.nanoTime();
+    boolean player1Connects = board.connects(PLAYER1);
+    boolean player2Connects = board.connects(PLAYER2);
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.println(String.format(Locale.ROOT,
+        "%dx%d board in %.2f MiB: player1 %b, player2 %b, both checked in %.3f s (%.1f ns/cell)",
+        size, size, board.bytes() / 1048576.0, player1Connects, player2Connects, seconds,
+        seconds * 1e9 / (2.0 * size * size)));
+  }
+
+  // constructor for a board with the starting lattice of a new game
+  PackedBoard(int size) {
+    if (size % 2 == 0 || size < 3) {
+      throw new IllegalArgumentException("board size must be odd and greater than 3");
+    }
+    this.size = size;
+    this.half = size / 2;
+    this.empty = this.slots();
+
+    long words = ((long) this.empty + CELLS_PER_WORD - 1) / CELLS_PER_WORD;
+    int pageWords = 1 << PAGE_BITS;
+    this.pages = new long[(int) ((words + pageWords - 1) >>> PAGE_BITS)][];
+    for (int page = 0; page < this.pages.length; page++) {
+      this.pages[page] = new long[(int) Math.min(pageWords, words - ((long) page << PAGE_BITS))];
+    }
+  }
+
+  // constructor copying the cells of any other board of the same lattice
+  PackedBoard(BoardState other) {
+    this(other.size());
+    for (int row = 1; row < this.size - 1; row++) {
+      for (int col = 2 - row % 2; col < this.size - 1; col += 2) {
+        this.setOwner(col, row, other.ownerAt(col, row));
+      }
+    }
+  }
+
+  // number of cells a move can claim: the odd/odd and even/even cells off
+  // the edges of the board
+  int slots() {
+    return 2 * this.half * this.half - 2 * this.half + 1;
+  }
+
+  // number of cells along each side of the board
+  public int size() {
+    return this.size;
+  }
+
+  // bytes taken by the cell pages
+  long bytes() {
+    long bytes = 0;
+    for (long[] page : this.pages) {
+      bytes += 8L * page.length;
+    }
+    return bytes;
+  }
+
+  // the slot of the first claimable cell in the row (from 1 to size - 2):
+  // odd rows hold half claimable cells and even rows one fewer
+  int rowStart(int row) {
+    return (row - 1) / 2 * (2 * this.half - 1) + (row % 2 == 1 ? 0 : this.half);
+  }
+
+  // the slot of the cell, or -1 if no move can claim it
+  int slotOf(int col, int row) {
+    if (col <= 0 || col >= this.size - 1 || row <= 0 || row >= this.size - 1
+        || (col + row) % 2 != 0) {
+      return -1;
+    }
+    return this.rowStart(row) + (col - 1) / 2;
+  }
+
+  // the word holding the slot
+  long wordOf(int slot) {
+    return this.pages[slot >>> (PAGE_BITS + 5)][(slot >>> 5) & ((1 << PAGE_BITS) - 1)];
+  }
+
+  // the owner stored in the slot
+  int ownerOf(int slot) {
+    return (int) (this.wordOf(slot) >>> ((slot & 31) << 1)) & 3;
+  }
+
+  // which player (if any) owns the cell
+  public int ownerAt(int col, int row) {
+    int slot = this.slotOf(col, row);
+    if (slot < 0) {
+      return new GameConstants().latticeOwner(col, row);
+    }
+    return this.ownerOf(slot);
+  }
+
+  // EFFECT: gives the cell to the owner. Cells outside the claimable ones
+  // can only be given the owner they already have
+  public void setOwner(int col, int row, int owner) {
+    int slot = this.slotOf(col, row);
+    if (slot < 0) {
+      if (owner != new GameConstants().latticeOwner(col, row)) {
+        throw new IllegalArgumentException("cell (" + col + ", " + row + ") is fixed");
+      }
+      return;
+    }
+
+    int old = this.ownerOf(slot);
+    long[] page = this.pages[slot >>> (PAGE_BITS + 5)];
+    int word = (slot >>> 5) & ((1 << PAGE_BITS) - 1);
+    int shift = (slot & 31) << 1;
+    page[word] = (page[word] & ~(3L << shift)) | ((long) owner << shift);
+    this.empty += (owner == EMPTY ? 1 : 0) - (old == EMPTY ? 1 : 0);
+  }
+
+  // number of empty cells left off the edges of the board
+  public int emptyCount() {
+    return this.empty;
+  }
+
+  // has the player joined its goal edges? Labels the player's cells one row
+  // at a time, merging each cell with the cells left of it and above it,
+  // and remembers which goal edges each component touches. Components of
+  // the row above are relabeled 0 to size - 1 before each row, and those of
+  // the current row are labeled size + col
+  public boolean connects(int player) {
+    int n = this.size;
+    if (this.above == null) {
+      this.above = new int[n];
+      this.here = new int[n];
+      this.parent = new int[2 * n];
+      this.reach = new byte[2 * n];
+      this.renumber = new int[2 * n];
+      this.carried = new byte[n];
+      Arrays.fill(this.renumber, -1);
+    }
+    Arrays.fill(this.above, -1);
+
+    for (int row = 0; row < n; row++) {
+      boolean inside = row > 0 && row < n - 1;
+      int slot = inside ? this.rowStart(row) : 0;
+      long word = inside ? this.wordOf(slot) : 0;
+      for (int col = 0; col < n; col++) {
+
+        // claimable cells are read from the pages a word at a time, and
+        // the rest follow the lattice
+        int owner;
+        if (((col ^ row) & 1) == 1) {
+          owner = (col & 1) == 0 ? PLAYER1 : PLAYER2;
+        }
+        else if (inside && col > 0 && col < n - 1) {
+          if ((slot & 31) == 0) {
+            word = this.wordOf(slot);
+          }
+          owner = (int) (word >>> ((slot & 31) << 1)) & 3;
+          slot++;
+        }
+        else {
+          owner = EMPTY;
+        }
+
+        if (owner != player) {
+          this.here[col] = -1;
+          continue;
+        }
+        // joins the run to its left, then whatever component is above,
+        // hanging both under the root of the run so finds stay short
+        int label = n + col;
+        int along = player == PLAYER1 ? col : row;
+        int root = label;
+        if (col > 0 && this.here[col - 1] >= 0) {
+          root = this.find(this.here[col - 1]);
+        }
+        this.parent[label] = root;
+        this.reach[label] = 0;
+        this.reach[root] |= (byte) ((along == 0 ? 1 : 0) | (along == n - 1 ? 2 : 0));
+        this.here[col] = label;
+        if (this.above[col] >= 0) {
+          int other = this.find(this.above[col]);
+          if (other != root) {
+            this.parent[other] = root;
+            this.reach[root] |= this.reach[other];
+          }
+        }
+        if (this.reach[root] == 3) {
+          return true;
+        }
+      }
+      this.carry();
+    }
+    return false;
+  }
+
+  // EFFECT: relabels the components of the current row 0, 1, ... as the
+  // row above for the next row, keeping the edges each one touches
+  void carry() {
+    int n = this.size;
+    int next = 0;
+    for (int col = 0; col < n; col++) {
+      if (this.here[col] >= 0) {
+        int root = this.find(this.here[col]);
+        if (this.renumber[root] < 0) {
+          this.renumber[root] = next;
+          this.carried[next] = this.reach[root];
+          next++;
+        }
+        this.above[col] = this.renumber[root];
+        this.here[col] = root;
+      }
+      else {
+        this.above[col] = -1;
+      }
+    }
+    for (int col = 0; col < n; col++) {
+      if (this.here[col] >= 0) {
+        this.renumber[this.here[col]] = -1;
+      }
+    }
+    for (int label = 0; label < next; label++) {
+      this.parent[label] = label;
+      this.reach[label] = this.carried[label];
+    }
+  }
+
+  // the root label of the label's component, halving the path on the way
+  int find(int label) {
+    while (this.parent[label] != label) {
+      this.parent[label] = this.parent[this.parent[label]];
+      label = this.parent[label];
+    }
+    return label;
+  }
+
+  // returns a copy with its own pages
+  public BoardState copy() {
+    PackedBoard copy = new PackedBoard(this.size);
+    for (int page = 0; page < this.pages.length; page++) {
+      System.arraycopy(this.pages[page], 0, copy.pages[page], 0, this.pages[page].length);
+    }
+    copy.empty = this.empty;
+    return copy;
+  }
+}
@@ -1,6 +1,28 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.management.AttributeNotFoundException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 import tester.*;
 import javalib.impworld.*;
@@ -20,9 +42,77 @@ class GameConstants {
   // size of cell
   int cellSize = 100;
 
+  // seconds between ticks of the world, on which computer players move
+  double tickSeconds = 0.05;
+
+  // number of shades of the distance heatmap, from the cells on a
+  // shortest connection outward
+  int heatLevels = 3;
+
+  // pixels across the window: boards whose cells would not fit in it are
+  // drawn through a viewport of this size, which pans and zooms over the
+  // board, and whose pixels show whole blocks of cells when zoomed out
+  int windowPixels = 1000;
+
+  // color of the window past the edges of the board
+  Color offBoardColor = Color.LIGHT_GRAY;
+
+  // number of the person's likely replies the computer searches its
+  // answers to while the person thinks
+  int ponderBreadth = 8;
+
+  // which player (if any) owns the cell at the start of a game: player1
+  // holds odd rows of even columns and player2 even rows of odd columns
+  int latticeOwner(int col, int row) {
+    if (col % 2 == 0 && row % 2 == 1) {
+      return BoardState.PLAYER1;
+    }
+    else if (col % 2 == 1 && row % 2 == 0) {
+      return BoardState.PLAYER2;
+    }
+    else {
+      return BoardState.EMPTY;
+    }
+  }
+
+  // color used to draw the cells of the given owner
+  Color colorOf(int owner) {
+    if (owner == BoardState.PLAYER1) {
+      return this.player1Color;
+    }
+    else if (owner == BoardState.PLAYER2) {
+      return this.player2Color;
+    }
+    else {
+      return this.mtColor;
+    }
+  }
+
+  // the color the given fraction of the way from white to the color
+  Color tint(Color color, double amount) {
+    return new Color((int) Math.round(255 - (255 - color.getRed()) * amount),
+        (int) Math.round(255 - (255 - color.getGreen()) * amount),
+        (int) Math.round(255 - (255 - color.getBlue()) * amount));
+  }
+
+  // owner of a cell drawn in the given color
+  int ownerOf(Color color) {
+    if (color == this.player1Color) {
+      return BoardState.PLAYER1;
+    }
+    else if (color == this.player2Color) {
+      return BoardState.PLAYER2;
+    }
+    else {
+      return BoardState.EMPTY;
+    }
+  }
+
 }
 
-// class representing a cell with access to its color and neighbors
+// class representing a cell with access to its color and neighbors. A
+// cell is either linked to its neighbors or a view of a cell of a
+// ByteBoard, which works its neighbors out from its index instead
 class Cell {
   Color color;
   Cell above;
@@ -31,6 +121,11 @@ class Cell {
   Cell left;
   Posn posn;
 
+  // the board this cell is a view of (null for a linked cell), and its
+  // index there
+  ByteBoard grid;
+  int index;
+
   // convenience constructor
   Cell(Color color, Cell above, Cell below, Cell right, Cell left, Posn posn) {
     this.color = color;
@@ -41,6 +136,35 @@ class Cell {
     this.posn = posn;
   }
 
+  // constructor for a view of the cell at the given index of the board
+  Cell(ByteBoard grid, int index) {
+    this(new GameConstants().colorOf(grid.owners[index]), null, null, null, null,
+        new Posn(index % grid.size, index / grid.size));
+    this.grid = grid;
+    this.index = index;
+  }
+
+  // the neighbor in the given direction (ByteBoard.ABOVE, BELOW, LEFT or
+  // RIGHT), or null past the edge of the board
+  Cell neighbor(int direction) {
+    if (this.grid != null) {
+      int next = this.grid.neighbor(this.index, direction);
+      return next < 0 ? null : this.grid.cellAt(next);
+    }
+    else if (direction == ByteBoard.ABOVE) {
+      return this.above;
+    }
+    else if (direction == ByteBoard.BELOW) {
+      return this.below;
+    }
+    else if (direction == ByteBoard.LEFT) {
+      return this.left;
+    }
+    else {
+      return this.right;
+    }
+  }
+
   // draw this cell as a square with dimensions and a color
   WorldImage draw() {
     return new RectangleImage(new GameConstants().cellSize, 
@@ -64,109 +188,241 @@ class Cell {
       return false;
     }
 
-    Stack<Cell> alreadySeen = new Stack<Cell>();
-
     // Initialize the worklist with the from vertex
-    worklist.add(from);
+    PathSearch search = new PathSearch(color, true, worklist, 0);
+    search.seed(from);
+    return search.run();
+  }
 
-    // Works as long as work list is not empty
-    while (!worklist.isEmpty()) {
-      Cell next = worklist.remove();
 
-      // if right is null this means cells made it from left
-      // to right without stopping so there exists a path
-      if (next.right == null) {
-        return true; 
-      }
+  //checks if neighbors are the same color from top to bottom
+  boolean checkVerticalHelp(Cell from, Color color, ICollection<Cell> worklist) {
+    if (this.color != color) {
+      return false;
+    }
 
-      // checks all neighbors for potential paths
-      else {
-        if (next.above != null && next.above.color == color) {
-          worklist.add(next.above);
-        }
-        if (next.below != null && next.below.color == color) {
-          worklist.add(next.below);
-        }
-        if (next.right != null && next.right.color == color) {
-          worklist.add(next.right);
-        }
-        if (next.left != null && next.left.color == color) {
-          worklist.add(next.left);
-        }
+    // Initialize the worklist with the from vertex
+    PathSearch search = new PathSearch(color, false, worklist, 0);
+    search.seed(from);
+    return search.run();
+  }
 
-        // add next to alreadySeen since its no longer necessary
-        alreadySeen.add(next);
-      }
+  // indexes this cell's board position so that every cell of an n x n board
+  // lands in [0, n * n) without needing to know n (positions are filled in
+  // shells of growing size, so a flat bitset over them stays dense)
+  int positionIndex() {
+    int a = this.posn.x;
+    int b = this.posn.y;
+    if (a >= b) {
+      return a * a + a + b;
+    }
+    else {
+      return b * b + a;
     }
-    // return false if there's no found vertex and none left to try
-    return false;
   }
 
+}
 
-  //checks if neighbors are the same color from top to bottom
-  boolean checkVerticalHelp(Cell from, Color color, ICollection<Cell> worklist) {
-    if (this.color != color) {
+// the columns of a ByteBoard as lists of Cell views, for code that reads
+// the board a cell at a time as board.get(col).get(row)
+class CellColumns extends AbstractList<List<Cell>> {
+  ByteBoard grid;
+
+  // constructor viewing the columns of the board
+  CellColumns(ByteBoard grid) {
+    this.grid = grid;
+  }
+
+  // the column at the given index
+  public List<Cell> get(int col) {
+    Objects.checkIndex(col, this.grid.size);
+    return new CellColumn(this.grid, col);
+  }
+
+  // number of columns
+  public int size() {
+    return this.grid.size;
+  }
+}
+
+// one column of a ByteBoard as a list of Cell views, top to bottom
+class CellColumn extends AbstractList<Cell> {
+  ByteBoard grid;
+  int col;
+
+  // constructor viewing the given column of the board
+  CellColumn(ByteBoard grid, int col) {
+    this.grid = grid;
+    this.col = col;
+  }
+
+  // the view of the cell in the given row
+  public Cell get(int row) {
+    Objects.checkIndex(row, this.grid.size);
+    return this.grid.cell(this.col, row);
+  }
+
+  // number of cells in the column
+  public int size() {
+    return this.grid.size;
+  }
+}
+
+// represents a set of cells as a flat bitset indexed by board position
+class CellSet {
+  long[] words;
+
+  // constructor with room for the given number of positions
+  CellSet(int capacity) {
+    this.words = new long[Math.max(1, (capacity + 63) >>> 6)];
+  }
+
+  // EFFECT: adds the cell, growing the bitset if needed
+  // returns true if the cell was not already in the set
+  boolean add(Cell c) {
+    int index = c.positionIndex();
+    int word = index >>> 6;
+    if (word >= this.words.length) {
+      this.words = Arrays.copyOf(this.words, Math.max(word + 1, this.words.length * 2));
+    }
+    long bit = 1L << index;
+    if ((this.words[word] & bit) != 0) {
       return false;
     }
+    this.words[word] |= bit;
+    return true;
+  }
+
+  // is the cell in the set?
+  boolean contains(Cell c) {
+    int index = c.positionIndex();
+    int word = index >>> 6;
+    return word < this.words.length && (this.words[word] & (1L << index)) != 0;
+  }
+}
+
+// searches outward through cells of one color, visiting each cell once,
+// until a cell on the goal edge is reached. Any number of cells can be
+// seeded before running, and the worklist decides the order (a Stack
+// searches depth first, a Queue breadth first)
+class PathSearch {
+  Color color;
+  boolean horizontal;
+  ICollection<Cell> worklist;
+  CellSet seen;
+  int visited;
+
+  // constructor for a search through cells of the given color, sized for
+  // a board with the given number of cells
+  PathSearch(Color color, boolean horizontal, ICollection<Cell> worklist, int cells) {
+    this.color = color;
+    this.horizontal = horizontal;
+    this.worklist = worklist;
+    this.seen = new CellSet(cells);
+  }
+
+  // EFFECT: adds the cell to the worklist if it has the search color
+  // and has not been seen yet
+  void seed(Cell c) {
+    if (c != null && c.color == this.color && this.seen.add(c)) {
+      this.worklist.add(c);
+    }
+  }
 
-    Queue<Cell> alreadySeen = new Queue<Cell>();
+  // is the cell on the goal edge? if right is null the cells made it from
+  // left to right, and if below is null they made it from top to bottom
+  boolean atGoal(Cell c) {
+    if (this.horizontal) {
+      return c.neighbor(ByteBoard.RIGHT) == null;
+    }
+    else {
+      return c.neighbor(ByteBoard.BELOW) == null;
+    }
+  }
 
-    // Initialize the worklist with the from vertex
-    worklist.add(from);
+  // runs the search until the goal edge is reached or the worklist runs out
+  boolean run() {
 
     // Works as long as work list is not empty
-    while (!worklist.isEmpty()) {
-      Cell next = worklist.remove();
-
-      // if below is null this means cells made it from top
-      // to bottom without stopping so there exists a path
-      if (next.below == null) {
-        return true; 
-      }
+    while (!this.worklist.isEmpty()) {
+      Cell next = this.worklist.remove();
+      this.visited++;
 
-      else if (alreadySeen.contents.contains(next)) {
-        // do nothing
+      if (this.atGoal(next)) {
+        return true;
       }
 
       // checks all neighbors for potential paths
-      else {
-        if (next.above != null && next.above.color == color) {
-          worklist.add(next.above);
-        }
-        if (next.below != null && next.below.color == color) {
-          worklist.add(next.below);
-        }
-        if (next.right != null && next.right.color == color) {
-          worklist.add(next.right);
-        }
-        if (next.left != null && next.left.color == color) {
-          worklist.add(next.left);
-        }
-
-        // add next to alreadySeen since its no longer necessary
-        alreadySeen.add(next);
-      }
+      this.seed(next.neighbor(ByteBoard.ABOVE));
+      this.seed(next.neighbor(ByteBoard.BELOW));
+      this.seed(next.neighbor(ByteBoard.RIGHT));
+      this.seed(next.neighbor(ByteBoard.LEFT));
     }
 
     // return false if there's no found vertex and none left to try
     return false;
-
   }
-
 }
 
 
-// class representing BridgIt game
+// class representing BridgIt game. The cells are stored in a ByteBoard,
+// and board shows them as columns of Cell views
 class BridgIt extends World {
-  ArrayList<ArrayList<Cell>> board;
+  List<? extends List<Cell>> board;
+  ByteBoard grid;
   boolean turn;
   int boardSize;
-
-  // convenience constructor
+  ConnectivityTracker tracker;
+  SceneCache sceneCache = new SceneCache();
+
+  // computer strategies for each player (null for a person)
+  Strategy player1Computer;
+  Strategy player2Computer;
+  long seed = new Random().nextLong();
+  SplittableRandom random = new SplittableRandom(this.seed);
+
+  // moves of the game so far, written by the recorder (if any) when the
+  // board is reset
+  GameRecord history = new GameRecord();
+  GameRecordWriter recorder;
+
+  // history.moves[history.count, redoable) are undone moves that can be
+  // redone
+  int redoable;
+
+  // is the board the starting lattice plus the cells claimed in the
+  // tracker? (no longer once cells are recolored directly and the tracker
+  // is rebuilt from them)
+  boolean tracked = true;
+
+  // each player's smallest set of cells blocking it, kept while hints are
+  // shown (null otherwise), and the cells hinted to the player to move
+  CutTracker cuts;
+  int[] hinted = new int[0];
+
+  // each player's distance maps, kept while the heatmap is shown (null
+  // otherwise)
+  DistanceTracker distances;
+
+  // choose the computer players' moves off the event thread and search
+  // ahead while the person thinks, while pondering is on (null otherwise)
+  Ponderer player1Ponderer;
+  Ponderer player2Ponderer;
+
+  // solved positions the computer plays from before asking its strategy
+  // (null for none). Not for a SwitchingPlayer, which must make every one
+  // of its moves itself
+  OpeningBook book;
+
+  // convenience constructor for a board of linked cells, whose colors
+  // are read once to start the game
   BridgIt(ArrayList<ArrayList<Cell>> board, boolean turn, int boardSize) {
     this.board = board;
+    this.grid = new ByteBoard(new CellBoard(board));
     this.turn = true;
     this.boardSize = boardSize;
+    this.tracker = new ConnectivityTracker(this.grid);
+    this.tracker.keepHistory();
 
   }
 
@@ -175,82 +431,111 @@ class BridgIt extends World {
     if (boardSize % 2 == 0 || boardSize < 3) {
       throw new IllegalArgumentException("board size must be odd and greater than 3");
     }
-    this.board = new ArrayList<ArrayList<Cell>>();
     this.turn = true;
-    this.boardSize = 5;
+    this.boardSize = boardSize;
 
     // calls method initializing game in constructor
-    // also link cells together
     this.initializeGame();
 
+    // boards too large for the window are drawn through a viewport
+    if (boardSize * new GameConstants().cellSize > new GameConstants().windowPixels) {
+      this.sceneCache.raster = new RasterRenderer(this.grid);
+    }
+  }
+
+  // constructor for a game where either player may be the computer
+  // (a null strategy is a person clicking on the board)
+  BridgIt(int boardSize, Strategy player1Computer, Strategy player2Computer) {
+    this(boardSize);
+    this.player1Computer = player1Computer;
+    this.player2Computer = player2Computer;
+  }
+
+  // plays a game in a window against a computer player, which moves on
+  // the world's ticks (so pondering, turned on with "p", runs too). A
+  // switching computer is player1, the only side its strategy wins for,
+  // and any other is player2, letting the person move first, playing from
+  // the opening book given, if any, before searching. Run it with:
+  //   java BridgIt [size] [alphabeta|mcts|switching] [millis per move] [book]
+  public static void main(String[] args) throws IOException {
+    int size = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+    String computer = args.length > 1 ? args[1] : "alphabeta";
+    long millis = args.length > 2 ? Long.parseLong(args[2]) : 500;
+
+    BridgIt game;
+    if (computer.equals("switching")) {
+      game = new BridgIt(size, new SwitchingPlayer(), null);
+    }
+    else if (computer.equals("mcts")) {
+      game = new BridgIt(size, null,
+          new MctsPlayer(0, millis, Runtime.getRuntime().availableProcessors()));
+    }
+    else if (computer.equals("alphabeta")) {
+      game = new BridgIt(size, null,
+          new AlphaBetaPlayer(0, millis, new DistanceEvaluator(), 1 << 20));
+    }
+    else {
+      throw new IllegalArgumentException("unknown computer player " + computer);
+    }
+    if (args.length > 3) {
+      if (computer.equals("switching")) {
+        throw new IllegalArgumentException("the switching player plays without a book");
+      }
+      game.book = new OpeningBook(Paths.get(args[3]));
+    }
+    int pixels = game.sceneCache.scenePixels(size);
+    game.bigBang(pixels, pixels, new GameConstants().tickSeconds);
   }
 
   // constructor that initializes cells on board
   BridgIt() {
-    this.board = new ArrayList<ArrayList<Cell>>();
     this.turn = true;
     this.boardSize = 5;
 
     // calls method initializing game in constructor
-    // also link cells together
     this.initializeGame();
 
   }
 
-  // method that builds board and initializes cells
+  // method that builds board and initializes cells: a byte per cell,
+  // with no Cell made until one is asked for
   void initializeGame() {
+    this.grid = new ByteBoard(this.boardSize);
+    this.board = new CellColumns(this.grid);
+
+    // seeds the connectivity tracker with the starting lattice, keeping
+    // the history of claims so they can be undone
+    this.tracker = new ConnectivityTracker(this.boardSize);
+    this.tracker.keepHistory();
+    this.tracked = true;
+  }
 
-    // builds board horizontally
-    for (int x = 0; x < this.boardSize; x++) {
-
-      // creates columns (vertical array lists of cells)
-      ArrayList<Cell> column = new ArrayList<Cell>();
-
-      // builds board vertically
-      for (int y = 0; y < this.boardSize; y++) {
-
-        // what to do x is an even number
-        if (x % 2 == 0) {
-
-          // if x is even and y is odd create a cell with player1 color
-          if (y % 2 == 1) {
-            column.add(new Cell(new GameConstants().player1Color, null, null, 
-                null, null, new Posn(y, x)));
-          }
-
-          // if x is even and y is even create a cell with empty cell color
-          else {
-            column.add(new Cell(new GameConstants().mtColor, null, null, null, 
-                null, new Posn(y, x)));
-          }
-        }
-
-        // what to do x is an odd number
-        else {
-
-          // if x is odd and y is even create a cell with player2 cell color
-          if (y % 2 == 0) {
-            column.add(new Cell(new GameConstants().player2Color, null, null, 
-                null, null, new Posn(y, x)));
-          }
-
-          // if x is odd and y is odd create a cell with mt color
-          else {
-            column.add(new Cell(new GameConstants().mtColor, null, null, null, 
-                null, new Posn(y, x)));
-          }
-        }
-      }
+  // views the cells of this game as a BoardState
+  BoardState boardState() {
+    return this.grid;
+  }
 
-      // creates respective column at each x value
-      this.board.add(column);
+  // rebuilds the connectivity tracker from the current cell colors
+  // (needed after cells are recolored directly instead of through a click)
+  void syncTracker() {
+    this.grid.readCells();
+    this.sceneCache.boardReplaced();
+    this.tracker = new ConnectivityTracker(this.grid);
+    this.tracker.keepHistory();
+    this.tracked = false;
+    if (this.cuts != null) {
+      this.cuts = new CutTracker(this.grid);
+      this.showHints();
+    }
+    if (this.distances != null) {
+      this.distances = new DistanceTracker(this.grid);
+      this.sceneCache.invalidate();
     }
-
-    // updates locations as game is being constructed
-    this.updateLocation();
   }
 
-  // updates location of cells and cells around it after initializing
+  // updates location of cells and cells around it, for a board of linked
+  // cells given to the constructor (the cells of a board made by the game
+  // are views that find their neighbors themselves)
   void updateLocation() {
 
     // traverses array list horizontally
@@ -295,248 +580,1158 @@ class BridgIt extends World {
 
   // handles mouse clicking and changes turn
   public void onMouseClicked(Posn position) {
+    long start = Metrics.start();
 
-    // determines x and y coordinates of cell being clicked on 
-    int x = position.x / new GameConstants().cellSize;
-    int y = position.y / new GameConstants().cellSize;
+    // ignores clicks while the computer is choosing a move
+    if (this.computerToMove() == null) {
 
-    // gets cell that was clicked
-    Cell clickedCell = this.board.get(x).get(y);
+      // determines x and y coordinates of cell being clicked on (none
+      // if the view is too far zoomed out to tell)
+      Posn cell = this.sceneCache.cellAt(position);
+      if (cell != null) {
+        this.claimCell(cell.x, cell.y);
 
-    // changes color of clickedCell accordingly if needed 
-    // (does nothing if clickedCell is not mtColor or is on edge of screen)
-    if (clickedCell.color == new GameConstants().mtColor 
-        && (x != 0 && x != this.boardSize - 1)
-        && (y != 0 && y != this.boardSize - 1)) {
+        // keeps only the computer's search of an answer to this move
+        Ponderer ponderer = this.pondererToMove();
+        if (ponderer != null && this.gameOver()) {
+          ponderer.stop();
+        }
+        else if (ponderer != null) {
+          ponderer.keep(this.toEngine());
+        }
+      }
+    }
 
-      // if it is player1's turn, changes cell to player1Color
-      if (this.turn) {
-        clickedCell.color = new GameConstants().player1Color;
+    Metrics.CLICK.stop(start);
+  }
 
-      }
+  // claims the cell at the given column and row for the player whose turn it
+  // is and changes turn (does nothing if the cell cannot be claimed)
+  void claimCell(int x, int y) {
+
+    // claims the clicked cell if needed (does nothing if the cell is
+    // not empty or is on edge of screen)
+    if ((x > 0 && x < this.boardSize - 1)
+        && (y > 0 && y < this.boardSize - 1)
+        && this.grid.ownerAt(x, y) == BoardState.EMPTY) {
 
-      // if it is player2's turn, changes cell to player2Color
+      // if it is player1's turn, gives the cell to player1, and otherwise
+      // to player2
+      if (this.turn) {
+        this.grid.setOwner(x, y, BoardState.PLAYER1);
+      }
       else {
-        clickedCell.color = new GameConstants().player2Color;
+        this.grid.setOwner(x, y, BoardState.PLAYER2);
+      }
+
+      // records the new cell so win detection stays incremental
+      // and only this cell is redrawn in the next frame
+      this.tracker.claim(x, y, this.turn);
+      this.sceneCache.markDirty(x, y);
+      this.history.add(y * this.boardSize + x);
+      this.redoable = this.history.count;
+      if (this.cuts != null) {
+        this.cuts.claim(x, y, this.turn);
+      }
+      if (this.distances != null) {
+        this.distances.claim(x, y, this.turn);
+        this.sceneCache.invalidate();
       }
 
       // changes player turn after every valid click
       this.turn = !this.turn;
+      this.showHints();
 
     }
 
   }
 
+  // the computer strategy for the player whose turn it is, or null if
+  // that player is a person
+  Strategy computerToMove() {
+    return this.turn ? this.player1Computer : this.player2Computer;
+  }
 
+  // the ponderer of the player whose turn it is, or null if that player
+  // is a person or pondering is off
+  Ponderer pondererToMove() {
+    return this.turn ? this.player1Ponderer : this.player2Ponderer;
+  }
 
-  // checks to see if a path exists from left to right
-  boolean checkHorizontalPath() {
-
-    // traverses cells along top horizontally 
-    for (int x = 0; x < this.boardSize; x++) {
-      Cell c = this.board.get(0).get(x);
+  // lets a computer player take its turn. While pondering, the move is
+  // only played once its search has finished, and then the computer
+  // searches ahead while the person thinks
+  public void onTick() {
+    Strategy computer = this.computerToMove();
+    if (computer != null && !this.gameOver()) {
+      GameEngine engine = this.toEngine();
+      Ponderer ponderer = this.pondererToMove();
+      int move = this.book == null ? -1 : this.book.bestMove(engine);
+      if (move < 0 && ponderer == null) {
+        move = computer.chooseMove(engine, this.random);
+      }
+      else if (move < 0) {
+        move = ponderer.moveFor(engine);
+      }
 
-      // call helper method that checks path from left to right on this cell
-      if (c.checkHorizontalHelp(c, new GameConstants().player1Color, 
-          new Stack<Cell>())) {
-        return true;
+      if (move >= 0) {
+        this.claimCell(move % this.boardSize, move / this.boardSize);
+        if (ponderer != null && this.computerToMove() == null) {
+          ponderer.ponder(this.toEngine());
+        }
       }
     }
+  }
 
-    return false;
+  // a headless engine continuing this game
+  GameEngine toEngine() {
+    return new GameEngine(this.boardState(), this.turn);
   }
 
 
-  // checks to see if a path exists from top to bottom
-  boolean checkVerticalPath() {
 
-    // traverses cells along left side horizontally 
-    for (int y = 0; y < this.boardSize; y++) {
-      Cell c = this.board.get(y).get(0);
+  // checks to see if a path exists from left to right, searching the
+  // bytes of the board
+  boolean checkHorizontalPath() {
+    long start = Metrics.start();
+    boolean found = this.grid.connects(BoardState.PLAYER1);
+    Metrics.pathSearched(start, this.grid.visited);
+    return found;
+  }
 
-      // call helper method that checks path from top to bottom on this cell
-      if (c.checkVerticalHelp(c, new GameConstants().player2Color, 
-          new Queue<Cell>())) {
-        return true;
-      }
+  // checks to see if a path exists from left to right through the cells,
+  // searching from every cell of the left column at once in the order
+  // given by the worklist
+  boolean checkHorizontalPath(ICollection<Cell> worklist) {
+    long start = Metrics.start();
+    PathSearch search = new PathSearch(new GameConstants().player1Color, true, 
+        worklist, this.board.size() * this.board.size());
+
+    // seeds cells along the left column
+    for (int x = 0; x < this.board.size(); x++) {
+      search.seed(this.board.get(0).get(x));
     }
 
-    return false;
+    boolean found = search.run();
+    Metrics.pathSearched(start, search.visited);
+    return found;
+  }
+
+
+  // checks to see if a path exists from top to bottom, searching the
+  // bytes of the board
+  boolean checkVerticalPath() {
+    long start = Metrics.start();
+    boolean found = this.grid.connects(BoardState.PLAYER2);
+    Metrics.pathSearched(start, this.grid.visited);
+    return found;
+  }
+
+  // checks to see if a path exists from top to bottom through the cells,
+  // searching from every cell of the top row at once in the order given
+  // by the worklist
+  boolean checkVerticalPath(ICollection<Cell> worklist) {
+    long start = Metrics.start();
+    PathSearch search = new PathSearch(new GameConstants().player2Color, false, 
+        worklist, this.board.size() * this.board.size());
+
+    // seeds cells along the top row
+    for (int y = 0; y < this.board.size(); y++) {
+      search.seed(this.board.get(y).get(0));
+    }
+
+    boolean found = search.run();
+    Metrics.pathSearched(start, search.visited);
+    return found;
   }
 
   // checks to see if any path exists vertically or horizontally
+  // (looked up in the tracker; checkHorizontalPath and checkVerticalPath
+  // remain as the full traversal for reference)
   boolean checkPath() {
-    return this.checkHorizontalPath() || this.checkVerticalPath();
+    long start = Metrics.start();
+    boolean connected = this.tracker.player1Connected() || this.tracker.player2Connected();
+    Metrics.CHECK_PATH.stop(start);
+    return connected;
   }
 
-  // checks to see if any white spaces are still there
+  // checks to see if any white spaces are still there (exluding edges)
   boolean anyWhiteLeft() {
+    long start = Metrics.start();
+    boolean left = this.tracker.anyEmptyLeft();
+    Metrics.ANY_WHITE_LEFT.stop(start);
+    return left;
+  }
 
-    //checks through each cell of board to see if any are white (exluding edges)
-    for (int y = 1 ; y < (this.boardSize - 1); y++) {
-      for (int x = 1; x < (this.boardSize - 1); x++) {
+  // ends game when a path is made or no white cells are left over
+  boolean gameOver() {
+    return checkPath() || !anyWhiteLeft();
+  }
 
-        // gets cell at every x and y coordinate as for loop loops
-        Cell c = this.board.get(y).get(x);
+  // handles a pressed key
+  public void onKeyEvent(String key) {
+    if (key.equals("r")) {
+      this.restart();
+    }
+    else if (key.equals("u")) {
+      this.undoMove();
+
+      // against the computer, takes back the computer's reply too so the
+      // person is to move again
+      if (this.computerToMove() != null
+          && (this.player1Computer == null || this.player2Computer == null)) {
+        this.undoMove();
+      }
+    }
+    else if (key.equals("y")) {
+      this.redoMove();
+    }
+    else if (key.equals("h")) {
+      this.toggleHints();
+    }
+    else if (key.equals("d")) {
+      this.toggleHeatmap();
+    }
+    else if (key.equals("p")) {
+      this.togglePondering();
+    }
+    else {
+      this.moveView(key);
+    }
+  }
 
-        // returns true if any white cells remain
-        if (c.color == (new GameConstants().mtColor)) {
-          return true;
-        }
+  // EFFECT: zooms the view of a board drawn through a viewport in ("=" or
+  // "+") or out ("-"), or pans it a quarter of the window with the arrow
+  // keys (does nothing for boards that fit the window)
+  void moveView(String key) {
+    RasterRenderer raster = this.sceneCache.raster;
+    if (raster == null) {
+      return;
+    }
+    if (key.equals("=") || key.equals("+")) {
+      raster.zoomIn();
+    }
+    else if (key.equals("-")) {
+      raster.zoomOut();
+    }
+    else if (key.equals("left")) {
+      raster.pan(-0.25, 0);
+    }
+    else if (key.equals("right")) {
+      raster.pan(0.25, 0);
+    }
+    else if (key.equals("up")) {
+      raster.pan(0, -0.25);
+    }
+    else if (key.equals("down")) {
+      raster.pan(0, 0.25);
+    }
+  }
+
+  // EFFECT: starts or stops choosing the computer players' moves in the
+  // background, searching ahead while the person thinks
+  void togglePondering() {
+    if (this.player1Ponderer == null && this.player2Ponderer == null) {
+      if (this.player1Computer != null) {
+        this.player1Ponderer = new Ponderer(this.player1Computer,
+            new GameConstants().ponderBreadth, this.random.split());
+      }
+      if (this.player2Computer != null) {
+        this.player2Ponderer = new Ponderer(this.player2Computer,
+            new GameConstants().ponderBreadth, this.random.split());
       }
     }
+    else {
+      this.stopPondering();
+      if (this.player1Ponderer != null) {
+        this.player1Ponderer.close();
+      }
+      if (this.player2Ponderer != null) {
+        this.player2Ponderer.close();
+      }
+      this.player1Ponderer = null;
+      this.player2Ponderer = null;
+    }
+  }
 
+  // EFFECT: drops every search the computer players are pondering, as
+  // the position they were searching ahead from is gone
+  void stopPondering() {
+    if (this.player1Ponderer != null) {
+      this.player1Ponderer.stop();
+    }
+    if (this.player2Ponderer != null) {
+      this.player2Ponderer.stop();
+    }
+  }
+
+  // EFFECT: starts or stops keeping the distance maps of the board and
+  // shading the empty cells by them
+  void toggleHeatmap() {
+    this.distances = this.distances == null ? new DistanceTracker(this.grid) : null;
+    this.sceneCache.invalidate();
+  }
+
+  // how many more empty cells than its shortest connection the player to
+  // move needs to connect through the cell at the given column and row
+  // (DistanceMap.UNREACHABLE if it cannot, or if the heatmap is off)
+  int heatAt(int col, int row) {
+    if (this.distances == null) {
+      return DistanceMap.UNREACHABLE;
+    }
+    return this.distances.slack(this.turn ? BoardState.PLAYER1 : BoardState.PLAYER2,
+        row * this.boardSize + col);
+  }
+
+  // EFFECT: starts or stops keeping the cuts of the board and marking the
+  // cells the player to move must claim
+  void toggleHints() {
+    this.cuts = this.cuts == null ? new CutTracker(this.grid) : null;
+    this.showHints();
+  }
+
+  // EFFECT: marks the cells the player to move must claim, if hints are
+  // shown, redrawing the cells marked before and now
+  void showHints() {
+    for (int move : this.hinted) {
+      this.sceneCache.markDirty(move % this.boardSize, move / this.boardSize);
+    }
+    if (this.cuts == null) {
+      this.hinted = new int[0];
+    }
+    else {
+      this.hinted = this.cuts.mustPlay(this.turn ? BoardState.PLAYER1 : BoardState.PLAYER2);
+    }
+    for (int move : this.hinted) {
+      this.sceneCache.markDirty(move % this.boardSize, move / this.boardSize);
+    }
+  }
+
+  // is the cell at the given column and row one the player to move must
+  // claim?
+  boolean isHinted(int col, int row) {
+    for (int move : this.hinted) {
+      if (move == row * this.boardSize + col) {
+        return true;
+      }
+    }
     return false;
   }
 
-  // ends game when a path is made or no white cells are left over
-  boolean gameOver() {
-    return checkPath() || !anyWhiteLeft();
+  // EFFECT: saves the game and puts the board back to the starting lattice
+  // in place, by whitening the cells claimed since the last restart and
+  // rolling their claims out of the tracker, so a restart costs the moves
+  // played instead of building every cell of the board again
+  void restart() {
+    int played = this.history.count;
+    this.saveHistory();
+
+    // clearing the history leaves its moves in place
+    if (this.tracked && this.tracker.claimCount == played) {
+      for (int i = played - 1; i >= 0; i--) {
+        int move = this.history.moves[i];
+        int x = move % this.boardSize;
+        int y = move / this.boardSize;
+        this.grid.setOwner(x, y, BoardState.EMPTY);
+        this.tracker.undoClaim();
+        this.sceneCache.markDirty(x, y);
+      }
+      this.sceneCache.newGame(this.boardSize * this.boardSize);
+    }
+
+    // cells colored some other way are all recolored
+    else {
+      this.grid.reset();
+      this.sceneCache.boardReplaced();
+      this.tracker = new ConnectivityTracker(this.boardSize);
+      this.tracker.keepHistory();
+      this.tracked = true;
+      this.sceneCache.invalidate();
+    }
+
+    // the new game opens with player1, whoever moved last
+    this.turn = true;
+    if (this.cuts != null) {
+      this.cuts = new CutTracker(this.boardSize);
+    }
+    this.stopPondering();
+    this.showHints();
+    if (this.distances != null) {
+      this.distances = new DistanceTracker(this.boardSize);
+      this.sceneCache.invalidate();
+    }
   }
 
-  // handles a pressed key
-  public void onKeyEvent(String key) {
-    if (key.equals("r")) {
-      this.board = new ArrayList<>(); 
-      this.initializeGame();
+  // EFFECT: takes back the last claimed cell, giving the turn back to the
+  // player who claimed it (does nothing if there is no cell to take back)
+  void undoMove() {
+    if (this.history.count == 0 || this.tracker.claimCount == 0) {
+      return;
     }
+    this.history.count--;
+    int move = this.history.moves[this.history.count];
+    int x = move % this.boardSize;
+    int y = move / this.boardSize;
+    this.grid.setOwner(x, y, BoardState.EMPTY);
+    this.tracker.undoClaim();
+    this.sceneCache.markDirty(x, y);
+    if (this.cuts != null) {
+      this.cuts.unclaim(x, y);
+    }
+    if (this.distances != null) {
+      this.distances.unclaim(x, y);
+      this.sceneCache.invalidate();
+    }
+    this.turn = !this.turn;
+    this.showHints();
+    this.stopPondering();
   }
 
+  // EFFECT: claims the last cell that was taken back again (does nothing
+  // if a cell has been claimed since)
+  void redoMove() {
+    if (this.history.count < this.redoable) {
+      int redoable = this.redoable;
+      int move = this.history.moves[this.history.count];
+      this.claimCell(move % this.boardSize, move / this.boardSize);
+      this.redoable = redoable;
+    }
+  }
+
+
+  // EFFECT: writes the moves of the game so far with the recorder, if
+  // there is one, and starts a new history
+  void saveHistory() {
+    if (this.recorder != null && this.history.count > 0) {
+      try {
+        this.recorder.write(this.boardSize, this.seed, this.history);
+      }
+      catch (IOException e) {
+        throw new IllegalStateException("could not save the game", e);
+      }
+    }
+    this.history.clear();
+    this.redoable = 0;
+  }
 
-  // makes the scene of the game
+  // makes the scene of the game, redrawing only the cells that changed
+  // since the last frame
   public WorldScene makeScene() {
+    long start = Metrics.start();
+    WorldScene scene = this.sceneCache.render(this);
+    Metrics.MAKE_SCENE.stop(start);
+    if (Metrics.ENABLED) {
+      Metrics.FRAMES.increment();
+    }
+    return scene;
+  }
 
-    // assigns scene dimensions
-    WorldScene scene = new WorldScene(this.board.get(1).size()
-        * new GameConstants().cellSize, this.board.get(1).size() 
-        * new GameConstants().cellSize);
+  // makes ending (winning/tie) scene of the game
+  public WorldScene makeEndScene() {
+    long start = Metrics.start();
+    int pixels = this.sceneCache.scenePixels(this.boardSize);
+    WorldScene scene = new WorldScene(pixels, pixels);
+
+    // if player 1 wins
+    if (this.tracker.player1Connected()) {
+      scene.placeImageXY(new TextImage("PLAYER 1 WINS!", 20, FontStyle.BOLD, 
+          new GameConstants().player1Color), 
+          (pixels / 5), 
+          (pixels / 5));
+    }
+
+    // if player 2 wins
+    else if (this.tracker.player2Connected()) {
+      scene.placeImageXY(new TextImage("PLAYER 2 WINS!", 20, FontStyle.BOLD, 
+          new GameConstants().player2Color), 
+          pixels / 5, 
+          pixels / 5);
+    }
+
+    // if it's a tie
+    else {
+      scene.placeImageXY(new TextImage("IT'S A TIE!", 20, FontStyle.BOLD, 
+          new GameConstants().mtColor), 
+          (pixels / 5), 
+          (pixels / 5));
+    }
+
+    Metrics.MAKE_END_SCENE.stop(start);
+    return scene;
+
+  }
+
+}
+
+// caches the scene of a BridgIt game between frames. The first frame
+// draws every cell; later frames only place the cells marked dirty on top
+// of the cached scene, and whether the game is over is only checked again
+// after the board changes
+class SceneCache {
+  WorldScene scene;
+  WorldScene endScene;
+  ArrayList<Posn> dirty;
+  boolean changed;
+  boolean over;
+
+  // images placed on the scene since it was last drawn from scratch
+  int placed;
+
+  // shared image per cell color
+  WorldImage player1Image;
+  WorldImage player2Image;
+  WorldImage mtImage;
+
+  // outline drawn over a cell the player to move must claim, in that
+  // player's color
+  WorldImage player1Hint;
+  WorldImage player2Hint;
+
+  // shades drawn over the empty cells when the heatmap is shown, darkest
+  // for the cells on a shortest connection of the player to move
+  WorldImage[] player1Heat;
+  WorldImage[] player2Heat;
+
+  // draws the cells through a viewport instead, for boards too large for
+  // the window (null to place an image per cell)
+  RasterRenderer raster;
+
+  // set when the board has changed without its cells being marked dirty,
+  // so the viewport counts its blocks again
+  boolean recount;
+
+  // constructor for an empty cache (the first frame draws everything)
+  SceneCache() {
+    GameConstants constants = new GameConstants();
+    this.scene = null;
+    this.endScene = null;
+    this.dirty = new ArrayList<Posn>();
+    this.changed = true;
+    this.over = false;
+    this.player1Image = new RectangleImage(constants.cellSize, constants.cellSize, 
+        OutlineMode.SOLID, constants.player1Color);
+    this.player2Image = new RectangleImage(constants.cellSize, constants.cellSize, 
+        OutlineMode.SOLID, constants.player2Color);
+    this.mtImage = new RectangleImage(constants.cellSize, constants.cellSize, 
+        OutlineMode.SOLID, constants.mtColor);
+    this.player1Hint = new RectangleImage(constants.cellSize / 2, constants.cellSize / 2,
+        OutlineMode.OUTLINE, constants.player1Color);
+    this.player2Hint = new RectangleImage(constants.cellSize / 2, constants.cellSize / 2,
+        OutlineMode.OUTLINE, constants.player2Color);
+    this.player1Heat = new WorldImage[constants.heatLevels];
+    this.player2Heat = new WorldImage[constants.heatLevels];
+    for (int slack = 0; slack < constants.heatLevels; slack++) {
+      double amount = 0.75 * (constants.heatLevels - slack) / constants.heatLevels;
+      this.player1Heat[slack] = new RectangleImage(constants.cellSize * 3 / 4,
+          constants.cellSize * 3 / 4, OutlineMode.SOLID,
+          constants.tint(constants.player1Color, amount));
+      this.player2Heat[slack] = new RectangleImage(constants.cellSize * 3 / 4,
+          constants.cellSize * 3 / 4, OutlineMode.SOLID,
+          constants.tint(constants.player2Color, amount));
+    }
+  }
+
+  // EFFECT: marks the cell at the given column and row to be redrawn
+  void markDirty(int col, int row) {
+    this.dirty.add(new Posn(col, row));
+    this.changed = true;
+  }
+
+  // EFFECT: drops the cached end scene so a new game can end differently,
+  // keeping the board's scene and the cells marked dirty unless it has
+  // been drawn over by more than a whole board's worth of cells (every
+  // image placed stays in the scene, so it is drawn afresh now and then)
+  void newGame(int cells) {
+    if (this.placed > 2 * cells) {
+      this.invalidate();
+    }
+    this.endScene = null;
+    this.changed = true;
+  }
+
+  // EFFECT: drops the cached scenes so the next frame redraws every cell
+  // (a viewport still counts the cells marked dirty then, since it only
+  // redraws the cells in view)
+  void invalidate() {
+    this.scene = null;
+    this.endScene = null;
+    if (this.raster == null) {
+      this.dirty.clear();
+    }
+    this.changed = true;
+  }
+
+  // EFFECT: redraws every cell, after the board's cells were changed
+  // without being marked dirty
+  void boardReplaced() {
+    this.recount = true;
+    this.invalidate();
+  }
+
+  // the shared image for a cell of the given color
+  WorldImage imageOf(Color color) {
+    if (color == new GameConstants().player1Color) {
+      return this.player1Image;
+    }
+    else if (color == new GameConstants().player2Color) {
+      return this.player2Image;
+    }
+    else {
+      return this.mtImage;
+    }
+  }
+
+  // EFFECT: places the image of the cell at the given column and row,
+  // shaded by the heatmap and with the hint outline on top if they are
+  // shown
+  void place(BridgIt game, int col, int row) {
+    if (this.raster != null) {
+      this.raster.paint(game, col, row);
+      return;
+    }
+    int cellSize = new GameConstants().cellSize;
+    this.scene.placeImageXY(
+        this.imageOf(new GameConstants().colorOf(game.grid.ownerAt(col, row))), 
+        (col * cellSize) + (cellSize / 2), (row * cellSize) + (cellSize / 2));
+    this.placed++;
+    int slack = game.heatAt(col, row);
+    if (slack < new GameConstants().heatLevels
+        && game.grid.ownerAt(col, row) == BoardState.EMPTY) {
+      this.scene.placeImageXY(game.turn ? this.player1Heat[slack] : this.player2Heat[slack],
+          (col * cellSize) + (cellSize / 2), (row * cellSize) + (cellSize / 2));
+      this.placed++;
+    }
+    if (game.isHinted(col, row)) {
+      this.scene.placeImageXY(game.turn ? this.player1Hint : this.player2Hint,
+          (col * cellSize) + (cellSize / 2), (row * cellSize) + (cellSize / 2));
+      this.placed++;
+    }
+  }
+
+  // the pixels across the scene of a board of the given size
+  int scenePixels(int size) {
+    return this.raster == null ? size * new GameConstants().cellSize : this.raster.windowPixels;
+  }
+
+  // the cell (as column and row) under the given point of the scene, or
+  // null if the view is too far zoomed out to tell
+  Posn cellAt(Posn position) {
+    if (this.raster != null) {
+      return this.raster.cellAt(position);
+    }
+    int cellSize = new GameConstants().cellSize;
+    return new Posn(position.x / cellSize, position.y / cellSize);
+  }
+
+  // the point of the scene in the middle of the cell at the given column
+  // and row, moving the view to show it if needed
+  Posn pointOf(int col, int row) {
+    if (this.raster != null) {
+      return this.raster.reveal(col, row);
+    }
+    int cellSize = new GameConstants().cellSize;
+    return new Posn(col * cellSize + cellSize / 2, row * cellSize + cellSize / 2);
+  }
+
+  // returns the scene of the game, updating the cache with any changes
+  WorldScene render(BridgIt game) {
+
+    // checks for the end of the game once per change to the board
+    if (this.changed) {
+      this.over = game.gameOver();
+      this.changed = false;
+    }
+
+    // returns end scene if game ends
+    if (this.over) {
+      if (this.endScene == null) {
+        this.endScene = game.makeEndScene();
+      }
+      return this.endScene;
+    }
+
+    // a viewport counts the cells that changed and draws the cells in
+    // view, the first time and whenever the view moves
+    if (this.raster != null && (this.scene == null || this.raster.moved)) {
+      if (this.scene == null) {
+        this.scene = this.raster.newScene();
+      }
+      if (this.recount) {
+        this.raster.counts.recount(game.grid);
+        this.recount = false;
+      }
+      for (Posn p : this.dirty) {
+        this.raster.count(game, p.x, p.y);
+      }
+      this.raster.redraw(game);
+    }
+
+    // draws every cell the first time
+    else if (this.scene == null) {
+      int size = game.grid.size;
+      this.scene = new WorldScene(size * new GameConstants().cellSize, 
+          size * new GameConstants().cellSize);
+      this.placed = 0;
+      for (int col = 0; col < size; col++) {
+        for (int row = 0; row < size; row++) {
+          this.place(game, col, row);
+        }
+      }
+    }
+
+    // afterwards only draws the cells that changed over the old ones
+    else {
+      for (Posn p : this.dirty) {
+        this.place(game, p.x, p.y);
+      }
+    }
+
+    this.dirty.clear();
+    return this.scene;
+  }
+}
+
+//Represents a mutable collection of items
+interface ICollection<T> {
+
+  // Is this collection empty?
+  boolean isEmpty();
+
+  // EFFECT: adds the item to the collection
+  void add(T t);
+
+  // Returns the first item of the collection
+  // EFFECT: removes that first item  
+  T remove();
+}
+
+//represents a last-in first-out structure
+class Stack<T> implements ICollection<T> {
+  Deque<T> contents;
+
+  // constructor
+  Stack() {
+    this.contents = new LinkedList<T>();
+  }
+
+  // Is this stack empty?
+  @Override
+  public boolean isEmpty() {
+    return contents.isEmpty();
+  }
+
+  // EFFECT: adds the item to ICollection
+  @Override
+  public void add(T t) {
+    contents.addFirst(t);
+  }
+
+  // EFFECT: removes that first item from ICollection
+  @Override
+  public T remove() {
+    return contents.removeFirst();
+  }
+
+}
+
+//represents a last-in first-out structure
+class Queue<T> implements ICollection<T> {
+  Deque<T> contents;
+
+  // constructor for Queue which initializes the deque
+  Queue() {
+    this.contents = new LinkedList<T>();
+  }
+
+  // determines if queue is empty
+  @Override
+  public boolean isEmpty() {
+    return this.contents.isEmpty();
+  }
+
+  // adds item to queue
+  @Override
+  public void add(T t) {
+    this.contents.addLast(t);
+  }
+
+  //removes item from queue
+  @Override
+  public T remove() {
+    return this.contents.removeFirst();
+  }
+}
+
+
+
+// represents a disjoint-set forest over cell indices, where a cell
+// only belongs to the forest once it has been added. A forest that keeps
+// its history logs every add and union so they can be rolled back in
+// reverse order; it then stops compressing paths in find (which would
+// change parents the log does not know about) and relies on union by rank
+// alone to keep trees shallow
+class DisjointSet {
+  int[] parent;
+  int[] rank;
+
+  // when history is kept: one entry per change, (element << 2) | kind, for
+  // an element that was added (ADDED) or a root hung under another root
+  // (HUNG), which also gained a rank (RAISED). Null when not kept
+  static final int ADDED = 0;
+  static final int HUNG = 1;
+  static final int RAISED = 2;
+  int[] log;
+  int logSize;
+
+  // constructor for a forest with room for the given number of elements
+  DisjointSet(int capacity) {
+    this.parent = new int[capacity];
+    this.rank = new int[capacity];
+    Arrays.fill(this.parent, -1);
+  }
+
+  // has this element been added to the forest?
+  boolean contains(int i) {
+    return this.parent[i] >= 0;
+  }
+
+  // EFFECT: adds the element as its own set
+  void add(int i) {
+    this.parent[i] = i;
+    this.rank[i] = 0;
+    if (this.log != null) {
+      this.logChange(i, ADDED);
+    }
+  }
+
+  // finds the representative of the element's set, halving the path on the
+  // way unless history is kept
+  int find(int i) {
+    if (this.log != null) {
+      while (this.parent[i] != i) {
+        i = this.parent[i];
+      }
+      return i;
+    }
+    while (this.parent[i] != i) {
+      this.parent[i] = this.parent[this.parent[i]];
+      i = this.parent[i];
+    }
+    return i;
+  }
+
+  // EFFECT: merges the sets of both elements, hanging the shorter tree
+  // under the taller one
+  void union(int a, int b) {
+    int rootA = this.find(a);
+    int rootB = this.find(b);
+    if (rootA == rootB) {
+      return;
+    }
+    if (this.rank[rootA] < this.rank[rootB]) {
+      this.parent[rootA] = rootB;
+      this.logChange(rootA, HUNG);
+    }
+    else if (this.rank[rootA] > this.rank[rootB]) {
+      this.parent[rootB] = rootA;
+      this.logChange(rootB, HUNG);
+    }
+    else {
+      this.parent[rootB] = rootA;
+      this.rank[rootA]++;
+      this.logChange(rootB, RAISED);
+    }
+  }
+
+  // are both elements in the same set?
+  boolean connected(int a, int b) {
+    return this.find(a) == this.find(b);
+  }
+
+  // EFFECT: starts logging changes so they can be rolled back
+  void keepHistory() {
+    if (this.log == null) {
+      this.log = new int[64];
+      this.logSize = 0;
+    }
+  }
+
+  // EFFECT: logs a change, if history is kept
+  void logChange(int i, int kind) {
+    if (this.log == null) {
+      return;
+    }
+    if (this.logSize == this.log.length) {
+      this.log = Arrays.copyOf(this.log, 2 * this.logSize);
+    }
+    this.log[this.logSize] = (i << 2) | kind;
+    this.logSize++;
+  }
+
+  // EFFECT: undoes every change logged after the log had the given size,
+  // latest first
+  void rollback(int mark) {
+    while (this.logSize > mark) {
+      this.logSize--;
+      int entry = this.log[this.logSize];
+      int i = entry >> 2;
+      if ((entry & 3) == ADDED) {
+        this.parent[i] = -1;
+      }
+      else {
+        if ((entry & 3) == RAISED) {
+          this.rank[this.parent[i]]--;
+        }
+        this.parent[i] = i;
+      }
+    }
+  }
+
+  // EFFECT: makes this forest the same as the other one, which must have
+  // the same capacity
+  void copyFrom(DisjointSet other) {
+    System.arraycopy(other.parent, 0, this.parent, 0, this.parent.length);
+    System.arraycopy(other.rank, 0, this.rank, 0, this.rank.length);
+    if (other.log == null) {
+      this.log = null;
+    }
+    else {
+      if (this.log == null || this.log.length < other.logSize) {
+        this.log = new int[other.log.length];
+      }
+      System.arraycopy(other.log, 0, this.log, 0, other.logSize);
+    }
+    this.logSize = other.logSize;
+  }
+
+  // returns a copy with its own arrays
+  DisjointSet copy() {
+    DisjointSet copy = new DisjointSet(0);
+    copy.parent = this.parent.clone();
+    copy.rank = this.rank.clone();
+    if (this.log != null) {
+      copy.log = this.log.clone();
+    }
+    copy.logSize = this.logSize;
+    return copy;
+  }
+}
 
-    for (int i = 0; i < this.board.get(1).size(); i++) {
-      for (int j = 0; j < this.board.get(1).size(); j++) {
-        scene.placeImageXY(this.board.get(i).get(j).draw(), 
-            (i * new GameConstants().cellSize) + 50, 
-            (j * new GameConstants().cellSize) + 50);
+// tracks, for each player, which colored cells are joined together so a
+// winning path can be looked up instead of searched for. Cells are indexed
+// row * size + col, where col is the outer index of the board. Each player
+// also gets two virtual nodes standing for its goal edges: player1 joins
+// the left and right columns, player2 joins the top and bottom rows
+class ConnectivityTracker {
+  int size;
+  int source;
+  int sink;
+  DisjointSet player1;
+  DisjointSet player2;
+  int emptyCount;
+
+  // when history is kept: one entry per claim not yet undone, (log size of
+  // the forest before the claim << 2) | (2 if the cell was interior) | (1
+  // for player1). Null when not kept
+  int[] claims;
+  int claimCount;
+
+  // constructor that seeds the tracker with every colored cell of the board
+  ConnectivityTracker(ArrayList<ArrayList<Cell>> board) {
+    this(new CellBoard(board));
+  }
 
+  // constructor that seeds the tracker with every owned cell of the board
+  ConnectivityTracker(BoardState board) {
+    this.size = board.size();
+    this.source = this.size * this.size;
+    this.sink = this.source + 1;
+    this.player1 = new DisjointSet(this.sink + 1);
+    this.player2 = new DisjointSet(this.sink + 1);
+    this.player1.add(this.source);
+    this.player1.add(this.sink);
+    this.player2.add(this.source);
+    this.player2.add(this.sink);
+    this.emptyCount = 0;
+
+    // visits the cells in index order, so boards stored row by row are
+    // read sequentially
+    for (int row = 0; row < this.size; row++) {
+      for (int col = 0; col < this.size; col++) {
+        int owner = board.ownerAt(col, row);
+
+        if (owner == BoardState.PLAYER1) {
+          this.add(this.player1, col, row, true);
+        }
+        else if (owner == BoardState.PLAYER2) {
+          this.add(this.player2, col, row, false);
+        }
+        else if (this.isInterior(col, row)) {
+          this.emptyCount++;
+        }
       }
+    }
+  }
 
-      // returns end scene if game ends
-      if (this.gameOver()) {
-        scene = this.makeEndScene();
+  // constructor for the starting lattice of a board of the given size,
+  // which visits only the colored cells instead of asking a board for the
+  // owner of every cell
+  ConnectivityTracker(int size) {
+    this(size, new DisjointSet(size * size + 2), new DisjointSet(size * size + 2),
+        ((size - 2) * (size - 2) + 1) / 2);
+    this.player1.add(this.source);
+    this.player1.add(this.sink);
+    this.player2.add(this.source);
+    this.player2.add(this.sink);
+
+    // player1 holds the even columns of odd rows and player2 the odd
+    // columns of even rows
+    for (int row = 0; row < size; row++) {
+      for (int col = 1 - row % 2; col < size; col += 2) {
+        this.add(row % 2 == 1 ? this.player1 : this.player2, col, row, row % 2 == 1);
       }
-
     }
-
-    return scene;
   }
 
-  // makes ending (winning/tie) scene of the game
-  public WorldScene makeEndScene() {
-    WorldScene scene = new WorldScene((this.boardSize * new GameConstants().cellSize), 
-        this.boardSize * new GameConstants().cellSize);
+  // constructor sharing the given forests
+  ConnectivityTracker(int size, DisjointSet player1, DisjointSet player2, int emptyCount) {
+    this.size = size;
+    this.source = size * size;
+    this.sink = this.source + 1;
+    this.player1 = player1;
+    this.player2 = player2;
+    this.emptyCount = emptyCount;
+  }
 
-    // if player 1 wins
-    if (this.checkHorizontalPath()) {
-      scene.placeImageXY(new TextImage("PLAYER 1 WINS!", 20, FontStyle.BOLD, 
-          new GameConstants().player1Color), 
-          ((this.boardSize * new GameConstants().cellSize) / 5), 
-          ((this.boardSize * new GameConstants().cellSize) / 5));
+  // returns a copy with its own forests
+  ConnectivityTracker copy() {
+    ConnectivityTracker copy = new ConnectivityTracker(this.size, this.player1.copy(),
+        this.player2.copy(), this.emptyCount);
+    if (this.claims != null) {
+      copy.claims = this.claims.clone();
     }
+    copy.claimCount = this.claimCount;
+    return copy;
+  }
 
-    // if player 2 wins
-    else if (this.checkVerticalPath()) {
-      scene.placeImageXY(new TextImage("PLAYER 2 WINS!", 20, FontStyle.BOLD, 
-          new GameConstants().player2Color), 
-          (this.boardSize * new GameConstants().cellSize) / 5, 
-          (this.boardSize * new GameConstants().cellSize) / 5);
+  // EFFECT: makes this tracker the same as the other one, for a board of
+  // the same size
+  void copyFrom(ConnectivityTracker other) {
+    this.player1.copyFrom(other.player1);
+    this.player2.copyFrom(other.player2);
+    this.emptyCount = other.emptyCount;
+    if (other.claims == null) {
+      this.claims = null;
     }
-
-    // if it's a tie
     else {
-      scene.placeImageXY(new TextImage("IT'S A TIE!", 20, FontStyle.BOLD, 
-          new GameConstants().mtColor), 
-          ((this.boardSize * new GameConstants().cellSize) / 5), 
-          ((this.boardSize * new GameConstants().cellSize) / 5));
+      if (this.claims == null || this.claims.length < other.claimCount) {
+        this.claims = new int[other.claims.length];
+      }
+      System.arraycopy(other.claims, 0, this.claims, 0, other.claimCount);
     }
-
-    return scene;
-
+    this.claimCount = other.claimCount;
   }
 
-}
-
-//Represents a mutable collection of items
-interface ICollection<T> {
-
-  // Is this collection empty?
-  boolean isEmpty();
-
-  // EFFECT: adds the item to the collection
-  void add(T t);
-
-  // Returns the first item of the collection
-  // EFFECT: removes that first item  
-  T remove();
-}
-
-//represents a last-in first-out structure
-class Stack<T> implements ICollection<T> {
-  Deque<T> contents;
-
-  // constructor
-  Stack() {
-    this.contents = new LinkedList<T>();
+  // EFFECT: remembers every claim from now on, so that it can be undone
+  void keepHistory() {
+    if (this.claims == null) {
+      this.player1.keepHistory();
+      this.player2.keepHistory();
+      this.claims = new int[16];
+      this.claimCount = 0;
+    }
   }
 
-  // Is this stack empty?
-  @Override
-  public boolean isEmpty() {
-    return contents.isEmpty();
+  // EFFECT: takes back the latest claim not yet undone, leaving the
+  // forests exactly as they were before it
+  void undoClaim() {
+    if (this.claims == null || this.claimCount == 0) {
+      throw new IllegalStateException("no claims to undo");
+    }
+    this.claimCount--;
+    int entry = this.claims[this.claimCount];
+    DisjointSet sets = (entry & 1) != 0 ? this.player1 : this.player2;
+    sets.rollback(entry >>> 2);
+    if ((entry & 2) != 0) {
+      this.emptyCount++;
+    }
   }
 
-  // EFFECT: adds the item to ICollection
-  @Override
-  public void add(T t) {
-    contents.addFirst(t);
+  // is the cell off the edges of the board (so it can be clicked)?
+  boolean isInterior(int col, int row) {
+    return col > 0 && col < this.size - 1 && row > 0 && row < this.size - 1;
   }
 
-  // EFFECT: removes that first item from ICollection
-  @Override
-  public T remove() {
-    return contents.removeFirst();
+  // EFFECT: records that a white cell was colored by player1 (or player2)
+  void claim(int col, int row, boolean player1) {
+    if (this.claims != null) {
+      if (this.claimCount == this.claims.length) {
+        this.claims = Arrays.copyOf(this.claims, 2 * this.claimCount);
+      }
+      DisjointSet sets = player1 ? this.player1 : this.player2;
+      this.claims[this.claimCount] = (sets.logSize << 2)
+          | (this.isInterior(col, row) ? 2 : 0) | (player1 ? 1 : 0);
+      this.claimCount++;
+    }
+    if (this.isInterior(col, row)) {
+      this.emptyCount--;
+    }
+
+    if (player1) {
+      this.add(this.player1, col, row, true);
+    }
+    else {
+      this.add(this.player2, col, row, false);
+    }
   }
 
-}
+  // EFFECT: adds the cell to the player's forest and joins it to any
+  // neighbor of the same player and to the goal edge it lies on
+  void add(DisjointSet sets, int col, int row, boolean player1) {
+    int index = row * this.size + col;
+    sets.add(index);
 
-//represents a last-in first-out structure
-class Queue<T> implements ICollection<T> {
-  Deque<T> contents;
+    if (col > 0 && sets.contains(index - 1)) {
+      sets.union(index, index - 1);
+    }
+    if (col < this.size - 1 && sets.contains(index + 1)) {
+      sets.union(index, index + 1);
+    }
+    if (row > 0 && sets.contains(index - this.size)) {
+      sets.union(index, index - this.size);
+    }
+    if (row < this.size - 1 && sets.contains(index + this.size)) {
+      sets.union(index, index + this.size);
+    }
 
-  // constructor for Queue which initializes the deque
-  Queue() {
-    this.contents = new LinkedList<T>();
+    // player1 goal edges are the left and right columns,
+    // player2 goal edges are the top and bottom rows
+    int line = player1 ? col : row;
+    if (line == 0) {
+      sets.union(index, this.source);
+    }
+    if (line == this.size - 1) {
+      sets.union(index, this.sink);
+    }
   }
 
-  // determines if queue is empty
-  @Override
-  public boolean isEmpty() {
-    return this.contents.isEmpty();
+  // has player1 connected the left and right columns?
+  boolean player1Connected() {
+    return this.player1.connected(this.source, this.sink);
   }
 
-  // adds item to queue
-  @Override
-  public void add(T t) {
-    this.contents.addLast(t);
+  // has player2 connected the top and bottom rows?
+  boolean player2Connected() {
+    return this.player2.connected(this.source, this.sink);
   }
 
-  //removes item from queue
-  @Override
-  public T remove() {
-    return this.contents.removeFirst();
+  // are there any white cells left off the edges of the board?
+  boolean anyEmptyLeft() {
+    return this.emptyCount > 0;
   }
 }
 
 
-
 //examples/test class
 class ExamplesBridgIt {
 
@@ -728,6 +1923,10 @@ class ExamplesBridgIt {
     Cell Cell5 = fullBoard.board.get(3).get(3);
     Cell5.color = new GameConstants().player1Color;
 
+    // cells above were recolored directly, so the trackers are rebuilt
+    horizontalBoard.syncTracker();
+    verticalBoard.syncTracker();
+    fullBoard.syncTracker();
 
 
   }
@@ -824,6 +2023,1467 @@ class ExamplesBridgIt {
             new GameConstants().player2Color, new Queue<Cell>()), true);
   }
 
+  // tests CellSet
+  void testCellSet(Tester t) {
+    initConditions();
+    CellSet seen = new CellSet(25);
+
+    t.checkExpect(seen.add(normalBoard.board.get(4).get(4)), true);
+    t.checkExpect(seen.add(normalBoard.board.get(4).get(4)), false);
+    t.checkExpect(seen.contains(normalBoard.board.get(3).get(4)), false);
+    t.checkExpect(seen.words.length, 1);
+
+    // cells past the expected capacity grow the bitset
+    t.checkExpect(seen.add(cellCyan), true);
+    t.checkExpect(seen.contains(cellCyan), true);
+    t.checkExpect(seen.contains(normalBoard.board.get(4).get(4)), true);
+  }
+
+  // tests that the full traversal and the tracker agree over random games,
+  // whichever worklist the traversal uses
+  void testPathSearchMatchesTracker(Tester t) {
+    Random rand = new Random(7);
+
+    for (int game = 0; game < 20; game++) {
+      BridgIt board = new BridgIt(5);
+
+      while (!board.gameOver()) {
+        board.onMouseClicked(new Posn(rand.nextInt(500), rand.nextInt(500)));
+        t.checkExpect(board.checkHorizontalPath(), board.tracker.player1Connected());
+        t.checkExpect(board.checkHorizontalPath(new Queue<Cell>()), 
+            board.tracker.player1Connected());
+        t.checkExpect(board.checkVerticalPath(), board.tracker.player2Connected());
+        t.checkExpect(board.checkVerticalPath(new Stack<Cell>()), 
+            board.tracker.player2Connected());
+      }
+    }
+  }
+
+  // tests BitBoard against the cell graph it mirrors
+  void testBitBoard(Tester t) {
+    initConditions();
+    BitBoard start = new BitBoard(5);
+    BoardState cells = normalBoard.boardState();
+
+    for (int col = 0; col < 5; col++) {
+      for (int row = 0; row < 5; row++) {
+        t.checkExpect(start.ownerAt(col, row), cells.ownerAt(col, row));
+      }
+    }
+    t.checkExpect(start.emptyCount(), 5);
+    t.checkExpect(start.isPlayable(1, 1), true);
+    t.checkExpect(start.isPlayable(0, 0), false);
+    t.checkExpect(start.isOver(), false);
+
+    BitBoard horizontal = new BitBoard(horizontalBoard.boardState());
+    BitBoard vertical = new BitBoard(verticalBoard.boardState());
+    t.checkExpect(horizontal.connects(BoardState.PLAYER1), true);
+    t.checkExpect(horizontal.connects(BoardState.PLAYER2), false);
+    t.checkExpect(vertical.winner(), BoardState.PLAYER2);
+    t.checkExpect(new BitBoard(fullBoard.boardState()).emptyCount(), 0);
+
+    // copies are independent of the board they came from
+    BoardState copy = start.copy();
+    copy.setOwner(2, 2, BoardState.PLAYER2);
+    t.checkExpect(copy.ownerAt(2, 2), BoardState.PLAYER2);
+    t.checkExpect(start.ownerAt(2, 2), BoardState.EMPTY);
+    t.checkExpect(copy.emptyCount(), 4);
+  }
+
+  // tests CellBoard
+  void testCellBoard(Tester t) {
+    initConditions();
+    BoardState horizontal = horizontalBoard.boardState();
+
+    t.checkExpect(horizontal.connects(BoardState.PLAYER1), true);
+    t.checkExpect(horizontal.winner(), BoardState.PLAYER1);
+    t.checkExpect(verticalBoard.boardState().winner(), BoardState.PLAYER2);
+    t.checkExpect(fullBoard.boardState().isOver(), true);
+
+    BoardState copy = normalBoard.boardState().copy();
+    copy.setOwner(1, 1, BoardState.PLAYER1);
+    t.checkExpect(copy.ownerAt(1, 1), BoardState.PLAYER1);
+    t.checkExpect(normalBoard.board.get(1).get(1).color, Color.WHITE);
+    t.checkExpect(copy.emptyCount(), 4);
+
+    // a copy of unlinked cells links each cell to the copies around it
+    CellBoard cells = new CellBoard(gameboard);
+    CellBoard linked = (CellBoard) cells.copy();
+    Cell corner = linked.board.get(0).get(0);
+    Cell middle = linked.board.get(1).get(1);
+    t.checkExpect(corner.above == null && corner.left == null, true);
+    t.checkExpect(corner.right == linked.board.get(1).get(0), true);
+    t.checkExpect(corner.below == linked.board.get(0).get(1), true);
+    t.checkExpect(corner.right.below == middle, true);
+    t.checkExpect(middle.above == linked.board.get(1).get(0), true);
+    t.checkExpect(middle.left == linked.board.get(0).get(1), true);
+    t.checkExpect(middle.right.right == null && middle.below.below == null, true);
+    t.checkExpect(middle.right.left == middle && middle.below.above == middle, true);
+
+    // and its path search follows those links
+    t.checkExpect(linked.connects(BoardState.PLAYER2), false);
+    linked.setOwner(0, 1, BoardState.PLAYER2);
+    t.checkExpect(linked.connects(BoardState.PLAYER2), true);
+    t.checkExpect(linked.connects(BoardState.PLAYER1), false);
+    t.checkExpect(BCell2.color, Color.WHITE);
+  }
+
+  // tests that the board size constructor builds a board of that size
+  void testBoardSize(Tester t) {
+    BridgIt large = new BridgIt(11);
+
+    t.checkExpect(large.boardSize, 11);
+    t.checkExpect(large.board.size(), 11);
+    t.checkExpect(large.board.get(10).size(), 11);
+    t.checkExpect(large.tracker.emptyCount, 25 + 16);
+    t.checkConstructorException(
+        new IllegalArgumentException("board size must be odd and greater than 3"), 
+        "BridgIt", 4);
+  }
+
+  // tests the headless game engine
+  void testGameEngine(Tester t) {
+    GameEngine game = new GameEngine(5);
+
+    t.checkExpect(game.legalMoves().length, 5);
+    t.checkExpect(game.currentPlayer(), BoardState.PLAYER1);
+    t.checkExpect(game.isLegal(0, 0), false);
+    t.checkExpect(game.isLegal(1, 1), true);
+    t.checkException(new IllegalArgumentException("cell (0, 2) is not playable"), 
+        game, "applyMove", 0, 2);
+
+    // the same moves as in testConnectivityTracker, given as (row, col)
+    game.applyMove(1, 1);
+    game.applyMove(1, 3);
+    GameEngine copy = game.copy();
+    game.applyMove(3, 1);
+    game.applyMove(2, 2);
+    t.checkExpect(game.isOver(), false);
+    t.checkExpect(game.board.ownerAt(2, 2), BoardState.PLAYER2);
+    game.applyMove(3, 3);
+    t.checkExpect(game.winner(), BoardState.PLAYER1);
+    t.checkExpect(game.isOver(), true);
+    t.checkExpect(game.legalMoves().length, 0);
+    t.checkExpect(game.moves, 5);
+
+    // the copy was taken after two moves and does not see the later ones
+    t.checkExpect(copy.legalMoves().length, 3);
+    t.checkExpect(copy.currentPlayer(), BoardState.PLAYER1);
+    t.checkExpect(copy.board.ownerAt(2, 2), BoardState.EMPTY);
+
+    // an engine can continue a game from the GUI's board
+    initConditions();
+    GameEngine vertical = new GameEngine(verticalBoard.boardState(), true);
+    t.checkExpect(vertical.winner(), BoardState.PLAYER2);
+    t.checkExpect(vertical.isLegal(3, 3), false);
+  }
+
+  // tests the batch simulator
+  void testBatchSimulator(Tester t) {
+    BatchSimulator random = new BatchSimulator(7, new RandomStrategy(), 
+        new RandomStrategy(), 3);
+    SimulationResult serial = random.run(2000, new ForkJoinPool(1));
+    SimulationResult parallel = random.run(2000, new ForkJoinPool(4));
+
+    t.checkExpect(serial.games, 2000L);
+    t.checkExpect(parallel.player1Wins, serial.player1Wins);
+    t.checkExpect(parallel.totalMoves, serial.totalMoves);
+    t.checkExpect(serial.player1Wins + serial.player2Wins, 2000L);
+    t.checkExpect(serial.ties, 0L);
+
+    // player1 closing the second row wins in three of its own moves
+    BatchSimulator scripted = new BatchSimulator(7, 
+        new ScriptedStrategy(new int[] {8, 10, 12}), 
+        new ScriptedStrategy(new int[] {36, 38, 40}), 3);
+    SimulationResult result = scripted.run(10, new ForkJoinPool(2));
+    t.checkExpect(result.player1Wins, 10L);
+    t.checkExpect(result.totalMoves, 50L);
+
+    // searching strategies play each game with one of their own, so
+    // games on many threads come out as they do on one
+    BatchSimulator searched = new BatchSimulator(7,
+        new AlphaBetaPlayer(2, 0, new DistanceEvaluator(), 1 << 10),
+        new MctsPlayer(50, 0, 1), 3);
+    SimulationResult alone = searched.run(16, new ForkJoinPool(1));
+    SimulationResult together = searched.run(16, new ForkJoinPool(4));
+    t.checkExpect(together.player1Wins, alone.player1Wins);
+    t.checkExpect(together.totalMoves, alone.totalMoves);
+    ((MctsPlayer) searched.player2).close();
+  }
+
+  // tests the Monte Carlo tree search player
+  void testMctsPlayer(Tester t) {
+    GameEngine game = new GameEngine(5);
+    game.applyMove(1, 1);
+    game.applyMove(3, 3);
+
+    // player1 wins at once by closing the second row
+    MctsPlayer single = new MctsPlayer(2000, 0, 1);
+    t.checkExpect(single.chooseMove(game, new SplittableRandom(1)), 8);
+    t.checkExpect(single.lastPlayouts, 2000L);
+
+    MctsPlayer parallel = new MctsPlayer(4000, 0, 4);
+    t.checkExpect(parallel.chooseMove(game, new SplittableRandom(1)), 8);
+    t.checkExpect(parallel.lastPlayouts, 4000L);
+    t.checkExpect(parallel.playoutsPerSecond() > 0, true);
+
+    // a time budget alone also ends the search
+    MctsPlayer timed = new MctsPlayer(0, 20, 2);
+    int move = timed.chooseMove(game, new SplittableRandom(1));
+    t.checkExpect(game.isLegal(move / 5, move % 5), true);
+
+    // a player shuts down only a pool of its own, and makes a new one for
+    // its next search
+    ForkJoinPool shared = new ForkJoinPool(2);
+    MctsPlayer sharing = new MctsPlayer(400, 0, 2, shared);
+    t.checkExpect(sharing.chooseMove(game, new SplittableRandom(1)), 8);
+    sharing.close();
+    t.checkExpect(shared.isShutdown(), false);
+    shared.shutdown();
+    ForkJoinPool own = single.pool;
+    single.close();
+    t.checkExpect(own.isShutdown(), true);
+    t.checkExpect(single.pool, null);
+    t.checkExpect(single.chooseMove(game, new SplittableRandom(1)), 8);
+    single.close();
+    parallel.close();
+    timed.close();
+  }
+
+  // tests that a computer player takes its turns on ticks
+  void testComputerTurn(Tester t) {
+    BridgIt game = new BridgIt(5, null, new MctsPlayer(500, 0, 1));
+
+    // nothing happens while it is the person's turn
+    game.onTick();
+    t.checkExpect(game.tracker.emptyCount, 5);
+
+    game.onMouseClicked(new Posn(150, 150));
+    t.checkExpect(game.turn, false);
+
+    // clicks are ignored while the computer is to move
+    game.onMouseClicked(new Posn(350, 350));
+    t.checkExpect(game.board.get(3).get(3).color, Color.WHITE);
+
+    game.onTick();
+    t.checkExpect(game.turn, true);
+    t.checkExpect(game.tracker.emptyCount, 3);
+    t.checkExpect(game.sceneCache.dirty.size(), 2);
+  }
+
+  // tests the alpha-beta solver
+  void testAlphaBetaPlayer(Tester t) {
+    AlphaBetaPlayer solver = new AlphaBetaPlayer(0, 0, new NeutralEvaluator(), 1 << 12);
+
+    // player1 moves first and wins every opening, in three moves on 5x5
+    t.checkExpect(solver.solve(new GameEngine(5)), AlphaBetaPlayer.WIN - 5);
+    t.checkExpect(solver.solve(new GameEngine(7)) > 0, true);
+    t.checkExpect(solver.hitRate() > 0, true);
+    t.checkExpect(solver.nodesPerSecond() > 0, true);
+
+    // takes an immediate win
+    GameEngine game = new GameEngine(5);
+    game.applyMove(1, 1);
+    game.applyMove(3, 3);
+    t.checkExpect(new AlphaBetaPlayer(3, 0, new NeutralEvaluator(), 1 << 10)
+        .chooseMove(game, new SplittableRandom(1)), 8);
+
+    // an evaluation, however large, is never taken for a proven result
+    t.checkExpect(AlphaBetaPlayer.isProven(5000), false);
+    t.checkExpect(AlphaBetaPlayer.isProven(-5000), false);
+    t.checkExpect(AlphaBetaPlayer.isProven(AlphaBetaPlayer.WIN - 5), true);
+    t.checkExpect(AlphaBetaPlayer.isProven(-(AlphaBetaPlayer.WIN - 999)), true);
+
+    // a search of another board size does not play the last size's moves
+    AlphaBetaPlayer resized = new AlphaBetaPlayer(2, 0, new NeutralEvaluator(), 1 << 10);
+    resized.chooseMove(new GameEngine(9), new SplittableRandom(1));
+    int move = resized.chooseMove(new GameEngine(5), new SplittableRandom(1));
+    t.checkExpect(new GameEngine(5).isLegal(move / 5, move % 5), true);
+
+    // a player for a new game searches the same way with state of its own
+    AlphaBetaPlayer distance = new AlphaBetaPlayer(2, 0, new DistanceEvaluator(), 1 << 10);
+    AlphaBetaPlayer copy = (AlphaBetaPlayer) distance.forNewGame();
+    t.checkExpect(copy.table != distance.table, true);
+    t.checkExpect(copy.evaluator != distance.evaluator, true);
+    t.checkExpect(copy.table.keys.length, distance.table.keys.length);
+    t.checkExpect(copy.chooseMove(game, new SplittableRandom(1)), 8);
+    NeutralEvaluator neutral = new NeutralEvaluator();
+    t.checkExpect(neutral.forNewGame() == neutral, true);
+  }
+
+  // tests Zobrist hashing and the transposition table
+  void testTranspositionTable(Tester t) {
+    ZobristKeys keys = new ZobristKeys(7, 1);
+    GameEngine game = new GameEngine(7);
+    long hash = keys.hash(game);
+
+    // claimed cells and the side to move change the hash incrementally
+    hash ^= keys.key(8, BoardState.PLAYER1) ^ keys.player2ToMove;
+    game.applyMove(8);
+    t.checkExpect(keys.hash(game), hash);
+    t.checkExpect(keys.key(1, BoardState.PLAYER1), 0L);
+
+    TranspositionTable table = new TranspositionTable(4);
+    t.checkExpect(table.probe(hash), 0L);
+    table.store(hash, -9990, TranspositionTable.LOWER, 6, 24);
+    long entry = table.probe(hash);
+    t.checkExpect(TranspositionTable.scoreOf(entry), -9990);
+    t.checkExpect(TranspositionTable.kindOf(entry), TranspositionTable.LOWER);
+    t.checkExpect(TranspositionTable.depthOf(entry), 6);
+    t.checkExpect(TranspositionTable.moveOf(entry), 24);
+
+    // a shallower result for another position in the same bucket goes to the
+    // always-replaced slot, keeping the deeper one
+    long other = hash + 4;
+    table.store(other, 5, TranspositionTable.EXACT, 2, -1);
+    t.checkExpect(TranspositionTable.depthOf(table.probe(hash)), 6);
+    t.checkExpect(TranspositionTable.moveOf(table.probe(other)), -1);
+
+    // a slot whose check word does not match reads as a miss
+    table.keys[(int) (hash & table.mask) << 1] ^= 1;
+    t.checkExpect(table.probe(hash), 0L);
+  }
+
+  // tests the Shannon switching strategy
+  void testSwitchingGame(Tester t) {
+    // every edge but the opening is paired with one that pairs back
+    for (int size = 3; size <= 41; size += 2) {
+      SwitchingGame game = new SwitchingGame(size);
+      boolean paired = true;
+      for (int e = 0; e < game.cellOf.length; e++) {
+        int p = game.partner[e];
+        paired = paired && (e == game.opening ? p == -1 : p >= 0 && game.partner[p] == e);
+      }
+      t.checkExpect(paired, true);
+    }
+    t.checkConstructorException(
+        new IllegalArgumentException("board size must be odd and greater than 3"),
+        "SwitchingGame", 4);
+
+    // opens in the top left corner, and answers a cut with its partner
+    SwitchingGame game = new SwitchingGame(7);
+    t.checkExpect(game.openingMove(), 8);
+    t.checkExpect(game.respond(16), 22);
+    t.checkExpect(game.state[game.edgeAt[22]], SwitchingGame.KEPT);
+    t.checkExpect(game.respond(38), 24);
+    t.checkException(new IllegalArgumentException("cell 8 is not an open edge"),
+        game, "respond", 8);
+    t.checkException(new IllegalArgumentException("cell 22 is not an open edge"),
+        game, "respond", 22);
+  }
+
+  // tests that the switching player wins every game as player1
+  void testSwitchingPlayer(Tester t) {
+    for (int size = 3; size <= 15; size += 4) {
+      SimulationResult result = new BatchSimulator(size, new SwitchingPlayer(),
+          new RandomStrategy(), size).run(500, new ForkJoinPool(2));
+      t.checkExpect(result.player1Wins, 500L);
+    }
+    t.checkExpect(new BatchSimulator(7, new SwitchingPlayer(),
+        new MctsPlayer(200, 0, 1), 1).run(4, new ForkJoinPool(1)).player1Wins, 4L);
+    t.checkExpect(new BatchSimulator(7, new SwitchingPlayer(),
+        new AlphaBetaPlayer(4, 0, new NeutralEvaluator(), 1 << 12), 1)
+        .run(2, new ForkJoinPool(1)).player1Wins, 2L);
+
+    // also plays player1 in the world, which hands it a new engine each turn
+    BridgIt world = new BridgIt(7, new SwitchingPlayer(), null);
+    SplittableRandom random = new SplittableRandom(5);
+    while (!world.gameOver()) {
+      world.onTick();
+      if (!world.gameOver()) {
+        int move = world.toEngine().randomMove(random);
+        world.claimCell(move % 7, move / 7);
+      }
+    }
+    t.checkExpect(world.tracker.player1Connected(), true);
+  }
+
+  // tests the resistance evaluator
+  void testResistanceEvaluator(Tester t) {
+    // on 3x3 the one empty cell joins two unit links in series
+    ResistanceEvaluator evaluator = new ResistanceEvaluator(1e-6);
+    t.checkExpect(evaluator.evaluate(new GameEngine(3)), 0);
+    t.checkInexact(evaluator.lastPlayer1, 2.0, 1e-4);
+    t.checkInexact(evaluator.lastPlayer2, 2.0, 1e-4);
+
+    // both players are even on an empty board, and a move along a
+    // player's own direction puts it ahead
+    GameEngine game = new GameEngine(9);
+    t.checkExpect(evaluator.evaluate(game), 0);
+    game.applyMove(3, 3);
+    t.checkExpect(evaluator.evaluate(game) < 0, true);
+    t.checkExpect(evaluator.lastPlayer1 < evaluator.lastPlayer2, true);
+
+    // starting from the last potentials takes fewer iterations than not,
+    // over the positions of a game
+    GameEngine played = new GameEngine(11);
+    SplittableRandom random = new SplittableRandom(3);
+    int warmIterations = 0;
+    int coldIterations = 0;
+    for (int i = 0; i < 30; i++) {
+      played.applyMove(played.randomMove(random));
+      ResistanceEvaluator cold = new ResistanceEvaluator(1e-6);
+      cold.evaluate(played);
+      evaluator.evaluate(played);
+      coldIterations += cold.lastIterations;
+      warmIterations += evaluator.lastIterations;
+      t.checkInexact(evaluator.lastPlayer1, cold.lastPlayer1, 1e-3);
+    }
+    t.checkExpect(warmIterations < coldIterations, true);
+
+    // a player cut off from its goals has infinite resistance
+    GameEngine blocked = new GameEngine(5);
+    blocked.applyMove(1, 1);
+    blocked.applyMove(3, 3);
+    blocked.applyMove(1, 3);
+    t.checkExpect(evaluator.evaluate(blocked), -5000);
+    t.checkExpect(evaluator.lastPlayer1, 0.0);
+    t.checkExpect(evaluator.lastPlayer2, Double.POSITIVE_INFINITY);
+  }
+
+  // tests the packed board against the bitboard
+  void testPackedBoard(Tester t) {
+    SplittableRandom random = new SplittableRandom(11);
+    for (int size = 3; size <= 21; size += 2) {
+      for (int game = 0; game < 20; game++) {
+        GameEngine engine = new GameEngine(size);
+        int moves = random.nextInt(engine.openCount + 1);
+        for (int i = 0; i < moves && !engine.isOver(); i++) {
+          engine.applyMove(engine.randomMove(random));
+        }
+
+        PackedBoard packed = new PackedBoard(engine.board);
+        boolean same = packed.emptyCount() == engine.board.emptyCount()
+            && packed.connects(BoardState.PLAYER1) == engine.board.connects(BoardState.PLAYER1)
+            && packed.connects(BoardState.PLAYER2) == engine.board.connects(BoardState.PLAYER2);
+        for (int row = 0; row < size; row++) {
+          for (int col = 0; col < size; col++) {
+            same = same && packed.ownerAt(col, row) == engine.board.ownerAt(col, row);
+          }
+        }
+        t.checkExpect(same, true);
+      }
+    }
+
+    // a new board has every claimable cell empty, and fixed cells stay fixed
+    PackedBoard board = new PackedBoard(7);
+    t.checkExpect(board.emptyCount(), 13);
+    t.checkExpect(board.ownerAt(0, 1), BoardState.PLAYER1);
+    t.checkExpect(board.ownerAt(1, 0), BoardState.PLAYER2);
+    board.setOwner(3, 3, BoardState.PLAYER2);
+    t.checkExpect(board.emptyCount(), 12);
+    t.checkExpect(board.copy().ownerAt(3, 3), BoardState.PLAYER2);
+    t.checkException(new IllegalArgumentException("cell (2, 1) is fixed"),
+        board, "setOwner", 2, 1, BoardState.PLAYER2);
+
+    // a 16383x16383 board fits in 32 MiB
+    t.checkExpect(new PackedBoard(16383).bytes() < 32L * 1024 * 1024, true);
+  }
+
+  // tests writing and reading game records
+  void testGameRecord(Tester t) throws IOException {
+    // varints take 7 bits a byte, low bits first
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    GameRecordWriter writer = new GameRecordWriter(bytes);
+    writer.write(5, 300, new int[] {6, 18}, 2);
+    writer.close();
+    t.checkExpect(Arrays.toString(bytes.toByteArray()),
+        "[66, 82, 71, 84, 1, 5, -84, 2, 2, 6, 18]");
+
+    // random games come back move for move, across tiny windows
+    Path file = Files.createTempFile("games", ".brgt");
+    SplittableRandom random = new SplittableRandom(8);
+    ArrayList<GameRecord> games = new ArrayList<GameRecord>();
+    writer = new GameRecordWriter(Files.newOutputStream(file));
+    for (int i = 0; i < 50; i++) {
+      GameEngine game = new GameEngine(3 + 2 * (i % 4));
+      GameRecord record = new GameRecord();
+      while (!game.isOver()) {
+        int move = game.randomMove(random);
+        game.applyMove(move);
+        record.add(move);
+      }
+      writer.write(game.size(), -i, record);
+      games.add(record);
+    }
+    writer.close();
+
+    GameRecordReader reader = new GameRecordReader(file, 24);
+    boolean same = true;
+    for (int game = 0; game < games.size(); game++) {
+      GameRecord record = games.get(game);
+      same = same && reader.next() && reader.count == record.count && reader.seed == -game;
+      for (int i = 0; i < record.count / 2; i++) {
+        same = same && reader.nextMove() == record.moves[i];
+      }
+    }
+    t.checkExpect(same, true);
+    t.checkExpect(reader.next(), false);
+    reader.close();
+
+    // every replayed game is over with a winner
+    reader = new GameRecordReader(file);
+    int replayed = 0;
+    while (reader.next()) {
+      if (reader.replay() != BoardState.EMPTY && reader.engine.isOver()) {
+        replayed++;
+      }
+    }
+    reader.close();
+    t.checkExpect(replayed, 50);
+
+    Files.write(file, new byte[] {1, 2, 3, 4, 5});
+    t.checkConstructorException(new IOException("not a game record file"),
+        "GameRecordReader", file);
+    Files.delete(file);
+
+    // the world saves its moves on reset
+    BridgIt world = new BridgIt(5);
+    bytes = new ByteArrayOutputStream();
+    world.recorder = new GameRecordWriter(bytes);
+    world.claimCell(1, 1);
+    world.claimCell(3, 3);
+    t.checkExpect(world.history.count, 2);
+    world.onKeyEvent("r");
+    world.recorder.close();
+    t.checkExpect(world.history.count, 0);
+    t.checkExpect(bytes.size() > 5 + 3 + 2, true);
+  }
+
+  // tests GameAnalytics
+  void testGameAnalytics(Tester t) throws IOException {
+    Path file = Files.createTempFile("games", ".brgt");
+    SplittableRandom random = new SplittableRandom(13);
+    GameStats serial = new GameStats();
+    GameRecordWriter writer = new GameRecordWriter(Files.newOutputStream(file));
+    for (int i = 0; i < 300; i++) {
+      GameEngine game = new GameEngine(5 + 2 * (i % 3));
+      GameRecord record = new GameRecord();
+      while (!game.isOver()) {
+        int move = game.randomMove(random);
+        game.applyMove(move);
+        record.add(move);
+      }
+      writer.write(game.size(), i, record);
+      serial.record(game, record.moves[0]);
+    }
+    writer.close();
+
+    // small chunks spread over several threads add up to the serial counts
+    GameStats stats = new GameAnalytics(new ForkJoinPool(3), 7).run(file);
+    t.checkExpect(stats.totalGames(), 300L);
+    t.checkExpect(stats.toJson(), serial.toJson());
+    t.checkExpect(stats.games[7], 100L);
+    t.checkExpect(stats.player1Wins[9] + stats.player2Wins[9], 100L);
+    t.checkExpect(stats.ties[5], 0L);
+    t.checkExpect(Arrays.stream(stats.deciding[5]).sum(), 100L);
+
+    Path dir = Files.createTempDirectory("stats");
+    stats.writeCsv(dir);
+    t.checkExpect(Files.readAllLines(dir.resolve("summary.csv")).size(), 4);
+    t.checkExpect(Files.readAllLines(dir.resolve("summary.csv")).get(0),
+        "size,games,player1Wins,player2Wins,ties,unfinished,averageLength");
+
+    // a corrupt record stops the pipeline
+    writer = new GameRecordWriter(Files.newOutputStream(file));
+    writer.write(5, 0, new int[] {6, 6}, 2);
+    writer.close();
+    t.checkException(new IOException("could not replay the corpus"),
+        new GameAnalytics(new ForkJoinPool(2), 7), "run", file);
+
+    // a pool that refuses a chunk fails the run rather than leaving it
+    // waiting for the chunk's slot
+    ForkJoinPool closed = new ForkJoinPool(2);
+    closed.shutdown();
+    boolean rejected = false;
+    try {
+      new GameAnalytics(closed, 7).run(file);
+    }
+    catch (RejectedExecutionException e) {
+      rejected = true;
+    }
+    t.checkExpect(rejected, true);
+    Files.delete(file);
+  }
+
+  // tests GameServer
+  void testGameServer(Tester t) throws IOException, InterruptedException {
+    GameServer server = new GameServer(0).start();
+    GameClient first = new GameClient("localhost", server.port());
+    GameClient second = new GameClient("localhost", server.port());
+    t.checkExpect(first.ask("MOVE 1 1"), "ERROR not in a match");
+    t.checkExpect(first.ask("JOIN 4"), "ERROR board size must be odd and greater than 3");
+    t.checkExpect(first.ask("JOIN 5"), "WAIT");
+    second.send("JOIN 5");
+    t.checkExpect(first.receive(), "START 1 1 5");
+    t.checkExpect(second.receive(), "START 1 2 5");
+
+    // moves are checked by the same rules as the world
+    t.checkExpect(second.ask("MOVE 1 1"), "ERROR not your turn");
+    t.checkExpect(first.ask("MOVE 0 1"), "ERROR cell (0, 1) is not playable");
+    t.checkExpect(first.ask("MOVE 1 1"), "OK 1 1");
+    t.checkExpect(second.receive(), "MOVED 1 1");
+    t.checkExpect(second.ask("MOVE 1 1"), "ERROR cell (1, 1) is not playable");
+    t.checkExpect(second.ask("STATE"),
+        "STATE 5 2 1 0202011101020201010102020");
+    t.checkExpect(second.ask("MOVE 2 2"), "OK 2 2");
+    t.checkExpect(first.receive(), "MOVED 2 2");
+
+    // leaving gives the match to the other player
+    second.close();
+    t.checkExpect(first.receive(), "RESULT 1");
+
+    // a client joins one match at a time, and can join again once it ends
+    t.checkExpect(first.ask("JOIN 5"), "WAIT");
+    t.checkExpect(first.ask("JOIN 7"), "ERROR already waiting");
+    GameClient third = new GameClient("localhost", server.port());
+    third.send("JOIN 5");
+    t.checkExpect(first.receive(), "START 2 1 5");
+    t.checkExpect(third.receive(), "START 2 2 5");
+    t.checkExpect(third.ask("JOIN 5"), "ERROR already in a match");
+    third.close();
+    t.checkExpect(first.receive(), "RESULT 1");
+    first.close();
+
+    // so does disconnecting between being paired and the match starting
+    GameClient waiting = new GameClient("localhost", server.port());
+    GameClient joining = new GameClient("localhost", server.port());
+    t.checkExpect(waiting.ask("JOIN 7"), "WAIT");
+    synchronized (server.waiting) {
+      server.waiting.get(7).closed = true;
+    }
+    joining.send("JOIN 7");
+    t.checkExpect(joining.receive(), "START 3 2 7");
+    t.checkExpect(joining.receive(), "RESULT 2");
+    waiting.close();
+    joining.close();
+
+    // many simulated matches at once all finish
+    GameLoadTest test = new GameLoadTest(50, 7, 3);
+    test.run("localhost", server.port());
+    t.checkExpect(test.failures, 0);
+    t.checkExpect(test.percentile(0.5) <= test.percentile(0.99), true);
+    t.checkExpect(server.matchesFinished.get(), 53);
+    server.close();
+  }
+
+  // tests undo and redo
+  void testUndoRedo(Tester t) {
+    // every move of a random game undoes back to the exact starting forests
+    GameEngine start = new GameEngine(9);
+    GameEngine game = start.copy();
+    game.keepHistory();
+    SplittableRandom random = new SplittableRandom(15);
+    while (!game.isOver()) {
+      game.applyMove(game.randomMove(random));
+    }
+    GameEngine end = game.copy();
+    int played = game.moves;
+    while (game.canUndo()) {
+      game.undo();
+    }
+    t.checkExpect(game.moves, 0);
+    t.checkExpect(game.lastMove, -1);
+    t.checkExpect(game.openCount, start.openCount);
+    t.checkExpect(Arrays.equals(game.board.player1, start.board.player1)
+        && Arrays.equals(game.board.player2, start.board.player2), true);
+    t.checkExpect(Arrays.equals(game.tracker.player1.parent, start.tracker.player1.parent)
+        && Arrays.equals(game.tracker.player2.rank, start.tracker.player2.rank), true);
+    t.checkExpect(game.tracker.emptyCount, start.tracker.emptyCount);
+    t.checkException(new IllegalStateException("no moves to undo"), game, "undo");
+
+    // redoing replays the same game to the same winner
+    while (game.canRedo()) {
+      game.redo();
+    }
+    t.checkExpect(game.moves, played);
+    t.checkExpect(game.winner(), end.winner());
+    t.checkExpect(game.isOver(), true);
+    game.undo();
+    t.checkExpect(game.isOver(), false);
+    game.applyMove(game.open[0]);
+    t.checkExpect(game.canRedo(), false);
+
+    // the world undoes and redoes clicks, winning path included
+    BridgIt world = new BridgIt(5);
+    world.claimCell(1, 1);
+    world.claimCell(3, 1);
+    world.claimCell(3, 3);
+    world.claimCell(1, 3);
+    world.claimCell(2, 2);
+    t.checkExpect(world.checkPath(), true);
+    world.onKeyEvent("u");
+    t.checkExpect(world.checkPath(), false);
+    t.checkExpect(world.turn, true);
+    t.checkExpect(world.board.get(2).get(2).color, new GameConstants().mtColor);
+    world.onKeyEvent("u");
+    t.checkExpect(world.turn, false);
+    world.onKeyEvent("y");
+    world.onKeyEvent("y");
+    t.checkExpect(world.checkPath(), true);
+    world.onKeyEvent("y");
+    t.checkExpect(world.history.count, 5);
+  }
+
+  // tests OpeningBook
+  void testOpeningBook(Tester t) throws IOException {
+    // a complete 5x5 book agrees with the alpha-beta solver and with
+    // Lehman's theorem on random positions
+    Path file = Files.createTempFile("book", ".brgb");
+    OpeningBookBuilder builder = new OpeningBookBuilder(5, new ForkJoinPool(2));
+    t.checkExpect(builder.solveAll(), 68);
+    builder.write(file);
+    OpeningBook book = new OpeningBook(file);
+    t.checkExpect(book.count, 68L);
+    t.checkExpect(OpeningBook.scoreOf(book.probe(new GameEngine(5))) > 0, true);
+
+    AlphaBetaPlayer solver = new AlphaBetaPlayer(0, 0, new NeutralEvaluator(), 1 << 12);
+    LehmanSolver lehman = new LehmanSolver(5);
+    SplittableRandom random = new SplittableRandom(16);
+    boolean agree = true;
+    for (int i = 0; i < 40; i++) {
+      GameEngine game = new GameEngine(5);
+      int moves = random.nextInt(4);
+      for (int j = 0; j < moves && !game.isOver(); j++) {
+        game.applyMove(game.randomMove(random));
+      }
+      if (!game.isOver()) {
+        int score = OpeningBook.scoreOf(book.probe(game));
+        agree = agree && (score > 0) == (solver.solve(game) > 0)
+            && (score > 0) == (lehman.player1Wins(game) == game.turn);
+      }
+    }
+    t.checkExpect(agree, true);
+    book.close();
+
+    // a 7x7 opening book is played from without searching, and the search
+    // takes over past its last move
+    builder = new OpeningBookBuilder(7, new ForkJoinPool(2));
+    t.checkExpect(builder.solveOpenings(2), 1 + 13 + 13 * 12);
+    builder.write(file);
+    book = new OpeningBook(file);
+    GameEngine game = new GameEngine(7);
+    game.applyMove(24);
+    AlphaBetaPlayer player = new AlphaBetaPlayer(0, 0, new NeutralEvaluator(), 1 << 16);
+    player.book = book;
+    t.checkExpect(player.search(game), book.bestMove(game));
+    t.checkExpect(player.nodes, 0L);
+    t.checkExpect(OpeningBook.scoreOf(book.probe(game)) < 0, true);
+    game.applyMove(book.bestMove(game));
+    game.applyMove(game.open[0]);
+    t.checkExpect(player.solve(game) > 0, new LehmanSolver(7).player1Wins(game) == game.turn);
+    t.checkExpect(player.nodes > 0, true);
+
+    MctsPlayer mcts = new MctsPlayer(100, 0, 1);
+    mcts.book = book;
+    t.checkExpect(mcts.chooseMove(new GameEngine(7), random),
+        book.bestMove(new GameEngine(7)));
+    t.checkExpect(book.bestMove(new GameEngine(5)), -1);
+
+    // the world's computer plays from the book on its ticks too
+    AlphaBetaPlayer computer = new AlphaBetaPlayer(0, 0, new NeutralEvaluator(), 1 << 16);
+    BridgIt world = new BridgIt(7, null, computer);
+    world.book = book;
+    world.claimCell(3, 3);
+    GameEngine reached = world.toEngine();
+    world.onTick();
+    t.checkExpect(world.turn, true);
+    t.checkExpect(world.history.moves[1], book.bestMove(reached));
+    t.checkExpect(computer.nodes, 0L);
+    book.close();
+
+    Files.write(file, new byte[] {1, 2, 3, 4, 5});
+    t.checkConstructorException(new IOException("not an opening book file"),
+        "OpeningBook", file);
+    Files.delete(file);
+  }
+
+  // tests Histogram, MetricsBean, the flight recorder events and the
+  // measurements of the world
+  void testMetrics(Tester t) throws IOException, JMException {
+    Histogram histogram = new Histogram("test", "ns");
+    t.checkExpect(histogram.percentile(99), 0L);
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i);
+    }
+    t.checkExpect(histogram.count(), 1000L);
+    t.checkInexact(histogram.mean(), 500.5, 0.001);
+    t.checkExpect(histogram.max(), 1000L);
+    t.checkExpect(Math.abs(histogram.percentile(50) - 500) <= 500 / Histogram.SUB_BUCKETS, true);
+    t.checkExpect(histogram.percentile(100), 1000L);
+    t.checkExpect(Histogram.indexOf(Histogram.highestIn(1000)), 1000);
+    t.checkExpect(Histogram.indexOf(Long.MAX_VALUE) < histogram.counts.length(), true);
+    histogram.record(-5);
+    t.checkExpect(histogram.percentile(0), 0L);
+
+    // the bean reads the histograms and counters, and resets them
+    Counter counter = new Counter("events");
+    counter.increment();
+    MetricsBean bean = new MetricsBean(new Histogram[] {histogram}, new Counter[] {counter});
+    t.checkExpect(bean.getAttribute("events"), 1L);
+    t.checkExpect(bean.getAttribute("testCount"), 1001L);
+    t.checkExpect(bean.getAttribute("testMax"), 1000L);
+    t.checkExpect(bean.getMBeanInfo().getAttributes().length, 1 + MetricsBean.STATISTICS.length);
+    t.checkExpect(bean.getAttributes(new String[] {"events", "nothing"}).size(), 1);
+    t.checkException(new AttributeNotFoundException("no attribute nothing"),
+        bean, "getAttribute", "nothing");
+    bean.invoke("reset", new Object[0], new String[0]);
+    t.checkExpect(bean.getAttribute("testCount"), 0L);
+    t.checkExpect(counter.count(), 0L);
+    Metrics.register("BridgIt:type=Metrics,name=test", bean);
+    t.checkExpect(ManagementFactory.getPlatformMBeanServer().getAttribute(
+        new ObjectName("BridgIt:type=Metrics,name=test"), "events"), 0L);
+    ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+        new ObjectName("BridgIt:type=Metrics,name=test"));
+
+    // a recording gets an event for each measurement
+    Path file = Files.createTempFile("metrics", ".jfr");
+    Recording recording = new Recording();
+    recording.enable("bridgit.Operation");
+    recording.start();
+    new Operation("test").record(1234, 56);
+    recording.stop();
+    recording.dump(file);
+    recording.close();
+    boolean found = false;
+    for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+      found = found || (event.getString("operation").equals("test")
+          && event.getDuration("latency").toNanos() == 1234
+          && event.getLong("cellsVisited") == 56);
+    }
+    t.checkExpect(found, true);
+    Files.delete(file);
+
+    // the world measures only when metrics are on
+    long clicks = Metrics.CLICK.latencies.count();
+    long checks = Metrics.PATH_CHECKS.count();
+    BridgIt world = new BridgIt(5);
+    world.onMouseClicked(new Posn(30, 30));
+    world.checkHorizontalPath();
+    t.checkExpect(Metrics.CLICK.latencies.count() > clicks, Metrics.ENABLED);
+    t.checkExpect(Metrics.PATH_CHECKS.count() > checks, Metrics.ENABLED);
+  }
+
+  // tests building the starting lattice a word at a time and restarting
+  // a game in place
+  void testFastReset(Tester t) {
+    boolean lattice = true;
+    for (int size = 3; size <= 67; size += 2) {
+      BitBoard board = new BitBoard(size);
+      for (int col = 0; col < size; col++) {
+        for (int row = 0; row < size; row++) {
+          lattice = lattice
+              && board.ownerAt(col, row) == new GameConstants().latticeOwner(col, row);
+        }
+      }
+      lattice = lattice && board.emptyCount() == ((size - 2) * (size - 2) + 1) / 2;
+    }
+    t.checkExpect(lattice, true);
+    t.checkExpect(new ConnectivityTracker(9), new ConnectivityTracker(new BitBoard(9)));
+    t.checkExpect(new GameEngine(9), new GameEngine(new BitBoard(9), true));
+
+    // restarting whitens the claimed cells of the same board
+    BridgIt world = new BridgIt(7);
+    Cell cell = world.board.get(1).get(1);
+    world.claimCell(1, 1);
+    world.claimCell(3, 1);
+    world.claimCell(3, 3);
+    world.onKeyEvent("u");
+    world.onKeyEvent("r");
+    t.checkExpect(world.board.get(1).get(1) == cell, true);
+    t.checkExpect(world.grid.owners, new BridgIt(7).grid.owners);
+    t.checkExpect(world.tracker.claimCount, 0);
+    t.checkExpect(world.tracker.emptyCount, new ConnectivityTracker(7).emptyCount);
+    t.checkExpect(world.history.count, 0);
+    world.claimCell(1, 1);
+    t.checkExpect(world.tracker.player1.connected(8, 8), true);
+
+    // and recolors every cell after cells were colored directly, giving
+    // the first move back to player1
+    world.board.get(5).get(5).color = new GameConstants().player2Color;
+    world.syncTracker();
+    t.checkExpect(world.turn, false);
+    world.onKeyEvent("r");
+    t.checkExpect(world.grid.owners, new BridgIt(7).grid.owners);
+    t.checkExpect(world.tracked, true);
+    t.checkExpect(world.turn, true);
+    t.checkExpect(world.gameOver(), false);
+
+    // a simulator reusing its games plays the same games as new ones
+    BatchSimulator simulator = new BatchSimulator(7, new RandomStrategy(),
+        new RandomStrategy(), 5);
+    SimulationResult fresh = new SimulationResult();
+    for (int game = 0; game < 300; game++) {
+      fresh.record(simulator.play(game));
+    }
+    SimulationResult reused = simulator.run(300, new ForkJoinPool(2));
+    t.checkExpect(reused.player1Wins, fresh.player1Wins);
+    t.checkExpect(reused.totalMoves, fresh.totalMoves);
+  }
+
+  // tests the byte board of a world and the cell views over it
+  void testByteBoard(Tester t) {
+    boolean lattice = true;
+    for (int size = 3; size <= 15; size += 2) {
+      ByteBoard grid = new ByteBoard(size);
+      BitBoard bits = new BitBoard(size);
+      for (int col = 0; col < size; col++) {
+        for (int row = 0; row < size; row++) {
+          lattice = lattice && grid.ownerAt(col, row) == bits.ownerAt(col, row);
+        }
+      }
+      lattice = lattice && grid.emptyCount() == bits.emptyCount();
+    }
+    t.checkExpect(lattice, true);
+
+    // neighbors are worked out from the index, and stop at the edges
+    ByteBoard grid = new ByteBoard(5);
+    t.checkExpect(grid.neighbor(12, ByteBoard.ABOVE), 11);
+    t.checkExpect(grid.neighbor(12, ByteBoard.BELOW), 13);
+    t.checkExpect(grid.neighbor(12, ByteBoard.LEFT), 7);
+    t.checkExpect(grid.neighbor(12, ByteBoard.RIGHT), 17);
+    t.checkExpect(grid.neighbor(0, ByteBoard.ABOVE), -1);
+    t.checkExpect(grid.neighbor(0, ByteBoard.LEFT), -1);
+    t.checkExpect(grid.neighbor(24, ByteBoard.BELOW), -1);
+    t.checkExpect(grid.neighbor(24, ByteBoard.RIGHT), -1);
+    t.checkExpect(grid.cell(2, 2).neighbor(ByteBoard.RIGHT), grid.cell(3, 2));
+    t.checkExpect(grid.cell(2, 2).neighbor(ByteBoard.RIGHT).posn, new Posn(2, 3));
+    t.checkExpect(grid.cell(4, 2).neighbor(ByteBoard.RIGHT), null);
+
+    // views are made once, follow their owners and are read back
+    BridgIt world = new BridgIt(7);
+    world.claimCell(1, 1);
+    t.checkExpect(world.grid.cells, null);
+    Cell cell = world.board.get(3).get(3);
+    t.checkExpect(world.board.get(3).get(3) == cell, true);
+    t.checkExpect(cell.color, new GameConstants().mtColor);
+    world.claimCell(3, 3);
+    t.checkExpect(cell.color, new GameConstants().player2Color);
+    world.board.get(5).get(5).color = new GameConstants().player1Color;
+    world.syncTracker();
+    t.checkExpect(world.grid.ownerAt(5, 5), BoardState.PLAYER1);
+    t.checkException(new IndexOutOfBoundsException("Index 7 out of bounds for length 7"),
+        world.board, "get", 7);
+
+    // searching the bytes agrees with the bitboard on random games
+    SplittableRandom random = new SplittableRandom(19);
+    boolean agree = true;
+    for (int game = 0; game < 200; game++) {
+      ByteBoard bytes = new ByteBoard(9);
+      BitBoard bits = new BitBoard(9);
+      for (int move = 0; move < 20; move++) {
+        int col = 1 + random.nextInt(7);
+        int row = 1 + random.nextInt(7);
+        if (bytes.ownerAt(col, row) == BoardState.EMPTY) {
+          int owner = random.nextBoolean() ? BoardState.PLAYER1 : BoardState.PLAYER2;
+          bytes.setOwner(col, row, owner);
+          bits.setOwner(col, row, owner);
+        }
+      }
+      agree = agree && bytes.connects(BoardState.PLAYER1) == bits.connects(BoardState.PLAYER1)
+          && bytes.connects(BoardState.PLAYER2) == bits.connects(BoardState.PLAYER2);
+    }
+    t.checkExpect(agree, true);
+  }
+
+  // tests keeping each player's minimum cut as cells are claimed and
+  // taken back, and the must-play hints drawn from it
+  void testCutTracker(Tester t) {
+    // on the starting lattice the cuts are the cells next to each
+    // player's starting edge, and the two share their corner cell
+    CutTracker lattice = new CutTracker(7);
+    t.checkExpect(lattice.blockers(BoardState.PLAYER1), 3);
+    t.checkExpect(lattice.cut(BoardState.PLAYER1), new int[] {8, 22, 36});
+    t.checkExpect(lattice.cut(BoardState.PLAYER2), new int[] {8, 10, 12});
+    t.checkExpect(lattice.mustPlay(BoardState.PLAYER1), new int[0]);
+
+    // after player2 takes (1, 1) on a 5x5 board, every path of player1
+    // runs through (1, 3), which player1 must claim and player2 wins by
+    // claiming
+    CutTracker cuts = new CutTracker(5);
+    cuts.claim(1, 1, false);
+    t.checkExpect(cuts.blockers(BoardState.PLAYER1), 1);
+    t.checkExpect(cuts.blockers(BoardState.PLAYER2), 2);
+    t.checkExpect(cuts.mustPlay(BoardState.PLAYER1), new int[] {16});
+    t.checkExpect(cuts.mustPlay(BoardState.PLAYER2), new int[] {16});
+    cuts.claim(1, 3, false);
+    t.checkExpect(cuts.blockers(BoardState.PLAYER1), 0);
+    t.checkExpect(cuts.cut(BoardState.PLAYER1), new int[0]);
+    cuts.unclaim(1, 3);
+    cuts.unclaim(1, 1);
+    t.checkExpect(cuts.cut(BoardState.PLAYER1), new CutTracker(5).cut(BoardState.PLAYER1));
+    cuts.claim(1, 1, true);
+    cuts.claim(3, 1, true);
+    t.checkExpect(cuts.blockers(BoardState.PLAYER1), CellFlow.UNBOUNDED);
+
+    // cuts kept through random claims and undos are as small as cuts
+    // found from scratch, and block the player
+    SplittableRandom random = new SplittableRandom(20);
+    boolean agree = true;
+    for (int game = 0; game < 40; game++) {
+      BitBoard board = new BitBoard(11);
+      CutTracker kept = new CutTracker(11);
+      boolean turn = true;
+      int last = -1;
+      for (int move = 0; move < 60; move++) {
+        int col = 1 + random.nextInt(9);
+        int row = 1 + random.nextInt(9);
+        if (last >= 0 && random.nextInt(4) == 0) {
+          board.setOwner(last % 11, last / 11, BoardState.EMPTY);
+          kept.unclaim(last % 11, last / 11);
+          turn = !turn;
+          last = -1;
+        }
+        else if (board.ownerAt(col, row) == BoardState.EMPTY) {
+          board.setOwner(col, row, turn ? BoardState.PLAYER1 : BoardState.PLAYER2);
+          kept.claim(col, row, turn);
+          turn = !turn;
+          last = row * 11 + col;
+        }
+        CutTracker found = new CutTracker(board);
+        for (int player = BoardState.PLAYER1; player <= BoardState.PLAYER2; player++) {
+          agree = agree && kept.blockers(player) == found.blockers(player)
+              && (kept.blockers(player) == CellFlow.UNBOUNDED
+                || kept.cut(player).length == kept.blockers(player));
+        }
+      }
+
+      // the opponent claiming the cut and the player every other cell
+      // leaves the player blocked
+      BitBoard blocked = (BitBoard) board.copy();
+      for (int cell : kept.cut(BoardState.PLAYER1)) {
+        blocked.setOwner(cell % 11, cell / 11, BoardState.PLAYER2);
+      }
+      for (int col = 1; col < 10; col++) {
+        for (int row = 1; row < 10; row++) {
+          if (blocked.ownerAt(col, row) == BoardState.EMPTY) {
+            blocked.setOwner(col, row, BoardState.PLAYER1);
+          }
+        }
+      }
+      agree = agree && (kept.blockers(BoardState.PLAYER1) == CellFlow.UNBOUNDED
+          || !blocked.connects(BoardState.PLAYER1));
+    }
+    t.checkExpect(agree, true);
+
+    // the world marks the cell the player to move must claim while hints
+    // are shown: after (3, 3), player2 is one cell from being blocked
+    BridgIt world = new BridgIt(5);
+    world.claimCell(3, 3);
+    world.onKeyEvent("h");
+    t.checkExpect(world.hinted, new int[] {16});
+    t.checkExpect(world.isHinted(1, 3), true);
+    world.claimCell(1, 3);
+    t.checkExpect(world.hinted, new int[] {6});
+    world.makeScene();
+    world.onKeyEvent("u");
+    t.checkExpect(world.hinted, new int[] {16});
+    t.checkExpect(world.sceneCache.dirty.get(1), new Posn(1, 1));
+    world.onKeyEvent("h");
+    t.checkExpect(world.cuts, null);
+    t.checkExpect(world.hinted, new int[0]);
+  }
+
+  // tests keeping each player's distance maps as cells are claimed and
+  // taken back, scoring positions by them and shading the board with them
+  void testDistanceTracker(Tester t) {
+    // on the starting lattice each player needs one empty cell between
+    // each pair of its own cells along a row (or column)
+    DistanceTracker lattice = new DistanceTracker(7);
+    t.checkExpect(lattice.connection(BoardState.PLAYER1), 3);
+    t.checkExpect(lattice.connection(BoardState.PLAYER2), 3);
+    t.checkExpect(lattice.maps[BoardState.PLAYER1][0].distance[1 * 7 + 3], 2);
+    t.checkExpect(lattice.slack(BoardState.PLAYER1, 1 * 7 + 1), 0);
+    t.checkExpect(lattice.slack(BoardState.PLAYER1, 2 * 7 + 2), 1);
+    t.checkExpect(lattice.slack(BoardState.PLAYER1, 0), DistanceMap.UNREACHABLE);
+
+    // claiming a cell brings the owner closer and can only push the
+    // opponent away, and taking it back puts the maps back
+    DistanceTracker kept = new DistanceTracker(7);
+    kept.claim(1, 1, true);
+    t.checkExpect(kept.connection(BoardState.PLAYER1), 2);
+    t.checkExpect(kept.connection(BoardState.PLAYER2), 3);
+    kept.claim(3, 1, true);
+    kept.claim(5, 1, true);
+    t.checkExpect(kept.connection(BoardState.PLAYER1), 0);
+    kept.unclaim(5, 1);
+    kept.unclaim(3, 1);
+    kept.unclaim(1, 1);
+    t.checkExpect(kept.maps[BoardState.PLAYER1][1].distance,
+        lattice.maps[BoardState.PLAYER1][1].distance);
+    t.checkExpect(kept.maps[BoardState.PLAYER2][0].distance,
+        lattice.maps[BoardState.PLAYER2][0].distance);
+    t.checkExpect(kept.maps[BoardState.PLAYER1][0].settled < 49, true);
+
+    // maps kept through random claims and undos are the maps found from
+    // scratch
+    SplittableRandom random = new SplittableRandom(21);
+    boolean agree = true;
+    for (int game = 0; game < 40; game++) {
+      BitBoard board = new BitBoard(11);
+      kept = new DistanceTracker(11);
+      boolean turn = true;
+      int last = -1;
+      for (int move = 0; move < 60; move++) {
+        int col = 1 + random.nextInt(9);
+        int row = 1 + random.nextInt(9);
+        if (last >= 0 && random.nextInt(3) == 0) {
+          board.setOwner(last % 11, last / 11, BoardState.EMPTY);
+          kept.unclaim(last % 11, last / 11);
+          turn = !turn;
+          last = -1;
+        }
+        else if (board.ownerAt(col, row) == BoardState.EMPTY) {
+          board.setOwner(col, row, turn ? BoardState.PLAYER1 : BoardState.PLAYER2);
+          kept.claim(col, row, turn);
+          turn = !turn;
+          last = row * 11 + col;
+        }
+        DistanceTracker found = new DistanceTracker(board);
+        for (int player = BoardState.PLAYER1; player <= BoardState.PLAYER2; player++) {
+          agree = agree
+              && Arrays.equals(kept.maps[player][0].distance, found.maps[player][0].distance)
+              && Arrays.equals(kept.maps[player][1].distance, found.maps[player][1].distance)
+              && kept.connection(player) == found.connection(player);
+        }
+      }
+    }
+    t.checkExpect(agree, true);
+
+    // an evaluator brought up to date move by move scores like a new one
+    DistanceEvaluator evaluator = new DistanceEvaluator();
+    GameEngine engine = new GameEngine(9);
+    engine.keepHistory();
+    boolean same = true;
+    while (!engine.isOver()) {
+      engine.applyMove(engine.randomMove(random));
+      if (!engine.isOver()) {
+        same = same && evaluator.evaluate(engine) == new DistanceEvaluator().evaluate(engine);
+        engine.undo();
+        engine.applyMove(engine.randomMove(random));
+      }
+    }
+    t.checkExpect(same, true);
+    t.checkExpect(new DistanceEvaluator().evaluate(new GameEngine(7)), 0);
+    GameEngine ahead = new GameEngine(7);
+    ahead.applyMove(1, 1);
+    t.checkExpect(new DistanceEvaluator().evaluate(ahead), -100);
+
+    // the world shades the board for the player to move while the
+    // heatmap is shown
+    BridgIt world = new BridgIt(7);
+    t.checkExpect(world.heatAt(1, 1), DistanceMap.UNREACHABLE);
+    world.onKeyEvent("d");
+    t.checkExpect(world.heatAt(1, 1), 0);
+    t.checkExpect(world.heatAt(2, 2), 1);
+    world.makeScene();
+    world.claimCell(1, 1);
+    t.checkExpect(world.sceneCache.scene, null);
+    t.checkExpect(world.distances.connection(BoardState.PLAYER1), 2);
+    world.onKeyEvent("u");
+    t.checkExpect(world.distances.maps[BoardState.PLAYER1][0].distance,
+        new DistanceTracker(7).maps[BoardState.PLAYER1][0].distance);
+    world.onKeyEvent("d");
+    t.checkExpect(world.distances, null);
+  }
+
+  // tests playing tournaments between engines and rating them
+  void testTournament(Tester t) {
+    Entrant searcher = new Entrant("alphabeta") {
+      Strategy newEngine() {
+        return new AlphaBetaPlayer(2, 0, new DistanceEvaluator(), 1 << 10);
+      }
+    };
+    Entrant random = new Entrant("random") {
+      Strategy newEngine() {
+        return new RandomStrategy();
+      }
+    };
+    Entrant other = new Entrant("other") {
+      Strategy newEngine() {
+        return new RandomStrategy();
+      }
+    };
+
+    // a round robin pairs everyone and a gauntlet pairs the first entrant
+    // with the rest, and the entrants take turns to move first
+    Tournament gauntlet = new Tournament(7, new Entrant[] {searcher, random, other}, true, 4, 1);
+    t.checkExpect(gauntlet.pairings, new int[][] {{0, 1}, {0, 2}});
+    t.checkExpect(new Tournament(7, new Entrant[] {searcher, random, other}, false, 4, 1)
+        .pairings, new int[][] {{0, 1}, {0, 2}, {1, 2}});
+    t.checkExpect(gauntlet.games(), 8L);
+    t.checkExpect(gauntlet.playersOf(0), new int[] {0, 1});
+    t.checkExpect(gauntlet.playersOf(1), new int[] {1, 0});
+    t.checkExpect(gauntlet.playersOf(6), new int[] {0, 2});
+
+    // the games of a pair share a seed within their pairing, even with an
+    // odd number of games per pairing
+    t.checkExpect(gauntlet.pairOf(1), gauntlet.pairOf(0));
+    t.checkExpect(gauntlet.pairOf(4), 2L);
+    Tournament odd = new Tournament(7, new Entrant[] {searcher, random, other}, true, 3, 1);
+    t.checkExpect(odd.pairOf(1), odd.pairOf(0));
+    t.checkExpect(odd.pairOf(2), 1L);
+    t.checkExpect(odd.pairOf(3), 2L);
+    t.checkExpect(odd.pairOf(4), 2L);
+    t.checkExpect(odd.playersOf(3), new int[] {0, 2});
+    t.checkExpect(odd.playersOf(4), new int[] {2, 0});
+    t.checkConstructorException(new IllegalArgumentException("a tournament needs two entrants"),
+        "Tournament", 7, new Entrant[] {random}, false, 4L, 1L);
+
+    // the same games are played however many threads play them, and every
+    // move is timed
+    Tournament match = new Tournament(7, new Entrant[] {searcher, random}, false, 6, 7);
+    Standings alone = match.run(1);
+    Standings shared = match.run(3);
+    t.checkExpect(shared.points, alone.points);
+    t.checkExpect(shared.played, alone.played);
+    t.checkExpect(alone.games, 6L);
+    t.checkExpect(alone.gamesOf(1), 6L);
+    t.checkExpect(searcher.moveTimes.count() + random.moveTimes.count(),
+        alone.moves + shared.moves);
+    double[] ratings = alone.ratings();
+    t.checkExpect(ratings[0] > ratings[1], true);
+    t.checkExpect(Math.round(ratings[0] + ratings[1]), 0L);
+    t.checkExpect(match.report(alone).startsWith("entrant"), true);
+
+    // 3 points of 4, with a tied game added, is 147 Elo between the two
+    Standings scored = new Standings(2);
+    scored.points[0][1] = 3;
+    scored.points[1][0] = 1;
+    scored.played[0][1] = 4;
+    scored.played[1][0] = 4;
+    ratings = scored.ratings();
+    t.checkExpect(Math.round(ratings[0]), 74L);
+    t.checkExpect(Math.round(ratings[1]), -74L);
+    t.checkExpect(Math.round(scored.margins(ratings)[0]), 372L);
+    t.checkExpect(scored.score(0), 3.0);
+    t.checkExpect(new Standings(2).ratings(), new double[] {0, 0});
+  }
+
+  // the computer's move from the ponderer once its search finishes, asking
+  // as ticks would (-1 if it takes more than ten seconds)
+  int awaitMove(Ponderer ponderer, GameEngine game) {
+    long deadline = System.nanoTime() + 10000000000L;
+    int move = ponderer.moveFor(game);
+    while (move < 0 && System.nanoTime() < deadline) {
+      try {
+        Thread.sleep(5);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return -1;
+      }
+      move = ponderer.moveFor(game);
+    }
+    return move;
+  }
+
+  // is every search the ponderer has queued finished? (waits up to ten
+  // seconds for them)
+  boolean awaitSearches(Ponderer ponderer, int count) {
+    long deadline = System.nanoTime() + 10000000000L;
+    boolean finished = false;
+    while (!finished && System.nanoTime() < deadline) {
+      synchronized (ponderer) {
+        finished = ponderer.searches.size() == count;
+        for (PonderSearch search : ponderer.searches.values()) {
+          finished = finished && search.result.isDone();
+        }
+      }
+      Thread.yield();
+    }
+    return finished;
+  }
+
+  // tests choosing the computer's moves in the background and searching
+  // its answers to the person's likely replies ahead
+  void testPondering(Tester t) {
+    // the likely replies are the cut cells, then the cells nearest the
+    // middle
+    GameEngine start = new GameEngine(7);
+    start.applyMove(3, 1);
+    start.applyMove(1, 3);
+    int[] cut = new CutTracker(start.board).cut(BoardState.PLAYER2);
+    t.checkExpect(Ponderer.likelyReplies(start, 2), new int[] {cut[0], cut[1]});
+    t.checkExpect(Ponderer.likelyReplies(start, 100).length, start.openCount);
+
+    // a search dropped while it runs stops early, letting the next one run
+    Ponderer solver = new Ponderer(new AlphaBetaPlayer(0, 0, new NeutralEvaluator(), 1 << 16),
+        4, new SplittableRandom(1));
+    t.checkExpect(solver.moveFor(new GameEngine(21)), -1);
+    solver.stop();
+    t.checkExpect(solver.searches.isEmpty(), true);
+    t.checkExpect(this.awaitMove(solver, new GameEngine(5)),
+        new AlphaBetaPlayer(0, 0, new NeutralEvaluator(), 1 << 16)
+        .chooseMove(new GameEngine(5), new SplittableRandom(1)));
+    Ponderer playouts = new Ponderer(new MctsPlayer(0, 600000, 1), 4, new SplittableRandom(1));
+    t.checkExpect(playouts.moveFor(new GameEngine(9)), -1);
+    playouts.stop();
+    playouts.strategy = new RandomStrategy();
+    t.checkExpect(this.awaitMove(playouts, new GameEngine(5)) >= 0, true);
+    solver.close();
+    playouts.close();
+
+    // the world asks for the computer's move on ticks without waiting for
+    // it, then the computer ponders the person's replies
+    BridgIt world = new BridgIt(7, null,
+        new AlphaBetaPlayer(3, 0, new NeutralEvaluator(), 1 << 12));
+    world.onKeyEvent("p");
+    t.checkExpect(world.player1Ponderer, null);
+    world.onMouseClicked(new Posn(150, 150));
+    t.checkExpect(world.player2Ponderer.searches.size(), 1);
+    long deadline = System.nanoTime() + 10000000000L;
+    while (!world.turn && System.nanoTime() < deadline) {
+      world.onTick();
+    }
+    t.checkExpect(world.turn, true);
+    t.checkExpect(this.awaitSearches(world.player2Ponderer, 8), true);
+
+    // the answer to a pondered reply is kept and played on the next tick,
+    // and the others are dropped
+    int reply = world.player2Ponderer.searches.values().iterator().next().game.lastMove;
+    world.onMouseClicked(new Posn(reply % 7 * 100 + 50, reply / 7 * 100 + 50));
+    t.checkExpect(world.player2Ponderer.searches.size(), 1);
+    world.onTick();
+    t.checkExpect(world.turn, true);
+    t.checkExpect(world.tracker.claimCount, 4);
+
+    // taking back a move drops the searches, and pondering can be stopped
+    world.onKeyEvent("u");
+    t.checkExpect(world.player2Ponderer.searches.isEmpty(), true);
+    world.onKeyEvent("p");
+    t.checkExpect(world.player2Ponderer, null);
+  }
+
+  // tests drawing large boards into one image of pixels
+  void testRasterRenderer(Tester t) {
+    // boards too large for the window start zoomed out to fit it
+    t.checkExpect(new BridgIt(9).sceneCache.raster, null);
+    t.checkExpect(new BridgIt(11).sceneCache.raster.cellPixels, 90);
+    t.checkExpect(new BridgIt(101).sceneCache.raster.cellPixels, 9);
+    t.checkExpect(new BridgIt(101).sceneCache.scenePixels(101), 1000);
+
+    // the scene holds the one image, which cells are drawn into in their
+    // colors, and clicks are read at its scale
+    BridgIt game = new BridgIt(5);
+    game.sceneCache.raster = new RasterRenderer(game.grid, 50);
+    ComputedPixelImage image = game.sceneCache.raster.image;
+    WorldScene expected = new WorldScene(50, 50);
+    expected.placeImageXY(image, 25, 25);
+    WorldScene scene = game.makeScene();
+    t.checkExpect(scene, expected);
+    t.checkExpect(image.getColorAt(5, 15), Color.CYAN);
+    t.checkExpect(image.getColorAt(19, 9), Color.BLUE);
+    t.checkExpect(image.getColorAt(15, 15), Color.WHITE);
+    game.onMouseClicked(new Posn(15, 15));
+    t.checkExpect(game.makeScene() == scene, true);
+    t.checkExpect(image.getColorAt(10, 10), Color.CYAN);
+    t.checkExpect(image.getColorAt(19, 19), Color.CYAN);
+
+    // the heatmap shades the middle of the empty cells, and hints are
+    // outlined, both in the color of the player to move
+    game.onKeyEvent("d");
+    game.onKeyEvent("h");
+    game.makeScene();
+    t.checkExpect(image.getColorAt(35, 35),
+        game.sceneCache.raster.player2Heat[game.heatAt(3, 3)]);
+    t.checkExpect(image.getColorAt(30, 30), Color.WHITE);
+    t.checkExpect(game.hinted.length > 0, true);
+    for (int move : game.hinted) {
+      t.checkExpect(image.getColorAt(move % 5 * 10 + 2, move / 5 * 10 + 2), Color.BLUE);
+    }
+  }
+
+  // tests panning and zooming the viewport, and showing blocks of cells
+  // by their majority owner when zoomed out
+  void testViewport(Tester t) {
+    // a window of 8 pixels shows the 21 cells across in blocks of 4 by 4,
+    // the starting lattice giving each player as many cells of a block
+    BridgIt game = new BridgIt(21);
+    RasterRenderer raster = new RasterRenderer(game.grid, 8);
+    game.sceneCache.raster = raster;
+    ComputedPixelImage image = raster.image;
+    game.makeScene();
+    t.checkExpect(raster.blockCells, 4);
+    t.checkExpect(raster.cellPixels, 1);
+    t.checkExpect(image.getColorAt(0, 0), Color.WHITE);
+    t.checkExpect(image.getColorAt(5, 5), Color.WHITE);
+    t.checkExpect(image.getColorAt(6, 0), Color.LIGHT_GRAY);
+    t.checkExpect(image.getColorAt(7, 7), Color.LIGHT_GRAY);
+
+    // clicks are ignored while cells are smaller than a pixel, and a
+    // block is drawn in the color of the player holding more of it
+    game.onMouseClicked(new Posn(0, 0));
+    t.checkExpect(game.turn, true);
+    game.claimCell(1, 1);
+    game.makeScene();
+    t.checkExpect(image.getColorAt(0, 0), Color.CYAN);
+    game.claimCell(2, 2);
+    game.makeScene();
+    t.checkExpect(image.getColorAt(0, 0), Color.WHITE);
+
+    // zooming in keeps the middle of the window in place, and clicks are
+    // read through the view
+    game.onKeyEvent("=");
+    t.checkExpect(raster.blockCells, 2);
+    t.checkExpect(new Posn(raster.left, raster.top), new Posn(4, 4));
+    game.onKeyEvent("+");
+    game.onKeyEvent("=");
+    t.checkExpect(raster.blockCells, 1);
+    t.checkExpect(raster.cellPixels, 2);
+    t.checkExpect(new Posn(raster.left, raster.top), new Posn(10, 10));
+    t.checkExpect(raster.cellAt(new Posn(3, 5)), new Posn(11, 12));
+    game.onMouseClicked(new Posn(3, 3));
+    t.checkExpect(game.grid.ownerAt(11, 11), BoardState.PLAYER1);
+    game.makeScene();
+    t.checkExpect(image.getColorAt(2, 2), Color.CYAN);
+    t.checkExpect(image.getColorAt(0, 0), Color.WHITE);
+
+    // panning moves a quarter of the window, up to the edges of the board
+    game.onKeyEvent("right");
+    t.checkExpect(raster.left, 11);
+    game.onKeyEvent("left");
+    game.onKeyEvent("left");
+    game.onKeyEvent("up");
+    t.checkExpect(new Posn(raster.left, raster.top), new Posn(9, 9));
+    for (int i = 0; i < 10; i++) {
+      game.onKeyEvent("down");
+    }
+    t.checkExpect(raster.top, 17);
+    game.makeScene();
+    t.checkExpect(image.getColorAt(0, 0), Color.WHITE);
+    t.checkExpect(image.getColorAt(1, 2), Color.BLUE);
+
+    // cells claimed out of view are still counted, and zooming out stops
+    // at the whole board
+    game.claimCell(5, 5);
+    game.claimCell(3, 3);
+    game.claimCell(5, 3);
+    for (int i = 0; i < 5; i++) {
+      game.onKeyEvent("-");
+    }
+    t.checkExpect(raster.blockCells, 4);
+    game.makeScene();
+    t.checkExpect(image.getColorAt(0, 0), Color.CYAN);
+    t.checkExpect(image.getColorAt(1, 1), Color.BLUE);
+    t.checkExpect(raster.counts.player1[2], new BlockCounts(game.grid).player1[2]);
+    t.checkExpect(raster.counts.player2[4], new BlockCounts(game.grid).player2[4]);
+
+    // a cell is brought into view to be clicked
+    Posn point = game.sceneCache.pointOf(19, 19);
+    t.checkExpect(raster.blockCells, 1);
+    t.checkExpect(raster.cellAt(point), new Posn(19, 19));
+
+    // cells changed without being marked dirty are counted again
+    game.grid.setOwner(9, 9, BoardState.PLAYER2);
+    game.sceneCache.boardReplaced();
+    game.makeScene();
+    t.checkExpect(raster.counts.player2[1], new BlockCounts(game.grid).player2[1]);
+    game.onKeyEvent("r");
+    game.makeScene();
+    t.checkExpect(raster.counts.player1[3], new BlockCounts(game.grid).player1[3]);
+  }
+
   // tests checkHorizontalPath
   void testCheckHorizontalPath(Tester t) {
     initConditions();
@@ -860,6 +3520,33 @@ class ExamplesBridgIt {
 
   }
 
+  // tests the connectivity tracker
+  void testConnectivityTracker(Tester t) {
+    initConditions();
+
+    t.checkExpect(horizontalBoard.tracker.player1Connected(), true);
+    t.checkExpect(horizontalBoard.tracker.player2Connected(), false);
+    t.checkExpect(verticalBoard.tracker.player1Connected(), false);
+    t.checkExpect(verticalBoard.tracker.player2Connected(), true);
+    t.checkExpect(normalBoard.tracker.emptyCount, 5);
+    t.checkExpect(fullBoard.tracker.emptyCount, 0);
+
+    // player1 completes a path along the fourth row through clicks
+    BridgIt game = new BridgIt(5);
+    game.onMouseClicked(new Posn(150, 150)); // player1 at (1, 1)
+    game.onMouseClicked(new Posn(350, 150)); // player2 at (3, 1)
+    t.checkExpect(game.tracker.emptyCount, 3);
+    t.checkExpect(game.checkPath(), false);
+    game.onMouseClicked(new Posn(150, 350)); // player1 at (1, 3)
+    game.onMouseClicked(new Posn(250, 250)); // player2 at (2, 2)
+    t.checkExpect(game.checkPath(), false);
+    game.onMouseClicked(new Posn(350, 350)); // player1 at (3, 3)
+    t.checkExpect(game.tracker.player1Connected(), true);
+    t.checkExpect(game.tracker.player2Connected(), false);
+    t.checkExpect(game.anyWhiteLeft(), false);
+    t.checkExpect(game.checkVerticalPath(), game.tracker.player2Connected());
+  }
+
   // tests gameOver
   void testGameOver(Tester t) {
     initConditions();
@@ -880,6 +3567,13 @@ class ExamplesBridgIt {
 
     fullBoard.onKeyEvent("r");
     t.checkExpect(fullBoard.anyWhiteLeft(), true);
+
+    // a new game opens with player1 even if player2 was to move
+    BridgIt world = new BridgIt(5);
+    world.claimCell(1, 1);
+    t.checkExpect(world.turn, false);
+    world.onKeyEvent("r");
+    t.checkExpect(world.turn, true);
   }
 
 
@@ -904,6 +3598,43 @@ class ExamplesBridgIt {
 
   }
 
+  // tests that makeScene only redraws changed cells and reuses images
+  void testSceneCache(Tester t) {
+    BridgIt game = new BridgIt();
+    WorldScene first = game.makeScene();
+    WorldImage cyan = game.sceneCache.imageOf(Color.CYAN);
+
+    t.checkExpect(game.makeScene() == first, true);
+    t.checkExpect(game.sceneCache.imageOf(Color.CYAN) == cyan, true);
+    t.checkExpect(cyan, game.board.get(0).get(1).draw());
+
+    // a click places the clicked cell over the cached scene
+    BridgIt expected = new BridgIt();
+    WorldScene scene = expected.makeScene();
+    game.onMouseClicked(new Posn(150, 150));
+    t.checkExpect(game.sceneCache.dirty.size(), 1);
+    scene.placeImageXY(game.board.get(1).get(1).draw(), 150, 150);
+    t.checkExpect(game.makeScene(), scene);
+    t.checkExpect(game.sceneCache.dirty.size(), 0);
+
+    // resetting redraws only the cells that were claimed, until the scene
+    // has been drawn over by more than a whole board
+    game.onKeyEvent("r");
+    scene.placeImageXY(game.board.get(1).get(1).draw(), 150, 150);
+    t.checkExpect(game.makeScene(), scene);
+    t.checkExpect(game.sceneCache.placed, 27);
+    game.sceneCache.placed = 51;
+    game.onMouseClicked(new Posn(150, 150));
+    game.onKeyEvent("r");
+    t.checkExpect(game.makeScene(), new BridgIt().makeScene());
+
+    // the end scene is made once and kept until the board changes
+    initConditions();
+    WorldScene end = fullBoard.makeScene();
+    t.checkExpect(end, fullBoard.makeEndScene());
+    t.checkExpect(fullBoard.makeScene() == end, true);
+  }
+
   // tests makescene
   void testMakeScene(Tester t) {
     initConditions();
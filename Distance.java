@@ -0,0 +1,475 @@
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+
+// the fewest empty cells a player must claim to reach each cell from one
+// of its goal edges: a 0-1 breadth first search where the player's own
+// cells cost nothing, empty cells cost one and the opponent's cells (and
+// the white cells on the edges, which no one can claim) cannot be passed.
+// When a cell changes cost only the cells whose distance can change are
+// searched again: a cheaper cell relaxes outward from itself, and a
+// dearer one first forgets the distances that ran through it, then fills
+// them back in from the cells around them
+class DistanceMap {
+  static final byte FREE = 0;
+  static final byte STEP = 1;
+  static final byte WALL = 2;
+  static final int UNREACHABLE = Integer.MAX_VALUE;
+
+  int size;
+  boolean player1;
+
+  // does the search start from the player's first goal edge (the left
+  // column or the top row) rather than its last?
+  boolean fromFirst;
+
+  // cells are numbered row * size + col
+  byte[] cost;
+  int[] distance;
+
+  // search state, which maps may share since only one searches at a time.
+  // A cell has been settled (or taken into the region being searched
+  // again) when seenAt[cell] == stamp[0]
+  int[] seenAt;
+  int[] stamp;
+  int[] deque;
+  long[] seeds;
+  int[] region;
+
+  // the number of cells settled by the last change, to see how little of
+  // the board it searched
+  int settled;
+
+  // constructor for the distances of the player from one of its edges on
+  // any board, with search state of its own
+  DistanceMap(BoardState board, boolean player1, boolean fromFirst) {
+    this(board, player1, fromFirst, null);
+  }
+
+  // constructor sharing the search state of the other map (null for state
+  // of its own)
+  DistanceMap(BoardState board, boolean player1, boolean fromFirst, DistanceMap shared) {
+    this.size = board.size();
+    this.player1 = player1;
+    this.fromFirst = fromFirst;
+    int cells = this.size * this.size;
+    this.cost = new byte[cells];
+    this.distance = new int[cells];
+    if (shared == null) {
+      this.seenAt = new int[cells];
+      this.stamp = new int[1];
+      this.deque = new int[cells + 1];
+      this.seeds = new long[cells];
+      this.region = new int[cells];
+    }
+    else {
+      this.seenAt = shared.seenAt;
+      this.stamp = shared.stamp;
+      this.deque = shared.deque;
+      this.seeds = shared.seeds;
+      this.region = shared.region;
+    }
+
+    int own = player1 ? BoardState.PLAYER1 : BoardState.PLAYER2;
+    for (int row = 0; row < this.size; row++) {
+      for (int col = 0; col < this.size; col++) {
+        int owner = board.ownerAt(col, row);
+        if (owner == own) {
+          this.cost[row * this.size + col] = FREE;
+        }
+        else if (owner == BoardState.EMPTY && col > 0 && col < this.size - 1
+            && row > 0 && row < this.size - 1) {
+          this.cost[row * this.size + col] = STEP;
+        }
+        else {
+          this.cost[row * this.size + col] = WALL;
+        }
+      }
+    }
+    this.recompute();
+  }
+
+  // EFFECT: finds every distance from scratch
+  void recompute() {
+    Arrays.fill(this.distance, UNREACHABLE);
+    int count = 0;
+    for (int k = 0; k < this.size; k++) {
+      int cell = this.edgeCell(k, this.fromFirst);
+      if (this.cost[cell] != WALL) {
+        this.distance[cell] = this.cost[cell];
+        this.seeds[count] = ((long) this.cost[cell] << 32) | cell;
+        count++;
+      }
+    }
+    this.propagate(count);
+  }
+
+  // the k-th cell of the player's first (or last) goal edge
+  int edgeCell(int k, boolean first) {
+    int line = first ? 0 : this.size - 1;
+    return this.player1 ? k * this.size + line : line * this.size + k;
+  }
+
+  // is the cell on the edge the search starts from?
+  boolean isStart(int cell) {
+    int line = this.player1 ? cell % this.size : cell / this.size;
+    return line == (this.fromFirst ? 0 : this.size - 1);
+  }
+
+  // the neighbor of the cell in the direction (CellFlow.UP, DOWN, LEFT or
+  // RIGHT), or -1 past the edge
+  int neighbor(int cell, int direction) {
+    int col = cell % this.size;
+    if (direction == CellFlow.UP) {
+      return cell >= this.size ? cell - this.size : -1;
+    }
+    else if (direction == CellFlow.DOWN) {
+      return cell < this.distance.length - this.size ? cell + this.size : -1;
+    }
+    else if (direction == CellFlow.LEFT) {
+      return col > 0 ? cell - 1 : -1;
+    }
+    else {
+      return col < this.size - 1 ? cell + 1 : -1;
+    }
+  }
+
+  // EFFECT: settles cells in order of distance, starting from the seeds
+  // (cells given distances, seeds[0, count) as distance << 32 | cell) and
+  // relaxing their neighbors: a free neighbor goes to the front of the
+  // deque and an empty one to the back, and the next seed is taken
+  // whenever it is no farther than the front
+  void propagate(int count) {
+    Arrays.sort(this.seeds, 0, count);
+    this.stamp[0]++;
+    int stamp = this.stamp[0];
+    int length = this.deque.length;
+    int head = 0;
+    int tail = 0;
+    int next = 0;
+    this.settled = 0;
+    while (next < count || head != tail) {
+      int cell;
+      if (head == tail
+          || (next < count && (int) (this.seeds[next] >>> 32) <= this.distance[this.deque[head]])) {
+        cell = (int) this.seeds[next];
+        next++;
+      }
+      else {
+        cell = this.deque[head];
+        head = (head + 1) % length;
+      }
+      if (this.seenAt[cell] == stamp) {
+        continue;
+      }
+      this.seenAt[cell] = stamp;
+      this.settled++;
+
+      int reach = this.distance[cell];
+      for (int d = CellFlow.UP; d <= CellFlow.RIGHT; d++) {
+        int other = this.neighbor(cell, d);
+        if (other >= 0 && this.cost[other] != WALL
+            && reach + this.cost[other] < this.distance[other]) {
+          this.distance[other] = reach + this.cost[other];
+          if (this.cost[other] == FREE) {
+            head = (head + length - 1) % length;
+            this.deque[head] = other;
+          }
+          else {
+            this.deque[tail] = other;
+            tail = (tail + 1) % length;
+          }
+        }
+      }
+    }
+  }
+
+  // EFFECT: gives the cell a new cost (FREE, STEP or WALL) and updates the
+  // distances it changes
+  void setCost(int cell, byte cost) {
+    byte old = this.cost[cell];
+    this.cost[cell] = cost;
+    if (cost < old) {
+      this.lower(cell);
+    }
+    else if (cost > old) {
+      this.raise(cell);
+    }
+  }
+
+  // EFFECT: after the cell got cheaper, relaxes outward from it
+  void lower(int cell) {
+    int best = this.isStart(cell) ? this.cost[cell] : UNREACHABLE;
+    for (int d = CellFlow.UP; d <= CellFlow.RIGHT; d++) {
+      int other = this.neighbor(cell, d);
+      if (other >= 0 && this.distance[other] != UNREACHABLE) {
+        best = Math.min(best, this.distance[other] + this.cost[cell]);
+      }
+    }
+    if (best < this.distance[cell]) {
+      this.distance[cell] = best;
+      this.seeds[0] = ((long) best << 32) | cell;
+      this.propagate(1);
+    }
+    else {
+      this.settled = 0;
+    }
+  }
+
+  // EFFECT: after the cell got dearer, forgets the distances of the cells
+  // whose shortest distance may have run through it (those a step of
+  // exactly their cost further than a cell already forgotten), then gives
+  // each one the best distance from the cells around the region and
+  // settles the region from there
+  void raise(int cell) {
+    this.stamp[0]++;
+    int stamp = this.stamp[0];
+    this.seenAt[cell] = stamp;
+    this.region[0] = cell;
+    int count = 1;
+    for (int done = 0; done < count; done++) {
+      int at = this.region[done];
+      if (this.distance[at] == UNREACHABLE) {
+        continue;
+      }
+      for (int d = CellFlow.UP; d <= CellFlow.RIGHT; d++) {
+        int other = this.neighbor(at, d);
+        if (other >= 0 && this.seenAt[other] != stamp && this.cost[other] != WALL
+            && this.distance[other] == this.distance[at] + this.cost[other]) {
+          this.seenAt[other] = stamp;
+          this.region[count] = other;
+          count++;
+        }
+      }
+    }
+    for (int k = 0; k < count; k++) {
+      this.distance[this.region[k]] = UNREACHABLE;
+    }
+
+    // the region's cells, reached from outside it
+    int seeded = 0;
+    for (int k = 0; k < count; k++) {
+      int at = this.region[k];
+      if (this.cost[at] == WALL) {
+        continue;
+      }
+      int best = this.isStart(at) ? this.cost[at] : UNREACHABLE;
+      for (int d = CellFlow.UP; d <= CellFlow.RIGHT; d++) {
+        int other = this.neighbor(at, d);
+        if (other >= 0 && this.seenAt[other] != stamp && this.distance[other] != UNREACHABLE) {
+          best = Math.min(best, this.distance[other] + this.cost[at]);
+        }
+      }
+      if (best != UNREACHABLE) {
+        this.distance[at] = best;
+        this.seeds[seeded] = ((long) best << 32) | at;
+        seeded++;
+      }
+    }
+    this.propagate(seeded);
+  }
+
+  // the fewest empty cells the player must claim to reach its other edge
+  // (0 once joined, UNREACHABLE once blocked)
+  int toOtherEdge() {
+    int best = UNREACHABLE;
+    for (int k = 0; k < this.size; k++) {
+      best = Math.min(best, this.distance[this.edgeCell(k, !this.fromFirst)]);
+    }
+    return best;
+  }
+}
+
+// keeps the distance maps of both players from both of their goal edges,
+// updated a cell at a time as cells are claimed and taken back (see
+// DistanceMap). A player's connection is the fewest empty cells joining
+// its edges, and a cell's slack is how many more than that the best
+// connection through the cell needs: the cells of slack 0 lie on a
+// shortest connection
+class DistanceTracker {
+  int size;
+
+  // maps[player][0] from the player's first edge, [1] from its last
+  DistanceMap[][] maps;
+
+  // the connection of each player, found again after every change
+  int[] connections;
+
+  // constructor for the starting lattice of a board of the given size
+  DistanceTracker(int size) {
+    this(new ByteBoard(size));
+  }
+
+  // constructor for the maps of any board, sharing one search state
+  DistanceTracker(BoardState board) {
+    this.size = board.size();
+    DistanceMap first = new DistanceMap(board, true, true);
+    this.maps = new DistanceMap[][] {null,
+      {first, new DistanceMap(board, true, false, first)},
+      {new DistanceMap(board, false, true, first), new DistanceMap(board, false, false, first)}};
+    this.connections = new int[3];
+    this.measure();
+  }
+
+  // EFFECT: finds the connection of each player from its maps
+  void measure() {
+    this.connections[BoardState.PLAYER1] = this.maps[BoardState.PLAYER1][0].toOtherEdge();
+    this.connections[BoardState.PLAYER2] = this.maps[BoardState.PLAYER2][0].toOtherEdge();
+  }
+
+  // EFFECT: records that a white cell was claimed by player1 (or player2)
+  void claim(int col, int row, boolean player1) {
+    int cell = row * this.size + col;
+    int owner = player1 ? BoardState.PLAYER1 : BoardState.PLAYER2;
+    int opponent = player1 ? BoardState.PLAYER2 : BoardState.PLAYER1;
+    for (DistanceMap map : this.maps[owner]) {
+      map.setCost(cell, DistanceMap.FREE);
+    }
+    for (DistanceMap map : this.maps[opponent]) {
+      map.setCost(cell, DistanceMap.WALL);
+    }
+    this.measure();
+  }
+
+  // EFFECT: records that a claimed cell is white again
+  void unclaim(int col, int row) {
+    int cell = row * this.size + col;
+    for (int player = BoardState.PLAYER1; player <= BoardState.PLAYER2; player++) {
+      for (DistanceMap map : this.maps[player]) {
+        map.setCost(cell, DistanceMap.STEP);
+      }
+    }
+    this.measure();
+  }
+
+  // the fewest empty cells the player must claim to join its edges (0
+  // once joined, DistanceMap.UNREACHABLE once blocked)
+  int connection(int player) {
+    return this.connections[player];
+  }
+
+  // the fewest empty cells of a connection of the player through the
+  // cell (numbered row * size + col), or DistanceMap.UNREACHABLE
+  int through(int player, int cell) {
+    int from = this.maps[player][0].distance[cell];
+    int to = this.maps[player][1].distance[cell];
+    if (from == DistanceMap.UNREACHABLE || to == DistanceMap.UNREACHABLE) {
+      return DistanceMap.UNREACHABLE;
+    }
+    return from + to - this.maps[player][0].cost[cell];
+  }
+
+  // how many more empty cells than its shortest connection the player
+  // needs to connect through the cell (DistanceMap.UNREACHABLE if none
+  // can)
+  int slack(int player, int cell) {
+    int through = this.through(player, cell);
+    if (through == DistanceMap.UNREACHABLE) {
+      return DistanceMap.UNREACHABLE;
+    }
+    return through - this.connection(player);
+  }
+}
+
+// scores a position by how many fewer empty cells the player to move
+// needs to join its edges than the opponent does. The distance maps are
+// kept between evaluations and brought up to date with only the cells that
+// differ from the last position evaluated, which in a search is usually a
+// move or two, instead of being searched from scratch at every leaf
+class DistanceEvaluator implements Evaluator {
+  DistanceTracker tracker;
+
+  // the position the maps are for
+  BitBoard board;
+
+  public static void main(String[] args) {
+    int size = args.length > 0 ? Integer.parseInt(args[0]) : 21;
+    int games = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+    // evaluates every position of random games with a move taken back
+    // and another tried in between, as a search would see them, then
+    // again with the maps searched from scratch each time
+    for (int pass = 0; pass < 2; pass++) {
+      DistanceEvaluator evaluator = new DistanceEvaluator();
+      SplittableRandom random = new SplittableRandom(42);
+      long evaluations = 0;
+      long start = System.nanoTime();
+      for (int i = 0; i < games; i++) {
+        GameEngine game = new GameEngine(size);
+        game.keepHistory();
+        while (!game.isOver()) {
+          for (int tried = 0; tried < 2 && !game.isOver(); tried++) {
+            if (tried == 1) {
+              game.undo();
+            }
+            game.applyMove(game.randomMove(random));
+            if (!game.isOver()) {
+              if (pass == 1) {
+                evaluator.tracker = null;
+              }
+              evaluator.evaluate(game);
+              evaluations++;
+            }
+          }
+        }
+      }
+      double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.println(String.format(Locale.ROOT, "%s: %d evaluations in %.3f s (%.1f us each)",
+          pass == 0 ? "kept" : "from scratch", evaluations, seconds,
+          seconds * 1e6 / evaluations));
+    }
+  }
+
+  // an evaluator with distance maps of its own
+  public Evaluator forNewGame() {
+    return new DistanceEvaluator();
+  }
+
+  // score of the position for the player to move: a hundred for every
+  // cell fewer it needs than the opponent
+  public int evaluate(GameEngine game) {
+    this.update(game.board);
+    int mine = this.tracker.connection(game.currentPlayer());
+    int theirs = this.tracker.connection(
+        game.turn ? BoardState.PLAYER2 : BoardState.PLAYER1);
+    if (mine == theirs) {
+      return 0;
+    }
+    else if (mine == DistanceMap.UNREACHABLE) {
+      return -5000;
+    }
+    else if (theirs == DistanceMap.UNREACHABLE) {
+      return 5000;
+    }
+    return Math.max(-5000, Math.min(5000, 100 * (theirs - mine)));
+  }
+
+  // EFFECT: brings the maps up to date with the board, a word of cells at
+  // a time, taking back and claiming only the cells that changed
+  void update(BitBoard board) {
+    if (this.tracker == null || this.board.size != board.size) {
+      this.tracker = new DistanceTracker(board);
+      this.board = (BitBoard) board.copy();
+      return;
+    }
+    for (int word = 0; word < board.player1.length; word++) {
+      long changed = (this.board.player1[word] ^ board.player1[word])
+          | (this.board.player2[word] ^ board.player2[word]);
+      while (changed != 0) {
+        int cell = (word << 6) + Long.numberOfTrailingZeros(changed);
+        changed &= changed - 1;
+        int col = cell % board.size;
+        int row = cell / board.size;
+        if (this.board.ownerAt(col, row) != BoardState.EMPTY) {
+          this.tracker.unclaim(col, row);
+        }
+        int owner = board.ownerAt(col, row);
+        if (owner != BoardState.EMPTY) {
+          this.tracker.claim(col, row, owner == BoardState.PLAYER1);
+        }
+      }
+    }
+    this.board.copyFrom(board);
+  }
+}
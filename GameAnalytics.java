@@ -0,0 +1,392 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+
+
+// counts over a corpus of replayed games, kept per board size in primitive
+// arrays indexed by size so that recording a game never allocates. Cells
+// are numbered row * size + col. A game is tied when the board fills
+// without a path (the anyWhiteLeft condition of the world), and unfinished
+// when its record stops before the game is over
+class GameStats {
+  long[] games;
+  long[] player1Wins;
+  long[] player2Wins;
+  long[] ties;
+  long[] unfinished;
+  long[] totalMoves;
+
+  // per size and cell: games opened there, how many of them player1 won,
+  // and won games whose last move was there
+  long[][] firstMoves;
+  long[][] firstMoveWins;
+  long[][] deciding;
+
+  // constructor for no games
+  GameStats() {
+    this.games = new long[0];
+    this.player1Wins = new long[0];
+    this.player2Wins = new long[0];
+    this.ties = new long[0];
+    this.unfinished = new long[0];
+    this.totalMoves = new long[0];
+    this.firstMoves = new long[0][];
+    this.firstMoveWins = new long[0][];
+    this.deciding = new long[0][];
+  }
+
+  // EFFECT: makes room for games of the given size
+  void ensureSize(int size) {
+    if (size >= this.games.length) {
+      this.games = Arrays.copyOf(this.games, size + 1);
+      this.player1Wins = Arrays.copyOf(this.player1Wins, size + 1);
+      this.player2Wins = Arrays.copyOf(this.player2Wins, size + 1);
+      this.ties = Arrays.copyOf(this.ties, size + 1);
+      this.unfinished = Arrays.copyOf(this.unfinished, size + 1);
+      this.totalMoves = Arrays.copyOf(this.totalMoves, size + 1);
+      this.firstMoves = Arrays.copyOf(this.firstMoves, size + 1);
+      this.firstMoveWins = Arrays.copyOf(this.firstMoveWins, size + 1);
+      this.deciding = Arrays.copyOf(this.deciding, size + 1);
+    }
+    if (this.firstMoves[size] == null) {
+      this.firstMoves[size] = new long[size * size];
+      this.firstMoveWins[size] = new long[size * size];
+      this.deciding[size] = new long[size * size];
+    }
+  }
+
+  // EFFECT: counts a replayed game that opened on the given cell (or -1 if
+  // it has no moves)
+  void record(GameEngine game, int firstMove) {
+    int size = game.size();
+    if (size >= this.games.length || this.firstMoves[size] == null) {
+      this.ensureSize(size);
+    }
+    int winner = game.winner();
+    this.games[size]++;
+    this.totalMoves[size] += game.moves;
+    if (firstMove >= 0) {
+      this.firstMoves[size][firstMove]++;
+      if (winner == BoardState.PLAYER1) {
+        this.firstMoveWins[size][firstMove]++;
+      }
+    }
+
+    if (winner == BoardState.PLAYER1) {
+      this.player1Wins[size]++;
+      this.deciding[size][game.lastMove]++;
+    }
+    else if (winner == BoardState.PLAYER2) {
+      this.player2Wins[size]++;
+      this.deciding[size][game.lastMove]++;
+    }
+    else if (!game.tracker.anyEmptyLeft()) {
+      this.ties[size]++;
+    }
+    else {
+      this.unfinished[size]++;
+    }
+  }
+
+  // EFFECT: adds the counts of the other stats to this one
+  void merge(GameStats other) {
+    for (int size = 0; size < other.games.length; size++) {
+      if (other.games[size] == 0) {
+        continue;
+      }
+      this.ensureSize(size);
+      this.games[size] += other.games[size];
+      this.player1Wins[size] += other.player1Wins[size];
+      this.player2Wins[size] += other.player2Wins[size];
+      this.ties[size] += other.ties[size];
+      this.unfinished[size] += other.unfinished[size];
+      this.totalMoves[size] += other.totalMoves[size];
+      for (int cell = 0; cell < size * size; cell++) {
+        this.firstMoves[size][cell] += other.firstMoves[size][cell];
+        this.firstMoveWins[size][cell] += other.firstMoveWins[size][cell];
+        this.deciding[size][cell] += other.deciding[size][cell];
+      }
+    }
+  }
+
+  // the number of games of every size
+  long totalGames() {
+    long total = 0;
+    for (long count : this.games) {
+      total += count;
+    }
+    return total;
+  }
+
+  // EFFECT: writes summary.csv (per size), firstMoves.csv (per opening
+  // cell) and deciding.csv (per deciding cell) into the directory
+  void writeCsv(Path dir) throws IOException {
+    Files.createDirectories(dir);
+    PrintWriter out = new PrintWriter(Files.newBufferedWriter(dir.resolve("summary.csv")));
+    out.println("size,games,player1Wins,player2Wins,ties,unfinished,averageLength");
+    for (int size = 0; size < this.games.length; size++) {
+      if (this.games[size] > 0) {
+        out.println(String.format(Locale.ROOT, "%d,%d,%d,%d,%d,%d,%.4f", size,
+            this.games[size], this.player1Wins[size], this.player2Wins[size],
+            this.ties[size], this.unfinished[size],
+            (double) this.totalMoves[size] / this.games[size]));
+      }
+    }
+    out.close();
+
+    out = new PrintWriter(Files.newBufferedWriter(dir.resolve("firstMoves.csv")));
+    out.println("size,row,col,games,player1Wins,winRate");
+    for (int size = 0; size < this.games.length; size++) {
+      for (int cell = 0; this.games[size] > 0 && cell < size * size; cell++) {
+        long count = this.firstMoves[size][cell];
+        if (count > 0) {
+          out.println(String.format(Locale.ROOT, "%d,%d,%d,%d,%d,%.6f", size, cell / size,
+              cell % size, count, this.firstMoveWins[size][cell],
+              (double) this.firstMoveWins[size][cell] / count));
+        }
+      }
+    }
+    out.close();
+
+    out = new PrintWriter(Files.newBufferedWriter(dir.resolve("deciding.csv")));
+    out.println("size,row,col,games");
+    for (int size = 0; size < this.games.length; size++) {
+      for (int cell = 0; this.games[size] > 0 && cell < size * size; cell++) {
+        if (this.deciding[size][cell] > 0) {
+          out.println(size + "," + cell / size + "," + cell % size + ","
+              + this.deciding[size][cell]);
+        }
+      }
+    }
+    out.close();
+  }
+
+  // the stats as a JSON object with one entry per size. The heatmaps are
+  // size * size arrays indexed by row * size + col
+  String toJson() {
+    StringBuilder json = new StringBuilder("{\"sizes\": [");
+    boolean first = true;
+    for (int size = 0; size < this.games.length; size++) {
+      if (this.games[size] == 0) {
+        continue;
+      }
+      json.append(first ? "\n" : ",\n");
+      first = false;
+      json.append(String.format(Locale.ROOT,
+          "  {\"size\": %d, \"games\": %d, \"player1Wins\": %d, \"player2Wins\": %d, "
+          + "\"ties\": %d, \"unfinished\": %d, \"averageLength\": %.4f",
+          size, this.games[size], this.player1Wins[size], this.player2Wins[size],
+          this.ties[size], this.unfinished[size],
+          (double) this.totalMoves[size] / this.games[size]));
+      json.append(",\n   \"firstMoves\": ").append(Arrays.toString(this.firstMoves[size]));
+      json.append(",\n   \"firstMoveWins\": ").append(Arrays.toString(this.firstMoveWins[size]));
+      json.append(",\n   \"deciding\": ").append(Arrays.toString(this.deciding[size]));
+      json.append("}");
+    }
+    return json.append("\n]}").toString();
+  }
+}
+
+// the state one pool thread keeps across chunks: its own stats, and a
+// starting game and a game to replay into for each size it has seen
+class AnalyticsWorker {
+  GameStats stats;
+  GameEngine[] starts;
+  GameEngine[] games;
+
+  // constructor for a worker that has replayed nothing
+  AnalyticsWorker() {
+    this.stats = new GameStats();
+    this.starts = new GameEngine[0];
+    this.games = new GameEngine[0];
+  }
+
+  // EFFECT: replays every record in bytes [from, to) of the corpus into
+  // this worker's stats
+  void replay(FileChannel channel, long from, long to) throws IOException {
+    GameRecordReader reader = new GameRecordReader(channel, from, to, to - from);
+    while (reader.next()) {
+      GameEngine game = this.reset(reader.size);
+      int firstMove = -1;
+      while (reader.movesLeft > 0) {
+        int move = reader.nextMove();
+        if (firstMove < 0) {
+          firstMove = move;
+        }
+        game.applyMove(move);
+      }
+      this.stats.record(game, firstMove);
+    }
+  }
+
+  // EFFECT: returns this worker's game of the given size, reset to the start
+  GameEngine reset(int size) {
+    if (size >= this.games.length) {
+      this.starts = Arrays.copyOf(this.starts, size + 1);
+      this.games = Arrays.copyOf(this.games, size + 1);
+    }
+    if (this.games[size] == null) {
+      this.starts[size] = new GameEngine(size);
+      this.games[size] = this.starts[size].copy();
+    }
+    else {
+      this.games[size].copyFrom(this.starts[size]);
+    }
+    return this.games[size];
+  }
+}
+
+// replays one chunk of a corpus on whichever pool thread runs it, then
+// gives back its slot in the pipeline
+class AnalyticsChunk implements Runnable {
+  GameAnalytics analytics;
+  long from;
+  long to;
+
+  // constructor for the records in bytes [from, to)
+  AnalyticsChunk(GameAnalytics analytics, long from, long to) {
+    this.analytics = analytics;
+    this.from = from;
+    this.to = to;
+  }
+
+  // replays the chunk into this thread's worker
+  public void run() {
+    try {
+      this.analytics.workers.get().replay(this.analytics.channel, this.from, this.to);
+    }
+    catch (IOException | RuntimeException e) {
+      this.analytics.fail(e);
+    }
+    finally {
+      this.analytics.inFlight.release();
+    }
+  }
+}
+
+// streams a corpus of game records through a pool of threads. The calling
+// thread walks the file once, skipping over records without decoding their
+// moves to cut it into chunks of chunkGames records, and hands each chunk
+// to the pool; at most 2 chunks per thread are waiting or running at once,
+// so memory stays bounded however large the corpus is. Each pool thread
+// replays its chunks into its own AnalyticsWorker, and the workers' stats
+// are merged once every chunk is done. Run it with:
+//   java GameAnalytics <corpus> [outDir] [threads]
+// to print the stats as JSON and, given outDir, write them as CSV files
+class GameAnalytics {
+  ForkJoinPool pool;
+  int chunkGames;
+
+  // the corpus being read, the chunks not yet finished and the first error
+  // a chunk hit
+  FileChannel channel;
+  Semaphore inFlight;
+  int slots;
+  volatile Throwable failure;
+
+  // every worker made so far, and the one of the current thread
+  List<AnalyticsWorker> allWorkers;
+  ThreadLocal<AnalyticsWorker> workers;
+
+  // constructor for a pipeline on the pool replaying chunks of the given
+  // number of games
+  GameAnalytics(ForkJoinPool pool, int chunkGames) {
+    this.pool = pool;
+    this.chunkGames = chunkGames;
+    this.slots = 2 * pool.getParallelism();
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.out.println("usage: java GameAnalytics <corpus> [outDir] [threads]");
+      return;
+    }
+    Path corpus = Paths.get(args[0]);
+    int threads = args.length > 2 ? Integer.parseInt(args[2])
+        : Runtime.getRuntime().availableProcessors();
+
+    long start = System.nanoTime();
+    GameStats stats = new GameAnalytics(new ForkJoinPool(threads), 4096).run(corpus);
+    double seconds = (System.nanoTime() - start) / 1e9;
+    if (args.length > 1) {
+      stats.writeCsv(Paths.get(args[1]));
+    }
+    System.out.println(stats.toJson());
+    System.err.println(String.format(Locale.ROOT,
+        "%d games (%.1f MB) in %.3f s on %d threads: %.0f games/s", stats.totalGames(),
+        Files.size(corpus) / 1e6, seconds, threads, stats.totalGames() / seconds));
+  }
+
+  // replays every game in the corpus and returns the merged stats
+  GameStats run(Path corpus) throws IOException {
+    GameRecordReader scanner = new GameRecordReader(corpus);
+    this.channel = scanner.channel;
+    this.inFlight = new Semaphore(this.slots);
+    this.failure = null;
+    this.allWorkers = Collections.synchronizedList(new ArrayList<AnalyticsWorker>());
+    this.workers = new ThreadLocal<AnalyticsWorker>() {
+      protected AnalyticsWorker initialValue() {
+        AnalyticsWorker worker = new AnalyticsWorker();
+        GameAnalytics.this.allWorkers.add(worker);
+        return worker;
+      }
+    };
+
+    try {
+      long from = scanner.position();
+      boolean more = true;
+      while (more && this.failure == null) {
+        int games = 0;
+        while (games < this.chunkGames && scanner.skip()) {
+          games++;
+        }
+        more = games == this.chunkGames;
+        long to = scanner.position();
+        if (games > 0) {
+          this.inFlight.acquireUninterruptibly();
+          try {
+            this.pool.execute(new AnalyticsChunk(this, from, to));
+          }
+          catch (RuntimeException e) {
+            // the chunk never ran to give its slot back
+            this.inFlight.release();
+            throw e;
+          }
+        }
+        from = to;
+      }
+    }
+    finally {
+      // waits for every chunk to finish before closing the file under them
+      this.inFlight.acquireUninterruptibly(this.slots);
+      this.inFlight.release(this.slots);
+      scanner.close();
+    }
+
+    if (this.failure != null) {
+      throw new IOException("could not replay the corpus", this.failure);
+    }
+    GameStats stats = new GameStats();
+    for (AnalyticsWorker worker : this.allWorkers) {
+      stats.merge(worker.stats);
+    }
+    return stats;
+  }
+
+  // EFFECT: keeps the first error any chunk hits, which stops the pipeline
+  synchronized void fail(Throwable e) {
+    if (this.failure == null) {
+      this.failure = e;
+    }
+  }
+}
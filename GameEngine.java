@@ -0,0 +1,263 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+
+// plays BridgIt by the same rules as the BridgIt world, without any GUI:
+// player1 moves first, a move claims an empty cell off the edges of the
+// board, and the game ends once a player joins its goal edges or no empty
+// cells are left. Cells are given as (row, col), where col is the outer
+// index of BridgIt.board, and moves are also numbered row * size + col
+class GameEngine {
+  BitBoard board;
+  ConnectivityTracker tracker;
+  boolean turn;
+  int moves;
+
+  // the number of the cell claimed last, or -1 before the first move
+  int lastMove;
+
+  // playable cells, kept so a cell can be removed or picked in O(1):
+  // open[0, openCount) are the cell numbers and slot[cell] is its position
+  int[] open;
+  int[] slot;
+  int openCount;
+
+  // when history is kept: the moves played since it was started, of which
+  // the first played are on the board and the rest can be redone. Null
+  // when not kept
+  int[] history;
+  int played;
+  int redoable;
+
+  // constructor for a new game on a board of the given size, built
+  // straight on the starting lattice rather than copied from it
+  GameEngine(int size) {
+    this(GameEngine.checkSize(size), null, true, 0, -1, new int[size * size],
+        new int[size * size], 0);
+    this.tracker = new ConnectivityTracker(size);
+    this.openEmptyCells();
+  }
+
+  // constructor for a game continuing from any board, with player1 to move
+  // when turn is true
+  GameEngine(BoardState board, boolean turn) {
+    this(new BitBoard(board), null, turn, 0, -1, new int[board.size() * board.size()],
+        new int[board.size() * board.size()], 0);
+    this.tracker = new ConnectivityTracker(this.board);
+    this.openEmptyCells();
+  }
+
+  // constructor sharing the given state
+  GameEngine(BitBoard board, ConnectivityTracker tracker, boolean turn, int moves,
+      int lastMove, int[] open, int[] slot, int openCount) {
+    this.board = board;
+    this.tracker = tracker;
+    this.turn = turn;
+    this.moves = moves;
+    this.lastMove = lastMove;
+    this.open = open;
+    this.slot = slot;
+    this.openCount = openCount;
+  }
+
+  // returns the starting board for the size, if the size is allowed
+  static BitBoard checkSize(int size) {
+    if (size % 2 == 0 || size < 3) {
+      throw new IllegalArgumentException("board size must be odd and greater than 3");
+    }
+    return new BitBoard(size);
+  }
+
+  // EFFECT: makes every empty cell off the edges playable, in order of
+  // cell number, reading the empty bitboard a word at a time
+  void openEmptyCells() {
+    int size = this.size();
+    Arrays.fill(this.slot, -1);
+    this.openCount = 0;
+    for (int word = 0; word < this.board.empty.length; word++) {
+      long bits = this.board.empty[word];
+      while (bits != 0) {
+        int move = (word << 6) + Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+        int row = move / size;
+        int col = move - row * size;
+        if (row > 0 && row < size - 1 && col > 0 && col < size - 1) {
+          this.open[this.openCount] = move;
+          this.slot[move] = this.openCount;
+          this.openCount++;
+        }
+      }
+    }
+  }
+
+  // number of cells along each side of the board
+  int size() {
+    return this.board.size;
+  }
+
+  // the player to move
+  int currentPlayer() {
+    return this.turn ? BoardState.PLAYER1 : BoardState.PLAYER2;
+  }
+
+  // can the current player claim the cell?
+  boolean isLegal(int row, int col) {
+    return row >= 0 && row < this.size() && col >= 0 && col < this.size()
+        && this.slot[row * this.size() + col] >= 0 && !this.isOver();
+  }
+
+  // EFFECT: claims the cell for the current player and passes the turn.
+  // Any undone moves can no longer be redone
+  void applyMove(int row, int col) {
+    if (!this.isLegal(row, col)) {
+      throw new IllegalArgumentException("cell (" + row + ", " + col + ") is not playable");
+    }
+
+    this.board.setOwner(col, row, this.currentPlayer());
+    this.tracker.claim(col, row, this.turn);
+    this.removeOpen(row * this.size() + col);
+    this.lastMove = row * this.size() + col;
+    this.turn = !this.turn;
+    this.moves++;
+
+    if (this.history != null) {
+      this.history[this.played] = this.lastMove;
+      this.played++;
+      this.redoable = this.played;
+    }
+  }
+
+  // EFFECT: remembers every move from now on, so that moves can be undone
+  // and redone in O(1) instead of copying the game
+  void keepHistory() {
+    if (this.history == null) {
+      this.tracker.keepHistory();
+      this.history = new int[this.open.length];
+      this.played = 0;
+      this.redoable = 0;
+    }
+  }
+
+  // can a move be undone?
+  boolean canUndo() {
+    return this.history != null && this.played > 0;
+  }
+
+  // can an undone move be played again?
+  boolean canRedo() {
+    return this.history != null && this.played < this.redoable;
+  }
+
+  // EFFECT: takes back the last move, giving the turn back to the player
+  // who made it
+  void undo() {
+    if (!this.canUndo()) {
+      throw new IllegalStateException("no moves to undo");
+    }
+    this.played--;
+    int move = this.history[this.played];
+    this.board.setOwner(move % this.size(), move / this.size(), BoardState.EMPTY);
+    this.tracker.undoClaim();
+    this.open[this.openCount] = move;
+    this.slot[move] = this.openCount;
+    this.openCount++;
+    this.lastMove = this.played > 0 ? this.history[this.played - 1] : -1;
+    this.turn = !this.turn;
+    this.moves--;
+  }
+
+  // EFFECT: plays the last undone move again
+  void redo() {
+    if (!this.canRedo()) {
+      throw new IllegalStateException("no moves to redo");
+    }
+    int redoable = this.redoable;
+    this.applyMove(this.history[this.played]);
+    this.redoable = redoable;
+  }
+
+  // EFFECT: claims the numbered cell for the current player
+  void applyMove(int move) {
+    this.applyMove(move / this.size(), move % this.size());
+  }
+
+  // EFFECT: takes the cell out of the playable cells by moving the last
+  // playable cell into its slot
+  void removeOpen(int move) {
+    int index = this.slot[move];
+    int last = this.open[this.openCount - 1];
+    this.open[index] = last;
+    this.slot[last] = index;
+    this.slot[move] = -1;
+    this.openCount--;
+  }
+
+  // the numbers of every cell the current player may claim
+  int[] legalMoves() {
+    if (this.isOver()) {
+      return new int[0];
+    }
+    return Arrays.copyOf(this.open, this.openCount);
+  }
+
+  // a uniformly random legal move
+  int randomMove(SplittableRandom random) {
+    return this.open[random.nextInt(this.openCount)];
+  }
+
+  // the player who has joined its goal edges, or EMPTY if neither has
+  int winner() {
+    if (this.tracker.player1Connected()) {
+      return BoardState.PLAYER1;
+    }
+    else if (this.tracker.player2Connected()) {
+      return BoardState.PLAYER2;
+    }
+    else {
+      return BoardState.EMPTY;
+    }
+  }
+
+  // has a player won or the board run out of empty cells?
+  boolean isOver() {
+    return this.tracker.player1Connected() || this.tracker.player2Connected()
+        || this.openCount == 0;
+  }
+
+  // EFFECT: makes this game the same as the other one, on a board of the
+  // same size, without allocating
+  void copyFrom(GameEngine other) {
+    this.board.copyFrom(other.board);
+    this.tracker.copyFrom(other.tracker);
+    this.turn = other.turn;
+    this.moves = other.moves;
+    this.lastMove = other.lastMove;
+    System.arraycopy(other.open, 0, this.open, 0, this.open.length);
+    System.arraycopy(other.slot, 0, this.slot, 0, this.slot.length);
+    this.openCount = other.openCount;
+    if (other.history == null) {
+      this.history = null;
+    }
+    else {
+      if (this.history == null) {
+        this.history = new int[other.history.length];
+      }
+      System.arraycopy(other.history, 0, this.history, 0, other.redoable);
+    }
+    this.played = other.played;
+    this.redoable = other.redoable;
+  }
+
+  // returns an independent copy of this game
+  GameEngine copy() {
+    GameEngine copy = new GameEngine((BitBoard) this.board.copy(), this.tracker.copy(),
+        this.turn, this.moves, this.lastMove, this.open.clone(), this.slot.clone(),
+        this.openCount);
+    if (this.history != null) {
+      copy.history = this.history.clone();
+    }
+    copy.played = this.played;
+    copy.redoable = this.redoable;
+    return copy;
+  }
+}
@@ -0,0 +1,325 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+
+// the moves of one game in the order they were played, as cell numbers
+// row * size + col
+class GameRecord {
+  int[] moves;
+  int count;
+
+  // constructor for a game with no moves yet
+  GameRecord() {
+    this.moves = new int[16];
+    this.count = 0;
+  }
+
+  // EFFECT: adds a move to the end of the game
+  void add(int move) {
+    if (this.count == this.moves.length) {
+      this.moves = Arrays.copyOf(this.moves, 2 * this.count);
+    }
+    this.moves[this.count] = move;
+    this.count++;
+  }
+
+  // EFFECT: forgets every move
+  void clear() {
+    this.count = 0;
+  }
+}
+
+// writes games in the binary record format. A file starts with the magic
+// number "BRGT" and a version byte, followed by one record per game: the
+// board size, the seed of the game's random moves and the number of moves,
+// then each move, all as unsigned LEB128 varints (7 bits per byte, low
+// bits first, high bit set on every byte but the last)
+class GameRecordWriter implements Closeable {
+  static final int MAGIC = 0x42524754;
+  static final int VERSION = 1;
+
+  OutputStream out;
+
+  // constructor for a writer starting a new file on the stream
+  GameRecordWriter(OutputStream out) throws IOException {
+    this.out = new BufferedOutputStream(out, 1 << 16);
+    for (int shift = 24; shift >= 0; shift -= 8) {
+      this.out.write(MAGIC >>> shift);
+    }
+    this.out.write(VERSION);
+  }
+
+  // EFFECT: appends a game to the file
+  void write(int size, long seed, GameRecord record) throws IOException {
+    this.write(size, seed, record.moves, record.count);
+  }
+
+  // EFFECT: appends a game with the first count moves of the array
+  void write(int size, long seed, int[] moves, int count) throws IOException {
+    this.writeVarint(size);
+    this.writeVarint(seed);
+    this.writeVarint(count);
+    for (int i = 0; i < count; i++) {
+      this.writeVarint(moves[i]);
+    }
+  }
+
+  // EFFECT: writes the value as an unsigned varint
+  void writeVarint(long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      this.out.write((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    this.out.write((int) value);
+  }
+
+  // EFFECT: flushes and closes the file
+  public void close() throws IOException {
+    this.out.close();
+  }
+}
+
+// reads a file of game records through memory-mapped windows, without
+// copying the file or allocating per record: next() moves to the next
+// record and reads its header into size, seed and count, and nextMove()
+// decodes its moves one at a time. A window is remapped from the current
+// position whenever fewer bytes are left in it than the longest varint,
+// so records may cross window boundaries. Run it alone to write a corpus
+// of random games and time replaying it:
+//   java GameRecordReader [size] [games] [file]
+class GameRecordReader implements Closeable {
+  static final int LONGEST_VARINT = 10;
+
+  FileChannel channel;
+  long end;
+  long window;
+  MappedByteBuffer buffer;
+  long base;
+
+  // header of the current record, and its moves not yet read
+  int size;
+  long seed;
+  int count;
+  int movesLeft;
+
+  // engine the records are replayed into, and the starting position it is
+  // reset to before each record
+  GameEngine engine;
+  GameEngine start;
+
+  // constructor for a reader mapping the file a window of the given number
+  // of bytes at a time
+  GameRecordReader(Path file, long window) throws IOException {
+    this(FileChannel.open(file, StandardOpenOption.READ), 0, -1, window);
+
+    int magic = 0;
+    for (int i = 0; i < 4 && this.buffer.hasRemaining(); i++) {
+      magic = (magic << 8) | (this.buffer.get() & 0xFF);
+    }
+    if (magic != GameRecordWriter.MAGIC || !this.buffer.hasRemaining()) {
+      this.close();
+      throw new IOException("not a game record file");
+    }
+    int version = this.buffer.get();
+    if (version != GameRecordWriter.VERSION) {
+      this.close();
+      throw new IOException("unsupported game record version " + version);
+    }
+    this.movesLeft = 0;
+  }
+
+  // constructor for a reader with windows of 1 GiB
+  GameRecordReader(Path file) throws IOException {
+    this(file, 1L << 30);
+  }
+
+  // constructor for a reader of the records in bytes [from, to) of an open
+  // file (to the end of the file if to is negative). Readers of parts of a
+  // file may share its channel, and do not check the file header
+  GameRecordReader(FileChannel channel, long from, long to, long window) throws IOException {
+    this.channel = channel;
+    this.end = to < 0 ? channel.size() : to;
+    this.window = Math.max(window, 2 * LONGEST_VARINT);
+    this.movesLeft = 0;
+    this.map(from);
+  }
+
+  public static void main(String[] args) throws IOException {
+    int size = args.length > 0 ? Integer.parseInt(args[0]) : 11;
+    int games = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+    Path file = args.length > 2 ? Paths.get(args[2]) : Files.createTempFile("games", ".brgt");
+
+    // writes random games
+    long start = System.nanoTime();
+    SplittableRandom random = new SplittableRandom(42);
+    GameRecord record = new GameRecord();
+    GameRecordWriter writer = new GameRecordWriter(Files.newOutputStream(file));
+    for (int i = 0; i < games; i++) {
+      long seed = random.nextLong();
+      SplittableRandom moves = new SplittableRandom(seed);
+      GameEngine game = new GameEngine(size);
+      record.clear();
+      while (!game.isOver()) {
+        int move = game.randomMove(moves);
+        game.applyMove(move);
+        record.add(move);
+      }
+      writer.write(size, seed, record);
+    }
+    writer.close();
+    double written = (System.nanoTime() - start) / 1e9;
+    long bytes = Files.size(file);
+
+    // replays every game, then decodes every record without replaying it
+    GameRecordReader reader = new GameRecordReader(file);
+    start = System.nanoTime();
+    long moves = 0;
+    long player1Wins = 0;
+    while (reader.next()) {
+      moves += reader.count;
+      if (reader.replay() == BoardState.PLAYER1) {
+        player1Wins++;
+      }
+    }
+    double replayed = (System.nanoTime() - start) / 1e9;
+    reader.close();
+
+    reader = new GameRecordReader(file);
+    start = System.nanoTime();
+    long checksum = 0;
+    while (reader.next()) {
+      while (reader.movesLeft > 0) {
+        checksum += reader.nextMove();
+      }
+    }
+    double scanned = (System.nanoTime() - start) / 1e9;
+    reader.close();
+
+    System.out.println(String.format(Locale.ROOT,
+        "%d games of %dx%d (%.2f bytes/move, %.1f MB) written in %.3f s%n"
+        + "replayed in %.3f s: %.0f games/s, %.0f moves/s, %.1f MB/s (player1 won %.2f%%)%n"
+        + "scanned in %.3f s: %.0f moves/s, %.1f MB/s (checksum %d)",
+        games, size, size, (double) bytes / moves, bytes / 1e6, written,
+        replayed, games / replayed, moves / replayed, bytes / 1e6 / replayed,
+        100.0 * player1Wins / games, scanned, moves / scanned, bytes / 1e6 / scanned, checksum));
+    if (args.length <= 2) {
+      Files.delete(file);
+    }
+  }
+
+  // EFFECT: maps the window of the file starting at the given offset
+  void map(long offset) throws IOException {
+    this.base = offset;
+    this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, offset,
+        Math.min(this.window, this.end - offset));
+  }
+
+  // EFFECT: remaps from the current position if a varint might run past
+  // the end of the window
+  void ensureVarint() throws IOException {
+    if (this.buffer.remaining() < LONGEST_VARINT
+        && this.base + this.buffer.limit() < this.end) {
+      this.map(this.position());
+    }
+  }
+
+  // reads the next unsigned varint
+  long readVarint() throws IOException {
+    this.ensureVarint();
+    long value = 0;
+    int shift = 0;
+    byte b;
+    do {
+      if (!this.buffer.hasRemaining()) {
+        throw new IOException("game record ends in the middle of a number");
+      }
+      b = this.buffer.get();
+      value |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while (b < 0);
+    return value;
+  }
+
+  // EFFECT: moves to the next record, skipping any moves of the current
+  // one not yet read, and returns whether there was one
+  boolean next() throws IOException {
+    while (this.movesLeft > 0) {
+      this.nextMove();
+    }
+    if (this.position() == this.end) {
+      return false;
+    }
+    this.size = (int) this.readVarint();
+    this.seed = this.readVarint();
+    this.count = (int) this.readVarint();
+    this.movesLeft = this.count;
+    return true;
+  }
+
+  // EFFECT: moves past the next record without decoding its moves (each
+  // move ends at a byte with its high bit clear), and returns whether there
+  // was one
+  boolean skip() throws IOException {
+    if (!this.next()) {
+      return false;
+    }
+    while (this.movesLeft > 0) {
+      if (!this.buffer.hasRemaining()) {
+        if (this.position() == this.end) {
+          throw new IOException("game record ends in the middle of a number");
+        }
+        this.map(this.position());
+      }
+      if (this.buffer.get() >= 0) {
+        this.movesLeft--;
+      }
+    }
+    return true;
+  }
+
+  // the offset in the file of the next byte to read
+  long position() {
+    return this.base + this.buffer.position();
+  }
+
+  // EFFECT: reads the next move of the current record
+  int nextMove() throws IOException {
+    if (this.movesLeft == 0) {
+      throw new IllegalStateException("no moves left in this record");
+    }
+    this.movesLeft--;
+    return (int) this.readVarint();
+  }
+
+  // EFFECT: plays the rest of the current record on a new game and returns
+  // the winner. The engine is reused between records of the same size
+  int replay() throws IOException {
+    if (this.engine == null || this.engine.size() != this.size) {
+      this.start = new GameEngine(this.size);
+      this.engine = this.start.copy();
+    }
+    else {
+      this.engine.copyFrom(this.start);
+    }
+    while (this.movesLeft > 0) {
+      this.engine.applyMove(this.nextMove());
+    }
+    return this.engine.winner();
+  }
+
+  // EFFECT: closes the file
+  public void close() throws IOException {
+    this.channel.close();
+  }
+}
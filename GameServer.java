@@ -0,0 +1,628 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+// one game between two connections. Moves are checked and played by a
+// GameEngine, which follows the same rules as onMouseClicked and gameOver
+// in the world. Every match has its own lock, so matches never wait on
+// each other, and lines to its players are queued under the lock but sent
+// after it is released, so a client slow to read never holds up a move.
+// Locks are used rather than synchronized so that a virtual thread
+// blocked writing to a socket does not pin its carrier thread
+class Match {
+  int id;
+  GameEngine game;
+  ServerConnection[] players;
+  boolean finished;
+  ReentrantLock lock;
+
+  // lines queued for the players and who each one is for, sent in order
+  // by whichever thread holds the sending lock
+  ArrayDeque<String> outbox;
+  ArrayDeque<ServerConnection> recipients;
+  ReentrantLock sending;
+
+  // constructor for a new game of the size between the two connections
+  Match(int id, int size, ServerConnection player1, ServerConnection player2) {
+    this.id = id;
+    this.game = new GameEngine(size);
+    this.players = new ServerConnection[] {null, player1, player2};
+    this.finished = false;
+    this.lock = new ReentrantLock();
+    this.outbox = new ArrayDeque<String>();
+    this.recipients = new ArrayDeque<ServerConnection>();
+    this.sending = new ReentrantLock();
+  }
+
+  // EFFECT: tells both players the match has started, before either can
+  // move in it. A player that disconnected while being paired never saw
+  // the match to leave it, so it forfeits here
+  void start() {
+    this.lock.lock();
+    try {
+      for (int player = 1; player <= 2; player++) {
+        this.players[player].match = this;
+        this.players[player].player = player;
+      }
+      for (int player = 1; player <= 2; player++) {
+        this.post(player, "START " + this.id + " " + player + " " + this.game.size());
+      }
+      for (int player = 1; player <= 2; player++) {
+        if (this.players[player].closed && !this.finished) {
+          this.finish(3 - player);
+        }
+      }
+    }
+    finally {
+      this.lock.unlock();
+    }
+    this.flush();
+  }
+
+  // EFFECT: plays the move for the player if it is theirs to make, answering
+  // OK to them and MOVED to the other player, then RESULT to both if the
+  // game is over
+  void move(int player, int row, int col) {
+    this.lock.lock();
+    try {
+      if (this.finished) {
+        this.post(player, "ERROR game is over");
+      }
+      else if (this.game.currentPlayer() != player) {
+        this.post(player, "ERROR not your turn");
+      }
+      else if (!this.game.isLegal(row, col)) {
+        this.post(player, "ERROR cell (" + row + ", " + col + ") is not playable");
+      }
+      else {
+        this.game.applyMove(row, col);
+        this.post(player, "OK " + row + " " + col);
+        this.post(3 - player, "MOVED " + row + " " + col);
+        if (this.game.isOver()) {
+          this.finish(this.game.winner());
+        }
+      }
+    }
+    finally {
+      this.lock.unlock();
+    }
+    this.flush();
+  }
+
+  // the board as "STATE size player moves cells", where cells has the owner
+  // (0, 1 or 2) of every cell, row by row
+  String state() {
+    this.lock.lock();
+    try {
+      int size = this.game.size();
+      StringBuilder cells = new StringBuilder(size * size);
+      for (int row = 0; row < size; row++) {
+        for (int col = 0; col < size; col++) {
+          cells.append((char) ('0' + this.game.board.ownerAt(col, row)));
+        }
+      }
+      return "STATE " + size + " " + this.game.currentPlayer() + " " + this.game.moves
+          + " " + cells;
+    }
+    finally {
+      this.lock.unlock();
+    }
+  }
+
+  // EFFECT: ends the match, giving it to the other player if the given one
+  // leaves before it is over
+  void leave(int player) {
+    this.lock.lock();
+    try {
+      if (!this.finished) {
+        this.finish(3 - player);
+      }
+    }
+    finally {
+      this.lock.unlock();
+    }
+    this.flush();
+  }
+
+  // EFFECT: tells both players who won (0 for a tie), and frees them to
+  // join another match
+  void finish(int winner) {
+    this.finished = true;
+    for (int player = 1; player <= 2; player++) {
+      if (this.players[player].match == this) {
+        this.players[player].match = null;
+        this.players[player].joined = 0;
+      }
+    }
+    this.post(1, "RESULT " + winner);
+    this.post(2, "RESULT " + winner);
+    this.players[1].server.matchesFinished.incrementAndGet();
+  }
+
+  // EFFECT: queues a line for the player, while holding the lock
+  void post(int player, String line) {
+    this.outbox.add(line);
+    this.recipients.add(this.players[player]);
+  }
+
+  // EFFECT: sends the queued lines in the order they were queued, taking
+  // the lock only to take each one off the queue
+  void flush() {
+    this.sending.lock();
+    try {
+      while (true) {
+        String line;
+        ServerConnection recipient;
+        this.lock.lock();
+        try {
+          line = this.outbox.poll();
+          recipient = this.recipients.poll();
+        }
+        finally {
+          this.lock.unlock();
+        }
+        if (line == null) {
+          return;
+        }
+        recipient.send(line);
+      }
+    }
+    finally {
+      this.sending.unlock();
+    }
+  }
+}
+
+// one client of the server, served by its own virtual thread. The client
+// sends one command per line:
+//   JOIN <size>        wait for another client of the same size
+//   MOVE <row> <col>   claim a cell
+//   STATE              ask for the board
+//   QUIT               leave
+// and is answered with WAIT, START <match> <player> <size>, OK <row> <col>,
+// MOVED <row> <col> (the other player's move), STATE ..., RESULT <winner>
+// or ERROR <reason>. A client joins one match at a time, and can join
+// another once it has the RESULT of the last
+class ServerConnection implements Runnable {
+  GameServer server;
+  Socket socket;
+  BufferedReader in;
+  PrintWriter out;
+  ReentrantLock writing;
+
+  // the match this client is playing and its player number in it, the
+  // board size it joined for (0 until it joins, and again once its match
+  // is over) and whether it has disconnected
+  volatile Match match;
+  volatile int player;
+  volatile int joined;
+  volatile boolean closed;
+
+  // constructor for a client that has just connected
+  ServerConnection(GameServer server, Socket socket) throws IOException {
+    this.server = server;
+    this.socket = socket;
+    this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+        StandardCharsets.US_ASCII));
+    this.out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(),
+        StandardCharsets.US_ASCII));
+    this.writing = new ReentrantLock();
+    this.joined = 0;
+    this.closed = false;
+  }
+
+  // reads commands until the client quits or disconnects
+  public void run() {
+    try {
+      String line = this.in.readLine();
+      while (line != null && !line.equals("QUIT")) {
+        this.handle(line.trim().split("\\s+"));
+        line = this.in.readLine();
+      }
+    }
+    catch (IOException e) {
+      // the client went away
+    }
+    finally {
+      // marked closed before looking for a match, so that a match started
+      // at the same time either is seen here or sees this
+      this.closed = true;
+      this.server.leave(this);
+      if (this.match != null) {
+        this.match.leave(this.player);
+      }
+      try {
+        this.socket.close();
+      }
+      catch (IOException e) {
+        // already closed
+      }
+    }
+  }
+
+  // EFFECT: carries out one command
+  void handle(String[] words) {
+    try {
+      if (words[0].equals("JOIN") && words.length == 2) {
+        this.server.join(this, Integer.parseInt(words[1]));
+      }
+      else if (words[0].equals("MOVE") && words.length == 3) {
+        if (this.match == null) {
+          this.send("ERROR not in a match");
+        }
+        else {
+          this.match.move(this.player, Integer.parseInt(words[1]), Integer.parseInt(words[2]));
+        }
+      }
+      else if (words[0].equals("STATE") && words.length == 1) {
+        this.send(this.match == null ? "ERROR not in a match" : this.match.state());
+      }
+      else {
+        this.send("ERROR unknown command " + String.join(" ", words));
+      }
+    }
+    catch (IllegalArgumentException e) {
+      this.send("ERROR " + e.getMessage());
+    }
+  }
+
+  // EFFECT: sends one line to the client
+  void send(String line) {
+    this.writing.lock();
+    try {
+      this.out.print(line);
+      this.out.print('\n');
+      this.out.flush();
+    }
+    finally {
+      this.writing.unlock();
+    }
+  }
+}
+
+// hosts any number of matches over a line-based TCP protocol (see
+// ServerConnection), with one virtual thread per connection. Clients that
+// join with the same board size are paired in the order they arrive, and
+// the first to join plays first. Run it with:
+//   java GameServer [port]
+class GameServer implements Closeable {
+  ServerSocket listener;
+  ExecutorService threads;
+
+  // a client waiting for an opponent, for each board size
+  HashMap<Integer, ServerConnection> waiting;
+  AtomicInteger matchesStarted;
+  AtomicInteger matchesFinished;
+
+  // constructor for a server listening on the port (any free port if 0)
+  GameServer(int port) throws IOException {
+    this.listener = new ServerSocket(port, 4096, InetAddress.getLoopbackAddress());
+    this.threads = Executors.newVirtualThreadPerTaskExecutor();
+    this.waiting = new HashMap<Integer, ServerConnection>();
+    this.matchesStarted = new AtomicInteger();
+    this.matchesFinished = new AtomicInteger();
+  }
+
+  public static void main(String[] args) throws IOException {
+    GameServer server = new GameServer(args.length > 0 ? Integer.parseInt(args[0]) : 7000);
+    System.out.println("listening on port " + server.port());
+    server.serve();
+  }
+
+  // the port the server is listening on
+  int port() {
+    return this.listener.getLocalPort();
+  }
+
+  // EFFECT: accepts connections until the server is closed, starting a
+  // virtual thread for each
+  void serve() {
+    while (!this.listener.isClosed()) {
+      try {
+        Socket socket = this.listener.accept();
+        socket.setTcpNoDelay(true);
+        this.threads.execute(new ServerConnection(this, socket));
+      }
+      catch (IOException e) {
+        // the server was closed, or this connection failed (say, because
+        // the process is out of file descriptors) and the next may not
+      }
+    }
+  }
+
+  // EFFECT: serves connections on a virtual thread of its own
+  GameServer start() {
+    final GameServer server = this;
+    Thread.ofVirtual().start(new Runnable() {
+      public void run() {
+        server.serve();
+      }
+    });
+    return this;
+  }
+
+  // EFFECT: pairs the client with the one waiting for the same size, or
+  // makes it the one waiting, unless it is already waiting or playing
+  void join(ServerConnection connection, int size) {
+    GameEngine.checkSize(size);
+    ServerConnection opponent = null;
+    boolean free;
+    synchronized (this.waiting) {
+      free = connection.joined == 0;
+      if (free) {
+        connection.joined = size;
+        opponent = this.waiting.remove(size);
+        if (opponent == null) {
+          this.waiting.put(size, connection);
+        }
+      }
+    }
+
+    if (!free) {
+      connection.send(connection.match == null ? "ERROR already waiting"
+          : "ERROR already in a match");
+    }
+    else if (opponent == null) {
+      connection.send("WAIT");
+    }
+    else {
+      new Match(this.matchesStarted.incrementAndGet(), size, opponent, connection).start();
+    }
+  }
+
+  // EFFECT: stops the client waiting for an opponent, if it was
+  void leave(ServerConnection connection) {
+    synchronized (this.waiting) {
+      this.waiting.values().remove(connection);
+    }
+  }
+
+  // EFFECT: stops accepting connections and ends every connection's thread
+  public void close() throws IOException {
+    this.listener.close();
+    this.threads.shutdownNow();
+  }
+}
+
+// a line-based connection to a game server
+class GameClient implements Closeable {
+  Socket socket;
+  BufferedReader in;
+  PrintWriter out;
+
+  // constructor for a client connected to the server
+  GameClient(String host, int port) throws IOException {
+    this.socket = new Socket(host, port);
+    this.socket.setTcpNoDelay(true);
+    this.in = new BufferedReader(new InputStreamReader(this.socket.getInputStream(),
+        StandardCharsets.US_ASCII));
+    this.out = new PrintWriter(new OutputStreamWriter(this.socket.getOutputStream(),
+        StandardCharsets.US_ASCII));
+  }
+
+  // EFFECT: sends one command
+  void send(String line) {
+    this.out.print(line);
+    this.out.print('\n');
+    this.out.flush();
+  }
+
+  // EFFECT: waits for the next line from the server
+  String receive() throws IOException {
+    String line = this.in.readLine();
+    if (line == null) {
+      throw new IOException("server closed the connection");
+    }
+    return line;
+  }
+
+  // EFFECT: sends a command and returns the answer
+  String ask(String line) throws IOException {
+    this.send(line);
+    return this.receive();
+  }
+
+  // EFFECT: disconnects
+  public void close() throws IOException {
+    this.socket.close();
+  }
+}
+
+// a simulated client that joins a match and plays random moves, timing
+// how long each of its moves takes to be answered
+class SimulatedPlayer implements Runnable {
+  String host;
+  int port;
+  int size;
+  SplittableRandom random;
+
+  // round-trip times of its moves in nanoseconds, the winner of its match
+  // (-1 until it ends) and the error that stopped it, if any
+  long[] latencies;
+  int count;
+  int winner;
+  Exception failure;
+
+  // constructor for a player of the given size drawing moves from the seed
+  SimulatedPlayer(String host, int port, int size, long seed) {
+    this.host = host;
+    this.port = port;
+    this.size = size;
+    this.random = new SplittableRandom(seed);
+    this.latencies = new long[size * size / 2 + 1];
+    this.count = 0;
+    this.winner = -1;
+  }
+
+  // plays one match to the end
+  public void run() {
+    try {
+      GameClient client = new GameClient(this.host, this.port);
+      try {
+        this.play(client);
+      }
+      finally {
+        client.close();
+      }
+    }
+    catch (IOException | RuntimeException e) {
+      this.failure = e;
+    }
+  }
+
+  // EFFECT: joins a match, mirrors it in an engine and moves on its turns
+  void play(GameClient client) throws IOException {
+    client.send("JOIN " + this.size);
+    GameEngine game = null;
+    while (this.winner < 0) {
+      String[] words = client.receive().split(" ");
+      if (words[0].equals("START")) {
+        game = new GameEngine(this.size);
+        if (words[2].equals("1")) {
+          this.move(client, game);
+        }
+      }
+      else if (words[0].equals("MOVED")) {
+        game.applyMove(Integer.parseInt(words[1]), Integer.parseInt(words[2]));
+        if (!game.isOver()) {
+          this.move(client, game);
+        }
+      }
+      else if (words[0].equals("RESULT")) {
+        this.winner = Integer.parseInt(words[1]);
+      }
+      else if (!words[0].equals("WAIT")) {
+        throw new IOException("unexpected answer " + String.join(" ", words));
+      }
+    }
+  }
+
+  // EFFECT: sends a random move and waits for it to be accepted
+  void move(GameClient client, GameEngine game) throws IOException {
+    int move = game.randomMove(this.random);
+    int row = move / this.size;
+    int col = move % this.size;
+    long start = System.nanoTime();
+    String answer = client.ask("MOVE " + row + " " + col);
+    this.latencies[this.count] = System.nanoTime() - start;
+    this.count++;
+    if (!answer.equals("OK " + row + " " + col)) {
+      throw new IOException("move " + row + " " + col + " answered " + answer);
+    }
+    game.applyMove(row, col);
+  }
+}
+
+// load-tests a game server on localhost with simulated players, two per
+// match, each on its own virtual thread, and reports the median and 99th
+// percentile time for a move to be answered. Starts a server in this
+// process unless given a port. Run it with:
+//   java GameLoadTest [matches] [size] [port]
+class GameLoadTest {
+  int matches;
+  int size;
+  long seed;
+
+  // round-trip times of every move, sorted, once the test has run
+  long[] latencies;
+  int failures;
+  long elapsedNanos;
+
+  // constructor for a test of the given number of matches of the size
+  GameLoadTest(int matches, int size, long seed) {
+    this.matches = matches;
+    this.size = size;
+    this.seed = seed;
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    int matches = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    int size = args.length > 1 ? Integer.parseInt(args[1]) : 11;
+    GameServer server = args.length > 2 ? null : new GameServer(0).start();
+    int port = args.length > 2 ? Integer.parseInt(args[2]) : server.port();
+
+    // warms up the JIT on both sides before timing anything
+    new GameLoadTest(Math.min(matches, 500), size, 7).run("localhost", port);
+    GameLoadTest test = new GameLoadTest(matches, size, 42);
+    test.run("localhost", port);
+    System.out.println(test);
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  // EFFECT: plays every match at once against the server and gathers the
+  // players' round-trip times
+  void run(String host, int port) throws InterruptedException {
+    List<SimulatedPlayer> players = new ArrayList<SimulatedPlayer>();
+    SplittableRandom seeds = new SplittableRandom(this.seed);
+    for (int i = 0; i < 2 * this.matches; i++) {
+      players.add(new SimulatedPlayer(host, port, this.size, seeds.nextLong()));
+    }
+
+    long start = System.nanoTime();
+    ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+    for (SimulatedPlayer player : players) {
+      threads.execute(player);
+    }
+    threads.shutdown();
+    threads.awaitTermination(1, TimeUnit.DAYS);
+    this.elapsedNanos = System.nanoTime() - start;
+
+    int total = 0;
+    for (SimulatedPlayer player : players) {
+      total += player.count;
+    }
+    this.latencies = new long[total];
+    this.failures = 0;
+    total = 0;
+    for (SimulatedPlayer player : players) {
+      System.arraycopy(player.latencies, 0, this.latencies, total, player.count);
+      total += player.count;
+      if (player.failure != null || player.winner < 0) {
+        this.failures++;
+      }
+    }
+    Arrays.sort(this.latencies);
+  }
+
+  // the round-trip time below which the given fraction of moves fall, in
+  // nanoseconds
+  long percentile(double fraction) {
+    if (this.latencies.length == 0) {
+      return 0;
+    }
+    int index = (int) Math.ceil(fraction * this.latencies.length) - 1;
+    return this.latencies[Math.max(0, Math.min(index, this.latencies.length - 1))];
+  }
+
+  // summary of the test
+  public String toString() {
+    return String.format(Locale.ROOT,
+        "%d matches of %dx%d (%d players failed), %d moves in %.3f s (%.0f moves/s): "
+        + "p50 %.1f us, p99 %.1f us",
+        this.matches, this.size, this.size, this.failures, this.latencies.length,
+        this.elapsedNanos / 1e9, this.latencies.length / (this.elapsedNanos / 1e9),
+        this.percentile(0.5) / 1e3, this.percentile(0.99) / 1e3);
+  }
+}
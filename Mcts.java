@@ -0,0 +1,362 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+
+// a node of a Monte Carlo search tree: the position reached when player
+// claims the numbered cell, with the results of every playout through it
+class MctsNode {
+  int move;
+  int player;
+  MctsNode parent;
+  ArrayList<MctsNode> children;
+  int[] untried;
+  int untriedCount;
+  long visits;
+  long wins;
+
+  // constructor for the node reached by the move
+  MctsNode(int move, int player, MctsNode parent) {
+    this.move = move;
+    this.player = player;
+    this.parent = parent;
+    this.children = new ArrayList<MctsNode>();
+    this.untried = null;
+    this.untriedCount = 0;
+    this.visits = 0;
+    this.wins = 0;
+  }
+
+  // the child with the best upper confidence bound (UCT) for the player
+  // choosing between them
+  MctsNode bestChild(double exploration) {
+    double logVisits = Math.log(this.visits);
+    MctsNode best = null;
+    double bestScore = Double.NEGATIVE_INFINITY;
+    for (MctsNode child : this.children) {
+      double score = (double) child.wins / child.visits
+          + exploration * Math.sqrt(logVisits / child.visits);
+      if (score > bestScore) {
+        best = child;
+        bestScore = score;
+      }
+    }
+    return best;
+  }
+}
+
+// grows one search tree from the root position until its share of the
+// budget is spent. Each iteration copies the root into a scratch bitboard,
+// walks down the tree, adds one node, then fills every remaining empty cell
+// at random. A full board always has exactly one winner, so the playout
+// only needs a single win check at the end
+class MctsWorker implements Callable<MctsNode> {
+  MctsPlayer player;
+  GameEngine game;
+  SplittableRandom random;
+  long iterations;
+  long deadline;
+
+  // scratch state, reused by every iteration
+  BitBoard scratch;
+  int[] open;
+  long[] seen;
+  int[] worklist;
+  long playouts;
+
+  // constructor for a worker searching the game with its own random source
+  MctsWorker(MctsPlayer player, GameEngine game, SplittableRandom random, long iterations,
+      long deadline) {
+    int cells = game.size() * game.size();
+    this.player = player;
+    this.game = game;
+    this.random = random;
+    this.iterations = iterations;
+    this.deadline = deadline;
+    this.scratch = (BitBoard) game.board.copy();
+    this.open = new int[game.openCount];
+    this.seen = new long[this.scratch.player1.length];
+    this.worklist = new int[cells];
+    this.playouts = 0;
+  }
+
+  // runs the search and returns the root of its tree
+  public MctsNode call() {
+    int mover = this.game.currentPlayer();
+    MctsNode root = new MctsNode(-1, mover == BoardState.PLAYER1 ? BoardState.PLAYER2
+        : BoardState.PLAYER1, null);
+
+    while (this.playouts < this.iterations
+        && ((this.playouts & 63) != 0
+        || (System.nanoTime() < this.deadline && !this.player.cancelled))) {
+      this.iterate(root);
+      this.playouts++;
+    }
+    return root;
+  }
+
+  // EFFECT: runs one selection, expansion, playout and update
+  void iterate(MctsNode root) {
+    System.arraycopy(this.game.board.player1, 0, this.scratch.player1, 0,
+        this.scratch.player1.length);
+    System.arraycopy(this.game.board.player2, 0, this.scratch.player2, 0,
+        this.scratch.player2.length);
+    System.arraycopy(this.game.board.empty, 0, this.scratch.empty, 0,
+        this.scratch.empty.length);
+
+    // selection: follows the best children while every move has been tried
+    MctsNode node = root;
+    while (node.untried != null && node.untriedCount == 0 && !node.children.isEmpty()) {
+      node = node.bestChild(this.player.exploration);
+      this.claim(node.move, node.player);
+    }
+
+    // expansion: adds one untried move
+    if (node.untried == null) {
+      this.listUntried(node);
+    }
+    if (node.untriedCount > 0) {
+      int pick = this.random.nextInt(node.untriedCount);
+      int move = node.untried[pick];
+      node.untriedCount--;
+      node.untried[pick] = node.untried[node.untriedCount];
+
+      MctsNode child = new MctsNode(move, node.player == BoardState.PLAYER1
+          ? BoardState.PLAYER2 : BoardState.PLAYER1, node);
+      node.children.add(child);
+      this.claim(move, child.player);
+      node = child;
+    }
+
+    // playout and update
+    int winner = this.playout(node.player == BoardState.PLAYER1 ? BoardState.PLAYER2
+        : BoardState.PLAYER1);
+    for (MctsNode n = node; n != null; n = n.parent) {
+      n.visits++;
+      if (n.player == winner) {
+        n.wins++;
+      }
+    }
+  }
+
+  // EFFECT: gives the numbered cell to the player on the scratch board
+  void claim(int move, int owner) {
+    this.scratch.setOwner(move % this.scratch.size, move / this.scratch.size, owner);
+  }
+
+  // is the numbered cell empty on the scratch board?
+  boolean isEmpty(int move) {
+    return (this.scratch.empty[move >>> 6] & (1L << move)) != 0;
+  }
+
+  // EFFECT: lists the moves still playable from the node's position
+  void listUntried(MctsNode node) {
+    node.untried = new int[this.game.openCount];
+    for (int i = 0; i < this.game.openCount; i++) {
+      int move = this.game.open[i];
+      if (this.isEmpty(move)) {
+        node.untried[node.untriedCount] = move;
+        node.untriedCount++;
+      }
+    }
+  }
+
+  // fills the empty cells in a random order, alternating players starting
+  // with the given one, and returns the winner of the full board
+  int playout(int mover) {
+    System.arraycopy(this.game.open, 0, this.open, 0, this.open.length);
+    for (int i = 0; i < this.open.length; i++) {
+      int j = i + this.random.nextInt(this.open.length - i);
+      int move = this.open[j];
+      this.open[j] = this.open[i];
+      this.open[i] = move;
+
+      if (this.isEmpty(move)) {
+        this.claim(move, mover);
+        mover = mover == BoardState.PLAYER1 ? BoardState.PLAYER2 : BoardState.PLAYER1;
+      }
+    }
+
+    if (this.scratch.connects(BoardState.PLAYER1, this.seen, this.worklist)) {
+      return BoardState.PLAYER1;
+    }
+    else {
+      return BoardState.PLAYER2;
+    }
+  }
+}
+
+// a computer player that chooses moves by Monte Carlo tree search with UCT.
+// Search is root parallel: each thread grows its own tree from the current
+// position, and the move played is the one with the most visits summed over
+// every tree. The budget is a number of playouts, a time limit, or both
+// (whichever runs out first). A position in its opening book, if it has
+// one, is played from the book without searching. The trees grow on a pool
+// given to the player, or on one of its own made by the first search and
+// shut down by close. Run it alone to measure playouts per second:
+//   java MctsPlayer [size] [millis] [threads]
+class MctsPlayer implements Strategy, Cancellable {
+  long iterations;
+  long millis;
+  int threads;
+  double exploration;
+  OpeningBook book;
+
+  // the pool the trees grow on (null until the first search if the player
+  // makes its own), and whether the player made it
+  ForkJoinPool pool;
+  boolean ownsPool;
+
+  // set from another thread to stop searching early
+  volatile boolean cancelled;
+
+  // results of the last search
+  long lastPlayouts;
+  long lastNanos;
+
+  // constructor for a player with the given budget, searching on the given
+  // number of threads of a pool of its own
+  MctsPlayer(long iterations, long millis, int threads) {
+    this(iterations, millis, threads, null);
+  }
+
+  // constructor for a player with the given budget, growing the given
+  // number of trees on the given pool, which the caller shuts down
+  MctsPlayer(long iterations, long millis, int threads, ForkJoinPool pool) {
+    if (iterations <= 0 && millis <= 0) {
+      throw new IllegalArgumentException("search needs an iteration or time budget");
+    }
+    this.iterations = iterations <= 0 ? Long.MAX_VALUE : iterations;
+    this.millis = millis <= 0 ? Long.MAX_VALUE / 2000000 : millis;
+    this.threads = threads;
+    this.exploration = Math.sqrt(2);
+    this.pool = pool;
+  }
+
+  public static void main(String[] args) {
+    int size = args.length > 0 ? Integer.parseInt(args[0]) : 11;
+    long millis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+    int threads = args.length > 2 ? Integer.parseInt(args[2])
+        : Runtime.getRuntime().availableProcessors();
+
+    MctsPlayer player = new MctsPlayer(0, millis, threads);
+    int move = player.chooseMove(new GameEngine(size), new SplittableRandom(42));
+    System.out.println("move " + move + ": " + player.report());
+    player.close();
+  }
+
+  // EFFECT: shuts down the player's own pool, if it made one. A later
+  // search makes a new one
+  void close() {
+    if (this.ownsPool && this.pool != null) {
+      this.pool.shutdown();
+      this.pool = null;
+      this.ownsPool = false;
+    }
+  }
+
+  // EFFECT: stops the search in progress within the next 64 playouts of
+  // each tree, keeping the visits counted so far
+  public void cancel() {
+    this.cancelled = true;
+  }
+
+  // EFFECT: lets searches run to their budgets again
+  public void resume() {
+    this.cancelled = false;
+  }
+
+  // a player with the same budget and counters of its own, growing its
+  // trees on this player's pool and sharing its opening book
+  public Strategy forNewGame() {
+    if (this.pool == null) {
+      this.pool = new ForkJoinPool(this.threads);
+      this.ownsPool = true;
+    }
+    MctsPlayer player = new MctsPlayer(this.iterations, this.millis, this.threads, this.pool);
+    player.exploration = this.exploration;
+    player.book = this.book;
+    return player;
+  }
+
+  // searches the game and returns the most visited move
+  public int chooseMove(GameEngine game, SplittableRandom random) {
+    if (game.isOver()) {
+      throw new IllegalStateException("game is over");
+    }
+    if (this.book != null) {
+      int move = this.book.bestMove(game);
+      if (move >= 0) {
+        this.lastPlayouts = 0;
+        this.lastNanos = 0;
+        return move;
+      }
+    }
+
+    long start = System.nanoTime();
+    long deadline = start + this.millis * 1000000;
+    ArrayList<MctsWorker> workers = new ArrayList<MctsWorker>();
+    for (int i = 0; i < this.threads; i++) {
+      long share = this.iterations / this.threads
+          + (i < this.iterations % this.threads ? 1 : 0);
+      workers.add(new MctsWorker(this, game, random.split(), share, deadline));
+    }
+
+    // sums the visits of each root move over every tree
+    if (this.pool == null) {
+      this.pool = new ForkJoinPool(this.threads);
+      this.ownsPool = true;
+    }
+    long[] visits = new long[game.size() * game.size()];
+    List<Future<MctsNode>> roots = this.pool.invokeAll(workers);
+    for (Future<MctsNode> root : roots) {
+      for (MctsNode child : this.resultOf(root).children) {
+        visits[child.move] += child.visits;
+      }
+    }
+
+    this.lastNanos = System.nanoTime() - start;
+    this.lastPlayouts = 0;
+    for (MctsWorker worker : workers) {
+      this.lastPlayouts += worker.playouts;
+    }
+
+    int best = game.open[0];
+    for (int i = 0; i < game.openCount; i++) {
+      if (visits[game.open[i]] > visits[best]) {
+        best = game.open[i];
+      }
+    }
+    return best;
+  }
+
+  // the tree a worker finished with
+  MctsNode resultOf(Future<MctsNode> root) {
+    try {
+      return root.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("search was interrupted", e);
+    }
+    catch (ExecutionException e) {
+      throw new IllegalStateException("search failed", e.getCause());
+    }
+  }
+
+  // playouts per second of the last search
+  double playoutsPerSecond() {
+    return this.lastPlayouts / (this.lastNanos / 1e9);
+  }
+
+  // summary of the last search
+  String report() {
+    return String.format(Locale.ROOT, "%d playouts in %.3f s on %d threads (%.0f playouts/s)",
+        this.lastPlayouts, this.lastNanos / 1e9, this.threads, this.playoutsPerSecond());
+  }
+}
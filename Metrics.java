@@ -0,0 +1,386 @@
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+
+// a histogram of non-negative values in the style of HdrHistogram: values
+// are counted in buckets that double in width, each split into
+// SUB_BUCKETS equal sub-buckets, so every value is counted within 1/32 of
+// itself over the whole range of a long in one fixed array of counts.
+// Recording is wait-free and safe from any thread
+class Histogram {
+  static final int PRECISION = 5;
+  static final int SUB_BUCKETS = 1 << PRECISION;
+
+  String name;
+  String unit;
+  AtomicLongArray counts;
+  LongAdder count;
+  LongAdder sum;
+  AtomicLong max;
+
+  // constructor for an empty histogram of values in the given unit
+  Histogram(String name, String unit) {
+    this.name = name;
+    this.unit = unit;
+    this.counts = new AtomicLongArray((64 - PRECISION) * SUB_BUCKETS);
+    this.count = new LongAdder();
+    this.sum = new LongAdder();
+    this.max = new AtomicLong();
+  }
+
+  // the bucket counting the value: values below SUB_BUCKETS have one each,
+  // and above that the highest PRECISION + 1 bits of the value pick it
+  static int indexOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(value) - PRECISION;
+    return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+  }
+
+  // the largest value counted in the given bucket
+  static long highestIn(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+    return ((sub + 1) << shift) - 1;
+  }
+
+  // EFFECT: counts the value (negative values count as 0)
+  void record(long value) {
+    value = Math.max(value, 0);
+    this.counts.incrementAndGet(indexOf(value));
+    this.count.increment();
+    this.sum.add(value);
+    long seen = this.max.get();
+    while (value > seen && !this.max.compareAndSet(seen, value)) {
+      seen = this.max.get();
+    }
+  }
+
+  // the number of values counted
+  long count() {
+    return this.count.sum();
+  }
+
+  // the average of the values counted (0 if there are none)
+  double mean() {
+    long count = this.count();
+    return count == 0 ? 0 : (double) this.sum.sum() / count;
+  }
+
+  // the largest value counted
+  long max() {
+    return this.max.get();
+  }
+
+  // the smallest value that at least the given percentage of the values
+  // counted are no larger than, to within a bucket (0 if there are none)
+  long percentile(double percent) {
+    long count = this.count();
+    long rank = Math.max(1, (long) Math.ceil(count * percent / 100));
+    long seen = 0;
+    for (int i = 0; i < this.counts.length() && count > 0; i++) {
+      seen += this.counts.get(i);
+      if (seen >= rank) {
+        return Math.min(highestIn(i), this.max());
+      }
+    }
+    return this.max();
+  }
+
+  // EFFECT: forgets every value counted
+  void reset() {
+    for (int i = 0; i < this.counts.length(); i++) {
+      this.counts.set(i, 0);
+    }
+    this.count.reset();
+    this.sum.reset();
+    this.max.set(0);
+  }
+
+  // a one-line summary of the values counted
+  public String toString() {
+    return String.format(Locale.ROOT, "%s: %d, mean %.0f, p50 %d, p99 %d, max %d %s",
+        this.name, this.count(), this.mean(), this.percentile(50), this.percentile(99),
+        this.max(), this.unit);
+  }
+}
+
+// a running count of something that happens
+class Counter {
+  String name;
+  LongAdder count;
+
+  // constructor for a count starting at 0
+  Counter(String name) {
+    this.name = name;
+    this.count = new LongAdder();
+  }
+
+  // EFFECT: counts one more
+  void increment() {
+    this.count.increment();
+  }
+
+  // the count so far
+  long count() {
+    return this.count.sum();
+  }
+
+  // EFFECT: starts counting again from 0
+  void reset() {
+    this.count.reset();
+  }
+}
+
+// an operation of the game whose latency is measured: each time it is
+// counted in a histogram of nanoseconds and, when a flight recording is
+// running, emitted as an OperationEvent
+class Operation {
+  Histogram latencies;
+
+  // constructor for an operation not yet measured
+  Operation(String name) {
+    this.latencies = new Histogram(name, "ns");
+  }
+
+  // EFFECT: measures the operation as having started at the given time,
+  // from Metrics.start (does nothing when metrics are off)
+  void stop(long start) {
+    if (Metrics.ENABLED) {
+      this.record(System.nanoTime() - start, 0);
+    }
+  }
+
+  // EFFECT: counts one run of the operation that took the given time and
+  // visited the given number of cells
+  void record(long nanos, long cellsVisited) {
+    this.latencies.record(nanos);
+    OperationEvent event = new OperationEvent();
+    if (event.shouldCommit()) {
+      event.operation = this.latencies.name;
+      event.latency = nanos;
+      event.cellsVisited = cellsVisited;
+      event.commit();
+    }
+  }
+}
+
+// a flight recorder event for one run of a measured operation
+@Name("bridgit.Operation")
+@Label("BridgIt Operation")
+@Category("BridgIt")
+@Description("One click, win check, path search or frame of a BridgIt game")
+class OperationEvent extends Event {
+  @Label("Operation")
+  String operation;
+
+  @Label("Latency")
+  @Timespan(Timespan.NANOSECONDS)
+  long latency;
+
+  @Label("Cells Visited")
+  long cellsVisited;
+}
+
+// exposes histograms and counters as the attributes of a JMX MBean: a
+// counter as its count, and a histogram as its count, mean, percentiles
+// and maximum (e.g. checkPathP99). The reset operation zeroes them all
+class MetricsBean implements DynamicMBean {
+  static final String[] STATISTICS = {"Count", "Mean", "P50", "P90", "P99", "P999", "Max"};
+
+  Histogram[] histograms;
+  Counter[] counters;
+
+  // constructor for a bean exposing the given histograms and counters
+  MetricsBean(Histogram[] histograms, Counter[] counters) {
+    this.histograms = histograms;
+    this.counters = counters;
+  }
+
+  // the value of the statistic of the histogram
+  static Object statistic(Histogram histogram, String statistic) {
+    switch (statistic) {
+      case "Count":
+        return histogram.count();
+      case "Mean":
+        return histogram.mean();
+      case "P50":
+        return histogram.percentile(50);
+      case "P90":
+        return histogram.percentile(90);
+      case "P99":
+        return histogram.percentile(99);
+      case "P999":
+        return histogram.percentile(99.9);
+      default:
+        return histogram.max();
+    }
+  }
+
+  // the value of the named attribute
+  public Object getAttribute(String attribute) throws AttributeNotFoundException {
+    for (Counter counter : this.counters) {
+      if (attribute.equals(counter.name)) {
+        return counter.count();
+      }
+    }
+    for (Histogram histogram : this.histograms) {
+      for (String statistic : STATISTICS) {
+        if (attribute.equals(histogram.name + statistic)) {
+          return statistic(histogram, statistic);
+        }
+      }
+    }
+    throw new AttributeNotFoundException("no attribute " + attribute);
+  }
+
+  // every attribute is read-only
+  public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+    throw new AttributeNotFoundException("attribute " + attribute.getName() + " is read-only");
+  }
+
+  // the values of the named attributes that exist
+  public AttributeList getAttributes(String[] attributes) {
+    AttributeList list = new AttributeList();
+    for (String attribute : attributes) {
+      try {
+        list.add(new Attribute(attribute, this.getAttribute(attribute)));
+      }
+      catch (AttributeNotFoundException e) {
+        // left out of the list, as the interface asks
+      }
+    }
+    return list;
+  }
+
+  // no attribute can be set
+  public AttributeList setAttributes(AttributeList attributes) {
+    return new AttributeList();
+  }
+
+  // EFFECT: resets every histogram and counter
+  public Object invoke(String action, Object[] params, String[] signature)
+      throws ReflectionException {
+    if (!action.equals("reset")) {
+      throw new ReflectionException(new NoSuchMethodException(action));
+    }
+    for (Histogram histogram : this.histograms) {
+      histogram.reset();
+    }
+    for (Counter counter : this.counters) {
+      counter.reset();
+    }
+    return null;
+  }
+
+  // describes the attributes and the reset operation
+  public MBeanInfo getMBeanInfo() {
+    MBeanAttributeInfo[] attributes =
+        new MBeanAttributeInfo[this.counters.length + this.histograms.length * STATISTICS.length];
+    int i = 0;
+    for (Counter counter : this.counters) {
+      attributes[i++] = new MBeanAttributeInfo(counter.name, "long", "count of " + counter.name,
+          true, false, false);
+    }
+    for (Histogram histogram : this.histograms) {
+      for (String statistic : STATISTICS) {
+        attributes[i++] = new MBeanAttributeInfo(histogram.name + statistic,
+            statistic.equals("Mean") ? "double" : "long",
+            statistic + " of " + histogram.name + " (" + histogram.unit + ")", true, false, false);
+      }
+    }
+    MBeanOperationInfo reset = new MBeanOperationInfo("reset", "zeroes every metric",
+        new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION);
+    return new MBeanInfo(this.getClass().getName(), "BridgIt metrics", attributes, null,
+        new MBeanOperationInfo[] {reset}, null);
+  }
+}
+
+// latency and work of the game's clicks, win checks and rendering. Off
+// unless the JVM is started with -Dbridgit.metrics=true; ENABLED is a
+// static final constant, so when it is off the JIT drops every measurement
+// and they cost nothing. When it is on, the metrics are registered as the
+// JMX MBean BridgIt:type=Metrics and every measurement is also a
+// bridgit.Operation flight recorder event
+class Metrics {
+  static final boolean ENABLED = Boolean.getBoolean("bridgit.metrics");
+  static final String OBJECT_NAME = "BridgIt:type=Metrics";
+
+  static final Operation CLICK = new Operation("onMouseClicked");
+  static final Operation CHECK_PATH = new Operation("checkPath");
+  static final Operation PATH_SEARCH = new Operation("pathSearch");
+  static final Operation ANY_WHITE_LEFT = new Operation("anyWhiteLeft");
+  static final Operation MAKE_SCENE = new Operation("makeScene");
+  static final Operation MAKE_END_SCENE = new Operation("makeEndScene");
+  static final Histogram CELLS_VISITED = new Histogram("cellsVisited", "cells");
+  static final Counter PATH_CHECKS = new Counter("pathChecks");
+  static final Counter FRAMES = new Counter("framesRendered");
+
+  static {
+    if (ENABLED) {
+      register(OBJECT_NAME, bean());
+    }
+  }
+
+  // the time an operation starts, for Operation.stop (0 when metrics are
+  // off, without reading the clock)
+  static long start() {
+    return ENABLED ? System.nanoTime() : 0;
+  }
+
+  // EFFECT: counts a path search that took the time since the given start
+  // and visited the given number of cells
+  static void pathSearched(long start, long cellsVisited) {
+    if (ENABLED) {
+      PATH_SEARCH.record(System.nanoTime() - start, cellsVisited);
+      CELLS_VISITED.record(cellsVisited);
+      PATH_CHECKS.increment();
+    }
+  }
+
+  // a bean exposing every metric of the game
+  static MetricsBean bean() {
+    return new MetricsBean(
+        new Histogram[] {CLICK.latencies, CHECK_PATH.latencies, PATH_SEARCH.latencies,
+          ANY_WHITE_LEFT.latencies, MAKE_SCENE.latencies, MAKE_END_SCENE.latencies,
+          CELLS_VISITED},
+        new Counter[] {PATH_CHECKS, FRAMES});
+  }
+
+  // EFFECT: registers the bean with the platform MBean server under the
+  // given name
+  static void register(String name, MetricsBean bean) {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(bean, new ObjectName(name));
+    }
+    catch (JMException e) {
+      throw new IllegalStateException("could not register the metrics", e);
+    }
+  }
+}
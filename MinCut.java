@@ -0,0 +1,529 @@
+import java.util.Arrays;
+
+
+// one player's flow network for the minimum vertex cut between its goal
+// edges. Every cell is a node that paths can pass through up to its
+// capacity (none for the opponent's cells and the white cells on the
+// edges, one for an empty cell, any number for the player's own cells)
+// and paths step between neighboring cells. The maximum flow is the number
+// of disjoint paths the player has left, and the empty cells closing off
+// the cells the source still reaches are a smallest set of cells the
+// opponent must claim to block the player. When a cell changes, the flow
+// is repaired instead of found again: paths through a cell that lost
+// capacity are taken off it, then augmenting paths are searched for from
+// the flow that is left, so a move costs a search or two of the board
+// rather than one search per path
+class CellFlow {
+  static final byte BLOCKED = 0;
+  static final byte OPEN = 1;
+  static final byte OWNED = 2;
+
+  // directions of the links between neighboring cells (d ^ 1 is the
+  // opposite of d)
+  static final int UP = 0;
+  static final int DOWN = 1;
+  static final int LEFT = 2;
+  static final int RIGHT = 3;
+
+  // the flow of a player that has joined its goal edges
+  static final int UNBOUNDED = Integer.MAX_VALUE;
+
+  int size;
+  boolean player1;
+
+  // cells are numbered row * size + col: capacity[cell] is BLOCKED, OPEN
+  // or OWNED, through[cell] the paths through it, and flow[4 * cell + d]
+  // the paths stepping from it to its neighbor in direction d
+  byte[] capacity;
+  int[] through;
+  int[] flow;
+  int value;
+  boolean connected;
+
+  // the empty cells of the cut, cut[0, cutSize)
+  int[] cut;
+  int cutSize;
+
+  // search state. The entry of cell i is node 2i and its exit 2i + 1,
+  // followed by the source and the sink; a node has been reached in the
+  // current search when seenAt[node] == stamp
+  int source;
+  int sink;
+  int[] seenAt;
+  int stamp;
+  int[] parent;
+  int[] next;
+  int[] queue;
+  int reached;
+  int met;
+
+  // constructor for the player's network on the starting lattice
+  CellFlow(int size, boolean player1) {
+    this(new ByteBoard(size), player1);
+  }
+
+  // constructor for the player's network on any board, starting from the
+  // straight rows (or columns) the opponent has not crossed
+  CellFlow(BoardState board, boolean player1) {
+    this.size = board.size();
+    this.player1 = player1;
+    int cells = this.size * this.size;
+    this.capacity = new byte[cells];
+    this.through = new int[cells];
+    this.flow = new int[4 * cells];
+    this.cut = new int[cells];
+    this.source = 2 * cells;
+    this.sink = this.source + 1;
+    this.seenAt = new int[this.sink + 1];
+    this.parent = new int[this.sink + 1];
+    this.next = new int[this.sink + 1];
+    this.queue = new int[this.sink + 1];
+
+    int own = player1 ? BoardState.PLAYER1 : BoardState.PLAYER2;
+    for (int row = 0; row < this.size; row++) {
+      for (int col = 0; col < this.size; col++) {
+        int owner = board.ownerAt(col, row);
+        if (owner == own) {
+          this.capacity[row * this.size + col] = OWNED;
+        }
+        else if (owner == BoardState.EMPTY && col > 0 && col < this.size - 1
+            && row > 0 && row < this.size - 1) {
+          this.capacity[row * this.size + col] = OPEN;
+        }
+      }
+    }
+
+    this.addStraightPaths();
+    this.augment();
+  }
+
+  // EFFECT: sends a path along every row (player1) or column (player2)
+  // with no blocked cell, which on the starting lattice is already a
+  // maximum flow
+  void addStraightPaths() {
+    int step = this.player1 ? 1 : this.size;
+    int across = this.player1 ? this.size : 1;
+    int direction = this.player1 ? RIGHT : DOWN;
+    for (int line = 0; line < this.size; line++) {
+      int first = line * across;
+      boolean open = true;
+      for (int k = 0; k < this.size && open; k++) {
+        open = this.capacity[first + k * step] != BLOCKED;
+      }
+      if (open) {
+        for (int k = 0; k < this.size; k++) {
+          int cell = first + k * step;
+          this.through[cell]++;
+          if (k < this.size - 1) {
+            this.flow[4 * cell + direction]++;
+          }
+        }
+        this.value++;
+      }
+    }
+  }
+
+  // the neighbor of the cell in the direction, or -1 past the edge
+  int neighbor(int cell, int direction) {
+    int col = cell % this.size;
+    if (direction == UP) {
+      return cell >= this.size ? cell - this.size : -1;
+    }
+    else if (direction == DOWN) {
+      return cell < this.through.length - this.size ? cell + this.size : -1;
+    }
+    else if (direction == LEFT) {
+      return col > 0 ? cell - 1 : -1;
+    }
+    else {
+      return col < this.size - 1 ? cell + 1 : -1;
+    }
+  }
+
+  // the direction from a cell to its neighbor
+  int directionTo(int cell, int neighbor) {
+    if (neighbor == cell - this.size) {
+      return UP;
+    }
+    else if (neighbor == cell + this.size) {
+      return DOWN;
+    }
+    else if (neighbor == cell - 1) {
+      return LEFT;
+    }
+    else {
+      return RIGHT;
+    }
+  }
+
+  // is the cell on the edge the player's paths start from?
+  boolean isStart(int cell) {
+    return this.player1 ? cell % this.size == 0 : cell < this.size;
+  }
+
+  // is the cell on the edge the player's paths end at?
+  boolean isGoal(int cell) {
+    return this.player1 ? cell % this.size == this.size - 1
+        : cell >= this.through.length - this.size;
+  }
+
+  // can another path pass through the cell?
+  boolean hasRoom(int cell) {
+    return this.capacity[cell] == OWNED || this.through[cell] < this.capacity[cell];
+  }
+
+  // EFFECT: reaches the node from the given one in the current search,
+  // returning the new number of nodes reached
+  int visit(int node, int from, int count) {
+    if (this.seenAt[node] != this.stamp) {
+      this.seenAt[node] = this.stamp;
+      this.parent[node] = from;
+      this.queue[count] = node;
+      count++;
+    }
+    return count;
+  }
+
+  // searches breadth first from the source for a path with room left,
+  // returning whether it reaches the sink (its path is then given by
+  // parent[] from the sink). Otherwise queue[0, reached) are the nodes the
+  // source reaches
+  boolean search() {
+    this.stamp++;
+    int count = 0;
+    for (int k = 0; k < this.size; k++) {
+      int cell = this.player1 ? k * this.size : k;
+      if (this.capacity[cell] != BLOCKED) {
+        count = this.visit(2 * cell, this.source, count);
+      }
+    }
+
+    for (int done = 0; done < count; done++) {
+      int node = this.queue[done];
+      int cell = node >> 1;
+
+      // from the entry of a cell: through it if there is room, or back
+      // along a path that entered it
+      if ((node & 1) == 0) {
+        if (this.hasRoom(cell)) {
+          count = this.visit(node + 1, node, count);
+        }
+        for (int d = UP; d <= RIGHT; d++) {
+          int other = this.neighbor(cell, d);
+          if (other >= 0 && this.flow[4 * other + (d ^ 1)] > 0) {
+            count = this.visit(2 * other + 1, node, count);
+          }
+        }
+      }
+
+      // from the exit of a cell: to the sink, into any open neighbor, or
+      // back along a path through the cell
+      else {
+        if (this.isGoal(cell)) {
+          this.parent[this.sink] = node;
+          return true;
+        }
+        for (int d = UP; d <= RIGHT; d++) {
+          int other = this.neighbor(cell, d);
+          if (other >= 0 && this.capacity[other] != BLOCKED) {
+            count = this.visit(2 * other, node, count);
+          }
+        }
+        if (this.through[cell] > 0) {
+          count = this.visit(node - 1, node, count);
+        }
+      }
+    }
+
+    this.reached = count;
+    return false;
+  }
+
+  // how many more paths fit along the step from one node to the next of
+  // the path found (UNBOUNDED for a step into the player's own cell or to
+  // a neighbor)
+  int room(int from, int node) {
+    if (from == this.source || node == this.sink) {
+      return UNBOUNDED;
+    }
+    int cell = from >> 1;
+    int other = node >> 1;
+    if (cell == other) {
+      if ((from & 1) == 1) {
+        return this.through[cell];
+      }
+      return this.capacity[cell] == OWNED ? UNBOUNDED : this.capacity[cell] - this.through[cell];
+    }
+    if ((from & 1) == 1) {
+      return UNBOUNDED;
+    }
+    return this.flow[4 * other + this.directionTo(other, cell)];
+  }
+
+  // EFFECT: sends the given number of paths along the step from one node
+  // to the next (a negative number takes paths off it)
+  void send(int from, int node, int paths) {
+    if (from == this.source || node == this.sink) {
+      return;
+    }
+    int cell = from >> 1;
+    int other = node >> 1;
+    if (cell == other) {
+      this.through[cell] += (from & 1) == 0 ? paths : -paths;
+    }
+    else if ((from & 1) == 1) {
+      this.flow[4 * cell + this.directionTo(cell, other)] += paths;
+    }
+    else {
+      this.flow[4 * other + this.directionTo(other, cell)] -= paths;
+    }
+  }
+
+  // EFFECT: adds augmenting paths until there are none and finds the cut
+  // next to the cells the source reaches. A path with unlimited room runs
+  // through the player's own cells alone, so the player has joined its
+  // edges and has no cut
+  void augment() {
+    this.connected = false;
+    while (this.search()) {
+      int paths = UNBOUNDED;
+      for (int node = this.sink; node != this.source; node = this.parent[node]) {
+        paths = Math.min(paths, this.room(this.parent[node], node));
+      }
+      if (paths == UNBOUNDED) {
+        this.connected = true;
+        this.cutSize = 0;
+        return;
+      }
+      for (int node = this.sink; node != this.source; node = this.parent[node]) {
+        this.send(this.parent[node], node, paths);
+      }
+      this.value += paths;
+    }
+
+    // the reached entries of empty cells whose exits are not reached
+    this.cutSize = 0;
+    for (int k = 0; k < this.reached; k++) {
+      int node = this.queue[k];
+      if ((node & 1) == 0 && this.seenAt[node + 1] != this.stamp) {
+        this.cut[this.cutSize] = node >> 1;
+        this.cutSize++;
+      }
+    }
+  }
+
+  // EFFECT: gives the cell a new capacity and repairs the flow
+  void setCapacity(int cell, byte capacity) {
+    this.capacity[cell] = capacity;
+    if (capacity != OWNED) {
+      while (this.through[cell] > capacity) {
+        this.takePathOff(cell);
+      }
+    }
+    this.augment();
+  }
+
+  // EFFECT: takes one path off the cell, following the flow out of it to
+  // the sink and back into it from the source, or, if the flow leads back
+  // to the cell, taking off that loop instead (which leaves the number of
+  // paths the same)
+  void takePathOff(int cell) {
+    int entry = 2 * cell;
+    int exit = entry + 1;
+
+    // follows paths forward from the exit of the cell
+    this.stamp++;
+    int forward = this.stamp;
+    int count = this.visit(exit, -1, 0);
+    int end = -1;
+    for (int done = 0; done < count && end < 0; done++) {
+      int node = this.queue[done];
+      int at = node >> 1;
+      if ((node & 1) == 0) {
+        if (node == entry) {
+          end = entry;
+        }
+        else if (this.through[at] > 0) {
+          count = this.visit(node + 1, node, count);
+        }
+      }
+      else if (this.isGoal(at) && this.pathsOut(at) < this.through[at]) {
+        this.parent[this.sink] = node;
+        end = this.sink;
+      }
+      else {
+        for (int d = UP; d <= RIGHT; d++) {
+          if (this.flow[4 * at + d] > 0) {
+            count = this.visit(2 * this.neighbor(at, d), node, count);
+          }
+        }
+      }
+    }
+
+    // and, unless they led back to the cell, backward from its entry
+    // until they reach the source or a node found going forward
+    int start = entry;
+    if (end == this.sink) {
+      this.stamp++;
+      this.met = -1;
+      this.seenAt[entry] = this.stamp;
+      this.queue[0] = entry;
+      count = 1;
+      start = -1;
+      for (int done = 0; done < count && start < 0 && this.met < 0; done++) {
+        int node = this.queue[done];
+        int at = node >> 1;
+        if ((node & 1) == 1) {
+          count = this.visitBack(node - 1, node, forward, count);
+        }
+        else if (this.isStart(at) && this.pathsIn(at) < this.through[at]) {
+          start = node;
+        }
+        else {
+          for (int d = UP; d <= RIGHT; d++) {
+            int other = this.neighbor(at, d);
+            if (other >= 0 && this.flow[4 * other + (d ^ 1)] > 0) {
+              count = this.visitBack(2 * other + 1, node, forward, count);
+            }
+          }
+        }
+      }
+
+      // meeting the forward paths closes a loop through the cell
+      if (this.met >= 0) {
+        start = this.met;
+        end = this.met;
+      }
+      else {
+        this.value--;
+      }
+    }
+
+    // takes the path (or loop) off: from its end back to the exit, from
+    // its start forward to the entry, and through the cell
+    for (int node = end; node != exit; node = this.parent[node]) {
+      this.send(this.parent[node], node, -1);
+    }
+    for (int node = start; node != entry; node = this.next[node]) {
+      this.send(node, this.next[node], -1);
+    }
+    this.through[cell]--;
+  }
+
+  // EFFECT: reaches the node going backward from the given one, returning
+  // the new number of nodes reached. The first node that was found going
+  // forward (stamped forward) is kept as met instead
+  int visitBack(int node, int from, int forward, int count) {
+    if (this.seenAt[node] == forward) {
+      if (this.met < 0) {
+        this.met = node;
+        this.next[node] = from;
+      }
+      return count;
+    }
+    if (this.seenAt[node] != this.stamp) {
+      this.seenAt[node] = this.stamp;
+      this.next[node] = from;
+      this.queue[count] = node;
+      count++;
+    }
+    return count;
+  }
+
+  // the paths leaving the cell for its neighbors
+  int pathsOut(int cell) {
+    return this.flow[4 * cell] + this.flow[4 * cell + 1] + this.flow[4 * cell + 2]
+        + this.flow[4 * cell + 3];
+  }
+
+  // the paths entering the cell from its neighbors
+  int pathsIn(int cell) {
+    int paths = 0;
+    for (int d = UP; d <= RIGHT; d++) {
+      int other = this.neighbor(cell, d);
+      if (other >= 0) {
+        paths += this.flow[4 * other + (d ^ 1)];
+      }
+    }
+    return paths;
+  }
+
+  // the number of cells the opponent must claim to block the player: 0 if
+  // it is already blocked, UNBOUNDED if it has joined its edges
+  int blockers() {
+    return this.connected ? UNBOUNDED : this.value;
+  }
+}
+
+// keeps, for each player, a smallest set of empty cells the opponent
+// would have to claim to block it, updated a cell at a time as cells are
+// claimed and taken back (see CellFlow). Full max-flow on every move costs
+// a search of the board per path, which is too slow past 15x15. A player
+// whose set is a single cell must claim it or be blocked, and claiming the
+// opponent's single cell blocks the opponent, so those are the cells that
+// must be played
+class CutTracker {
+  int size;
+  CellFlow player1;
+  CellFlow player2;
+
+  // constructor for the starting lattice of a board of the given size
+  CutTracker(int size) {
+    this(new ByteBoard(size));
+  }
+
+  // constructor for the cuts of any board
+  CutTracker(BoardState board) {
+    this.size = board.size();
+    this.player1 = new CellFlow(board, true);
+    this.player2 = new CellFlow(board, false);
+  }
+
+  // the network of the given player
+  CellFlow flowOf(int player) {
+    return player == BoardState.PLAYER1 ? this.player1 : this.player2;
+  }
+
+  // EFFECT: records that a white cell was claimed by player1 (or player2)
+  void claim(int col, int row, boolean player1) {
+    int cell = row * this.size + col;
+    CellFlow owner = player1 ? this.player1 : this.player2;
+    CellFlow opponent = player1 ? this.player2 : this.player1;
+    opponent.setCapacity(cell, CellFlow.BLOCKED);
+    owner.setCapacity(cell, CellFlow.OWNED);
+  }
+
+  // EFFECT: records that a claimed cell is white again
+  void unclaim(int col, int row) {
+    int cell = row * this.size + col;
+    this.player1.setCapacity(cell, CellFlow.OPEN);
+    this.player2.setCapacity(cell, CellFlow.OPEN);
+  }
+
+  // the number of cells the opponent must claim to block the player (see
+  // CellFlow.blockers)
+  int blockers(int player) {
+    return this.flowOf(player).blockers();
+  }
+
+  // the numbers (row * size + col) of a smallest set of empty cells that
+  // blocks the player
+  int[] cut(int player) {
+    CellFlow flow = this.flowOf(player);
+    return Arrays.copyOf(flow.cut, flow.cutSize);
+  }
+
+  // the cells the player to move must claim: the opponent's last cell
+  // before being blocked, which wins, or else the player's own, without
+  // which it is blocked. Empty if neither is down to one cell
+  int[] mustPlay(int player) {
+    int opponent = player == BoardState.PLAYER1 ? BoardState.PLAYER2 : BoardState.PLAYER1;
+    if (this.blockers(opponent) == 1) {
+      return this.cut(opponent);
+    }
+    else if (this.blockers(player) == 1) {
+      return this.cut(player);
+    }
+    return new int[0];
+  }
+}
@@ -0,0 +1,494 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+
+// a map from position hashes to packed results, kept in open-addressed
+// primitive arrays that grow as needed. Not safe for several threads
+class PositionMap {
+  long[] keys;
+  int[] values;
+  boolean[] used;
+  int count;
+
+  // constructor for an empty map
+  PositionMap() {
+    this.keys = new long[1024];
+    this.values = new int[1024];
+    this.used = new boolean[1024];
+    this.count = 0;
+  }
+
+  // the slot holding the key, or the empty slot where it would go
+  int slotOf(long key) {
+    int mask = this.keys.length - 1;
+    int slot = (int) (key ^ (key >>> 32)) & mask;
+    while (this.used[slot] && this.keys[slot] != key) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  // does the map have the key?
+  boolean contains(long key) {
+    return this.used[this.slotOf(key)];
+  }
+
+  // the value of the key, or the given value if the key is missing
+  int get(long key, int missing) {
+    int slot = this.slotOf(key);
+    return this.used[slot] ? this.values[slot] : missing;
+  }
+
+  // EFFECT: sets the value of the key
+  void put(long key, int value) {
+    int slot = this.slotOf(key);
+    if (!this.used[slot]) {
+      if (2 * (this.count + 1) > this.keys.length) {
+        this.grow();
+        slot = this.slotOf(key);
+      }
+      this.used[slot] = true;
+      this.keys[slot] = key;
+      this.count++;
+    }
+    this.values[slot] = value;
+  }
+
+  // EFFECT: doubles the number of slots
+  void grow() {
+    long[] keys = this.keys;
+    int[] values = this.values;
+    boolean[] used = this.used;
+    this.keys = new long[2 * keys.length];
+    this.values = new int[2 * keys.length];
+    this.used = new boolean[2 * keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      if (used[i]) {
+        int slot = this.slotOf(keys[i]);
+        this.used[slot] = true;
+        this.keys[slot] = keys[i];
+        this.values[slot] = values[i];
+      }
+    }
+  }
+
+  // EFFECT: adds every entry of the other map to this one
+  void putAll(PositionMap other) {
+    for (int i = 0; i < other.keys.length; i++) {
+      if (other.used[i]) {
+        this.put(other.keys[i], other.values[i]);
+      }
+    }
+  }
+}
+
+// exact results and best moves for positions of one board size, looked up
+// in a file mapped into memory so the book is never loaded onto the heap.
+// Positions are keyed by the Zobrist hash AlphaBetaPlayer uses, and each
+// result is packed as (score << 16) | move, where the score is for the
+// player to move, WIN minus the moves left for a win (at most, in books
+// that only know the winner), and negative for a loss. The file is a
+// header (magic "BRGB", version, board size, bucket bits, entry count),
+// then 2^bits + 1 ints giving the first entry of each bucket, then the
+// entries sorted by unsigned hash, 12 bytes each (hash, result). A hash's
+// bucket is its top bits, so a lookup reads one bucket of about one
+// entry. Build books with OpeningBookBuilder
+class OpeningBook implements Closeable {
+  static final int MAGIC = 0x42524742;
+  static final int VERSION = 1;
+  static final int HEADER = 24;
+  static final int ENTRY = 12;
+  static final int MISSING = Integer.MIN_VALUE;
+
+  FileChannel channel;
+  MappedByteBuffer buffer;
+  int size;
+  int bucketBits;
+  long count;
+  long entriesAt;
+  ZobristKeys keys;
+
+  // constructor for the book in the file
+  OpeningBook(Path file) throws IOException {
+    this.channel = FileChannel.open(file, StandardOpenOption.READ);
+    long length = this.channel.size();
+    if (length > Integer.MAX_VALUE) {
+      this.close();
+      throw new IOException("opening book is too large to map");
+    }
+    this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+    if (length < HEADER || this.buffer.getInt(0) != MAGIC) {
+      this.close();
+      throw new IOException("not an opening book file");
+    }
+    if (this.buffer.getInt(4) != VERSION) {
+      this.close();
+      throw new IOException("unsupported opening book version " + this.buffer.getInt(4));
+    }
+    this.size = this.buffer.getInt(8);
+    this.bucketBits = this.buffer.getInt(12);
+    this.count = this.buffer.getLong(16);
+    this.entriesAt = HEADER + 4L * ((1L << this.bucketBits) + 1);
+    if (this.entriesAt + ENTRY * this.count != length) {
+      this.close();
+      throw new IOException("opening book is truncated");
+    }
+    this.keys = new ZobristKeys(this.size, ZobristKeys.SEED);
+  }
+
+  // the bucket of the hash
+  static int bucketOf(long hash, int bits) {
+    return bits == 0 ? 0 : (int) (hash >>> (64 - bits));
+  }
+
+  // the packed result for the position with the hash, or MISSING
+  int probe(long hash) {
+    int bucket = bucketOf(hash, this.bucketBits);
+    int from = this.buffer.getInt(HEADER + 4 * bucket);
+    int to = this.buffer.getInt(HEADER + 4 * (bucket + 1));
+    for (int i = from; i < to; i++) {
+      int at = (int) (this.entriesAt + (long) ENTRY * i);
+      long key = this.buffer.getLong(at);
+      if (key == hash) {
+        return this.buffer.getInt(at + 8);
+      }
+      if (Long.compareUnsigned(key, hash) > 0) {
+        break;
+      }
+    }
+    return MISSING;
+  }
+
+  // the packed result for the game, or MISSING if the book has no result
+  // for it (or is for another board size)
+  int probe(GameEngine game) {
+    if (game.size() != this.size || game.isOver()) {
+      return MISSING;
+    }
+    return this.probe(this.keys.hash(game));
+  }
+
+  // the book's best move for the game, or -1 if it has none
+  int bestMove(GameEngine game) {
+    int result = this.probe(game);
+    return result == MISSING ? -1 : moveOf(result);
+  }
+
+  // the parts of a packed result
+  static int pack(int score, int move) {
+    return (score << 16) | (move & 0xFFFF);
+  }
+
+  static int scoreOf(int result) {
+    return result >> 16;
+  }
+
+  static int moveOf(int result) {
+    return result & 0xFFFF;
+  }
+
+  // EFFECT: unmaps the book (once the buffer is collected) and closes the
+  // file
+  public void close() throws IOException {
+    this.channel.close();
+  }
+}
+
+// solves every position reachable from its first move, on one thread, by
+// full-width negamax over the positions it has not solved already. Every
+// result goes into the worker's own map
+class TablebaseWorker implements Callable<PositionMap> {
+  OpeningBookBuilder builder;
+  List<GameEngine> positions;
+  PositionMap solved;
+
+  // constructor for a worker solving the given positions
+  TablebaseWorker(OpeningBookBuilder builder, List<GameEngine> positions) {
+    this.builder = builder;
+    this.positions = positions;
+    this.solved = new PositionMap();
+  }
+
+  // solves each position and everything after it
+  public PositionMap call() {
+    for (GameEngine position : this.positions) {
+      GameEngine game = position.copy();
+      game.keepHistory();
+      this.builder.solve(game, this.builder.keys.hash(game), this.solved);
+    }
+    return this.solved;
+  }
+}
+
+// solves every position up to a number of moves after each of its
+// positions, on one thread, exactly by Lehman's theorem. Positions are
+// walked by making and unmaking moves, and the results double as the set
+// of positions already seen
+class OpeningWorker implements Callable<PositionMap> {
+  OpeningBookBuilder builder;
+  List<GameEngine> positions;
+  int depth;
+  LehmanSolver solver;
+  PositionMap solved;
+
+  // constructor for a worker solving up to depth moves after the positions
+  OpeningWorker(OpeningBookBuilder builder, List<GameEngine> positions, int depth) {
+    this.builder = builder;
+    this.positions = positions;
+    this.depth = depth;
+    this.solver = new LehmanSolver(builder.size);
+    this.solved = new PositionMap();
+  }
+
+  // solves each position and the ones after it
+  public PositionMap call() {
+    for (GameEngine position : this.positions) {
+      GameEngine game = position.copy();
+      game.keepHistory();
+      this.solve(game, this.builder.keys.hash(game), this.depth);
+    }
+    return this.solved;
+  }
+
+  // EFFECT: solves the game and every position up to depth moves after it
+  // not seen yet. Lehman's theorem gives who wins but not how soon, so a
+  // win is scored as if it took every move left
+  void solve(GameEngine game, long hash, int depth) {
+    if (game.isOver() || this.solved.contains(hash)) {
+      return;
+    }
+    boolean moverWins = this.solver.player1Wins(game) == game.turn;
+    int score = AlphaBetaPlayer.WIN - game.openCount;
+    this.solved.put(hash, OpeningBook.pack(moverWins ? score : -score,
+        this.solver.bestMove(game)));
+
+    for (int i = 0; depth > 0 && i < this.builder.cells.length; i++) {
+      int move = this.builder.cells[i];
+      if (game.slot[move] >= 0) {
+        long childHash = hash ^ this.builder.keys.key(move, game.currentPlayer())
+            ^ this.builder.keys.player2ToMove;
+        game.applyMove(move);
+        this.solve(game, childHash, depth - 1);
+        game.undo();
+      }
+    }
+  }
+}
+
+// builds opening books on every core. A complete book (a tablebase) holds
+// every position that can be reached on the board, solved by full-width
+// negamax with exact distances to the end; this is feasible up to 7x7 (13
+// playable cells, 328k positions). An opening book holds every position up
+// to the given number of moves into the game, solved by Lehman's theorem,
+// which is exact about the winner on any board but not about the distance.
+// Run it with:
+//   java OpeningBookBuilder <size> <file> [depth] [threads]
+// where a negative depth (the default) builds a complete book
+class OpeningBookBuilder {
+  int size;
+  ZobristKeys keys;
+  int[] cells;
+  ForkJoinPool pool;
+  PositionMap results;
+
+  // constructor for a builder of books for the size, working on the pool
+  OpeningBookBuilder(int size, ForkJoinPool pool) {
+    GameEngine.checkSize(size);
+    this.size = size;
+    this.keys = new ZobristKeys(size, ZobristKeys.SEED);
+    this.pool = pool;
+    this.results = new PositionMap();
+
+    GameEngine start = new GameEngine(size);
+    this.cells = Arrays.copyOf(start.open, start.openCount);
+    Arrays.sort(this.cells);
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.out.println("usage: java OpeningBookBuilder <size> <file> [depth] [threads]");
+      return;
+    }
+    int size = Integer.parseInt(args[0]);
+    Path file = Paths.get(args[1]);
+    int depth = args.length > 2 ? Integer.parseInt(args[2]) : -1;
+    int threads = args.length > 3 ? Integer.parseInt(args[3])
+        : Runtime.getRuntime().availableProcessors();
+
+    long start = System.nanoTime();
+    OpeningBookBuilder builder = new OpeningBookBuilder(size, new ForkJoinPool(threads));
+    int positions = depth < 0 ? builder.solveAll() : builder.solveOpenings(depth);
+    builder.write(file);
+    System.out.println(String.format(Locale.ROOT,
+        "%d positions of %dx%d solved in %.3f s on %d threads, %.1f MB", positions, size,
+        size, (System.nanoTime() - start) / 1e9, threads, Files.size(file) / 1e6));
+  }
+
+  // EFFECT: solves every position reachable on the board, and returns how
+  // many there are
+  int solveAll() {
+    // deals the positions after the first move round the threads
+    GameEngine start = new GameEngine(this.size);
+    int threads = this.pool.getParallelism();
+    List<TablebaseWorker> workers = new ArrayList<TablebaseWorker>();
+    for (int i = 0; i < threads; i++) {
+      workers.add(new TablebaseWorker(this, new ArrayList<GameEngine>()));
+    }
+    for (int i = 0; i < this.cells.length; i++) {
+      GameEngine child = start.copy();
+      child.applyMove(this.cells[i]);
+      workers.get(i % threads).positions.add(child);
+    }
+
+    for (PositionMap solved : this.resultsOf(this.pool.invokeAll(workers))) {
+      this.results.putAll(solved);
+    }
+
+    // the start follows from the solved first moves
+    start.keepHistory();
+    this.solve(start, 0, this.results);
+    return this.results.count;
+  }
+
+  // EFFECT: solves every position up to the given number of moves into
+  // the game, and returns how many there are
+  int solveOpenings(int depth) {
+    // deals the positions after the first move round the threads
+    GameEngine start = new GameEngine(this.size);
+    int threads = this.pool.getParallelism();
+    List<OpeningWorker> workers = new ArrayList<OpeningWorker>();
+    for (int i = 0; i < threads; i++) {
+      workers.add(new OpeningWorker(this, new ArrayList<GameEngine>(), depth - 1));
+    }
+    for (int i = 0; depth > 0 && i < this.cells.length; i++) {
+      GameEngine child = start.copy();
+      child.applyMove(this.cells[i]);
+      workers.get(i % threads).positions.add(child);
+    }
+
+    for (PositionMap solved : this.resultsOf(this.pool.invokeAll(workers))) {
+      this.results.putAll(solved);
+    }
+    OpeningWorker root = new OpeningWorker(this, new ArrayList<GameEngine>(), 0);
+    root.positions.add(start);
+    this.results.putAll(root.call());
+    return this.results.count;
+  }
+
+  // the exact result of the game for the player to move, as scored by
+  // AlphaBetaPlayer, solving and storing every position after it that is
+  // not in the map yet. The game is played forward and undone in place
+  int solve(GameEngine game, long hash, PositionMap solved) {
+    if (game.isOver()) {
+      int winner = game.winner();
+      if (winner == BoardState.EMPTY) {
+        return 0;
+      }
+      return winner == game.currentPlayer() ? AlphaBetaPlayer.WIN : -AlphaBetaPlayer.WIN;
+    }
+    int known = solved.get(hash, OpeningBook.MISSING);
+    if (known != OpeningBook.MISSING) {
+      return OpeningBook.scoreOf(known);
+    }
+
+    int bestScore = -AlphaBetaPlayer.INFINITY;
+    int bestMove = -1;
+    for (int move : this.cells) {
+      if (game.slot[move] < 0) {
+        continue;
+      }
+      long childHash = hash ^ this.keys.key(move, game.currentPlayer()) ^ this.keys.player2ToMove;
+      game.applyMove(move);
+      int score = -this.solve(game, childHash, solved);
+      game.undo();
+
+      // a win or loss is one move further away from here
+      if (score > 0) {
+        score--;
+      }
+      else if (score < 0) {
+        score++;
+      }
+      if (score > bestScore) {
+        bestScore = score;
+        bestMove = move;
+      }
+    }
+    solved.put(hash, OpeningBook.pack(bestScore, bestMove));
+    return bestScore;
+  }
+
+  // the maps the workers finished with
+  List<PositionMap> resultsOf(List<Future<PositionMap>> futures) {
+    List<PositionMap> maps = new ArrayList<PositionMap>();
+    for (Future<PositionMap> future : futures) {
+      try {
+        maps.add(future.get());
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("book building was interrupted", e);
+      }
+      catch (ExecutionException e) {
+        throw new IllegalStateException("book building failed", e.getCause());
+      }
+    }
+    return maps;
+  }
+
+  // EFFECT: writes the solved positions as an opening book file
+  void write(Path file) throws IOException {
+    // sorts the hashes as unsigned numbers by flipping their sign bits
+    long[] hashes = new long[this.results.count];
+    int n = 0;
+    for (int i = 0; i < this.results.keys.length; i++) {
+      if (this.results.used[i]) {
+        hashes[n] = this.results.keys[i] ^ Long.MIN_VALUE;
+        n++;
+      }
+    }
+    Arrays.sort(hashes);
+
+    int bits = Math.min(30, 64 - Long.numberOfLeadingZeros(n));
+    int[] starts = new int[(1 << bits) + 1];
+    for (int i = 0; i < n; i++) {
+      hashes[i] ^= Long.MIN_VALUE;
+      starts[OpeningBook.bucketOf(hashes[i], bits) + 1]++;
+    }
+    for (int bucket = 0; bucket < (1 << bits); bucket++) {
+      starts[bucket + 1] += starts[bucket];
+    }
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        Files.newOutputStream(file), 1 << 16));
+    out.writeInt(OpeningBook.MAGIC);
+    out.writeInt(OpeningBook.VERSION);
+    out.writeInt(this.size);
+    out.writeInt(bits);
+    out.writeLong(n);
+    for (int start : starts) {
+      out.writeInt(start);
+    }
+    for (int i = 0; i < n; i++) {
+      out.writeLong(hashes[i]);
+      out.writeInt(this.results.get(hashes[i], OpeningBook.MISSING));
+    }
+    out.close();
+  }
+}
@@ -0,0 +1,272 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+
+// a strategy whose search another thread can stop early, after which it
+// returns the best move it has found so far
+interface Cancellable {
+
+  // EFFECT: stops the search in progress, and any search started before
+  // the next resume
+  void cancel();
+
+  // EFFECT: lets searches run to their limits again
+  void resume();
+}
+
+// one search for the computer's move in a position, run on a ponderer's
+// thread. A search dropped before it starts is never run
+class PonderSearch implements Callable<Integer> {
+  Ponderer ponderer;
+  GameEngine game;
+  long hash;
+  SplittableRandom random;
+  Future<Integer> result;
+
+  // set by the ponderer, under its lock, once the search is not wanted
+  boolean dropped;
+
+  // constructor for a search of the game, which it keeps to itself, whose
+  // position has the given hash
+  PonderSearch(Ponderer ponderer, GameEngine game, long hash, SplittableRandom random) {
+    this.ponderer = ponderer;
+    this.game = game;
+    this.hash = hash;
+    this.random = random;
+  }
+
+  // the move the strategy chooses, or -1 if the search was dropped first
+  public Integer call() {
+    synchronized (this.ponderer) {
+      if (this.dropped) {
+        return -1;
+      }
+      this.ponderer.running = this;
+      if (this.ponderer.strategy instanceof Cancellable) {
+        ((Cancellable) this.ponderer.strategy).resume();
+      }
+    }
+    try {
+      return this.ponderer.strategy.chooseMove(this.game, this.random);
+    }
+    finally {
+      synchronized (this.ponderer) {
+        this.ponderer.running = null;
+      }
+    }
+  }
+}
+
+// chooses a computer player's moves on a thread of its own, so the world's
+// event thread never waits on a search: it asks for the move on every tick
+// until the search has finished. After the computer moves, the ponderer
+// also searches its answers to the person's most likely replies, one after
+// another, while the person thinks. When the person's move arrives, the
+// search of the answer to it is kept, finished or not, and every other one
+// is dropped, stopping the one in progress if its strategy is Cancellable.
+// Only Cancellable strategies are pondered for; others are quick enough
+// not to need it
+class Ponderer {
+  Strategy strategy;
+  int breadth;
+  SplittableRandom random;
+  ExecutorService thread;
+  ZobristKeys keys;
+
+  // the searches not yet dropped, by the hash of the position each is for,
+  // and the one running. Guarded by this
+  HashMap<Long, PonderSearch> searches;
+  PonderSearch running;
+
+  // counts the times every search has been dropped, so replies listed
+  // before then are not searched after
+  int drops;
+
+  // constructor for a ponderer of the strategy that searches at most the
+  // given number of replies after each of its moves
+  Ponderer(Strategy strategy, int breadth, SplittableRandom random) {
+    this.strategy = strategy;
+    this.breadth = breadth;
+    this.random = random;
+    this.searches = new HashMap<Long, PonderSearch>();
+    this.thread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable task) {
+        Thread thread = new Thread(task, "ponderer");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  // the computer's move in the game, or -1 while it is still being
+  // searched. Keeps the search of this position, starting it if there is
+  // none, and drops every other one
+  synchronized int moveFor(GameEngine game) {
+    PonderSearch search = this.keep(game);
+    if (!search.result.isDone()) {
+      return -1;
+    }
+    this.searches.remove(search.hash);
+    return this.resultOf(search.result);
+  }
+
+  // EFFECT: keeps the search of the game's position, starting it if there
+  // is none, and drops every other one. Returns the search kept
+  synchronized PonderSearch keep(GameEngine game) {
+    long hash = this.hash(game);
+    PonderSearch search = this.searches.get(hash);
+    this.dropAllBut(search);
+    if (search == null) {
+      search = this.submit(game.copy(), hash);
+    }
+    return search;
+  }
+
+  // EFFECT: searches, in the background, the computer's answers to the
+  // most likely replies to its move in the game, which the person is to
+  // play next
+  synchronized void ponder(GameEngine game) {
+    if (!(this.strategy instanceof Cancellable) || game.isOver()) {
+      return;
+    }
+    final GameEngine position = game.copy();
+    final int drops = this.drops;
+    this.thread.submit(new Runnable() {
+      public void run() {
+        Ponderer.this.ponderReplies(position, drops);
+      }
+    });
+  }
+
+  // EFFECT: queues a search for each of the likely replies to the game,
+  // unless every search has been dropped since the given count. Runs on
+  // the ponderer's thread, since finding the replies takes a while
+  void ponderReplies(GameEngine game, int drops) {
+    int[] replies = likelyReplies(game, this.breadth);
+    synchronized (this) {
+      for (int i = 0; i < replies.length && drops == this.drops; i++) {
+        GameEngine next = game.copy();
+        next.applyMove(replies[i]);
+        long hash = this.hash(next);
+        if (!next.isOver() && !this.searches.containsKey(hash)) {
+          this.submit(next, hash);
+        }
+      }
+    }
+  }
+
+  // EFFECT: drops every search, stopping the one in progress
+  synchronized void stop() {
+    this.dropAllBut(null);
+  }
+
+  // EFFECT: stops every search and the ponderer's thread
+  synchronized void close() {
+    this.stop();
+    this.thread.shutdown();
+  }
+
+  // EFFECT: queues a search of the game, whose position has the given
+  // hash
+  PonderSearch submit(GameEngine game, long hash) {
+    PonderSearch search = new PonderSearch(this, game, hash, this.random.split());
+    search.result = this.thread.submit(search);
+    this.searches.put(hash, search);
+    return search;
+  }
+
+  // EFFECT: drops every search but the given one (which may be null)
+  void dropAllBut(PonderSearch kept) {
+    ArrayList<Long> dropped = new ArrayList<Long>();
+    for (Long hash : this.searches.keySet()) {
+      PonderSearch search = this.searches.get(hash);
+      if (search != kept) {
+        search.dropped = true;
+        search.result.cancel(false);
+        if (search == this.running && this.strategy instanceof Cancellable) {
+          ((Cancellable) this.strategy).cancel();
+        }
+        dropped.add(hash);
+      }
+    }
+    for (Long hash : dropped) {
+      this.searches.remove(hash);
+    }
+    this.drops++;
+  }
+
+  // the hash of the game's position
+  long hash(GameEngine game) {
+    if (this.keys == null || this.keys.size != game.size()) {
+      this.keys = new ZobristKeys(game.size(), ZobristKeys.SEED);
+    }
+    return this.keys.hash(game);
+  }
+
+  // the move a finished search found
+  int resultOf(Future<Integer> result) {
+    try {
+      return result.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("search was interrupted", e);
+    }
+    catch (CancellationException e) {
+      throw new IllegalStateException("search was dropped", e);
+    }
+    catch (ExecutionException e) {
+      throw new IllegalStateException("search failed", e.getCause());
+    }
+  }
+
+  // at most the given number of moves the player to move is most likely
+  // to play: the cells of the opponent's minimum cut, then of the player's
+  // own, as AlphaBetaPlayer tries them first, then the cells nearest the
+  // middle of the board
+  static int[] likelyReplies(GameEngine game, int count) {
+    CutTracker cuts = new CutTracker(game.board);
+    int player = game.currentPlayer();
+    int opponent = player == BoardState.PLAYER1 ? BoardState.PLAYER2 : BoardState.PLAYER1;
+    int size = game.size();
+    int[] replies = new int[Math.min(count, game.openCount)];
+    boolean[] taken = new boolean[size * size];
+    int found = 0;
+    int[][] cutCells = {cuts.cut(opponent), cuts.cut(player)};
+    for (int[] cut : cutCells) {
+      for (int i = 0; i < cut.length && found < replies.length; i++) {
+        if (!taken[cut[i]] && game.slot[cut[i]] >= 0) {
+          taken[cut[i]] = true;
+          replies[found] = cut[i];
+          found++;
+        }
+      }
+    }
+
+    // sorts the other open cells by their distance from the middle
+    long[] rest = new long[game.openCount];
+    int middle = size / 2;
+    for (int i = 0; i < game.openCount; i++) {
+      int move = game.open[i];
+      long distance = Math.abs(move / size - middle) + Math.abs(move % size - middle);
+      rest[i] = (distance << 32) | move;
+    }
+    Arrays.sort(rest);
+    for (int i = 0; i < rest.length && found < replies.length; i++) {
+      if (!taken[(int) rest[i]]) {
+        replies[found] = (int) rest[i];
+        found++;
+      }
+    }
+    return replies;
+  }
+}
@@ -0,0 +1,367 @@
+import java.awt.Color;
+import java.util.Arrays;
+
+import javalib.impworld.WorldScene;
+import javalib.worldimages.ComputedPixelImage;
+import javalib.worldimages.Posn;
+
+
+// counts each player's cells in every aligned block of 2^k by 2^k cells of
+// a board, for each level k up to one block covering the board, so the
+// owner of most of any block is found without visiting its cells. A cell
+// changing hands updates one block per level
+class BlockCounts {
+  int size;
+  int levels;
+
+  // the owner of each cell (numbered row * size + col) as last counted,
+  // and the counts of each player's cells at each level, numbered
+  // by * widths[level] + bx (level 0 is the cells themselves, so it has
+  // no counts)
+  byte[] owners;
+  int[] widths;
+  int[][] player1;
+  int[][] player2;
+
+  // constructor counting the cells of the board
+  BlockCounts(BoardState board) {
+    this.size = board.size();
+    this.levels = 1;
+    while ((1 << (this.levels - 1)) < this.size) {
+      this.levels++;
+    }
+    this.owners = new byte[this.size * this.size];
+    this.widths = new int[this.levels];
+    this.player1 = new int[this.levels][];
+    this.player2 = new int[this.levels][];
+    for (int level = 0; level < this.levels; level++) {
+      this.widths[level] = (this.size + (1 << level) - 1) >> level;
+      this.player1[level] = new int[level == 0 ? 0 : this.widths[level] * this.widths[level]];
+      this.player2[level] = new int[level == 0 ? 0 : this.widths[level] * this.widths[level]];
+    }
+    this.recount(board);
+  }
+
+  // EFFECT: counts every cell of the board again from scratch
+  void recount(BoardState board) {
+    for (int level = 1; level < this.levels; level++) {
+      Arrays.fill(this.player1[level], 0);
+      Arrays.fill(this.player2[level], 0);
+    }
+    for (int row = 0; row < this.size; row++) {
+      for (int col = 0; col < this.size; col++) {
+        int owner = board.ownerAt(col, row);
+        this.owners[row * this.size + col] = (byte) owner;
+        this.add(col, row, owner, 1);
+      }
+    }
+  }
+
+  // EFFECT: counts the cell at the given column and row as the owner's,
+  // instead of the owner it was last counted for
+  void update(int col, int row, int owner) {
+    int old = this.owners[row * this.size + col];
+    if (old != owner) {
+      this.add(col, row, old, -1);
+      this.add(col, row, owner, 1);
+      this.owners[row * this.size + col] = (byte) owner;
+    }
+  }
+
+  // EFFECT: adds the change to the owner's count of every block holding
+  // the cell
+  void add(int col, int row, int owner, int change) {
+    if (owner == BoardState.EMPTY) {
+      return;
+    }
+    int[][] counts = owner == BoardState.PLAYER1 ? this.player1 : this.player2;
+    for (int level = 1; level < this.levels; level++) {
+      counts[level][(row >> level) * this.widths[level] + (col >> level)] += change;
+    }
+  }
+
+  // the owner of most of the block at the given level and position. The
+  // starting lattice gives both players as many cells as each other in
+  // most blocks, so a block is shown as the player holding more of its
+  // cells, and as empty while they hold as many
+  int majority(int level, int bx, int by) {
+    if (level == 0) {
+      return this.owners[by * this.size + bx];
+    }
+    int block = by * this.widths[level] + bx;
+    int difference = this.player1[level][block] - this.player2[level][block];
+    if (difference > 0) {
+      return BoardState.PLAYER1;
+    }
+    else if (difference < 0) {
+      return BoardState.PLAYER2;
+    }
+    else {
+      return BoardState.EMPTY;
+    }
+  }
+}
+
+// draws a BridgIt board through a viewport: a window of a fixed number of
+// pixels showing part of the board, which can be panned and zoomed, so
+// the window stays the same size however large the board is. The window
+// is one image of pixels; each cell changed is filled into it in place if
+// it is in view, and panning or zooming redraws the window, costing its
+// pixels rather than the cells of the board. Zoomed in, each cell is
+// cellPixels across, with its heat shade and hint outline over it.
+// Zoomed out past a pixel per cell, each pixel shows a block of
+// blockCells by blockCells cells in the color of their majority owner,
+// found from the kept BlockCounts
+class RasterRenderer {
+  int size;
+  int windowPixels;
+  ComputedPixelImage image;
+  BlockCounts counts;
+
+  // the view: pixels across a cell, cells across a pixel (one of them is
+  // 1, and blockCells is a power of two), and the cell at the top left of
+  // the window, a multiple of blockCells
+  int cellPixels;
+  int blockCells;
+  int left;
+  int top;
+
+  // has the view moved since the window was last drawn?
+  boolean moved;
+
+  // the most pixels across a cell, and the number of heat shades, read
+  // once from GameConstants rather than for every cell drawn
+  int maxCellPixels;
+  int heatLevels;
+
+  // colors of the cells by owner, of the heat shades of each player, and
+  // of the window past the edges of the board
+  Color[] ownerColors;
+  Color[] player1Heat;
+  Color[] player2Heat;
+  Color offBoard;
+
+  // constructor for a viewport onto the board through a window of the
+  // given number of pixels across, zoomed out to show the whole board
+  RasterRenderer(BoardState board, int windowPixels) {
+    GameConstants constants = new GameConstants();
+    this.size = board.size();
+    this.windowPixels = windowPixels;
+    this.image = new ComputedPixelImage(windowPixels, windowPixels);
+    this.counts = new BlockCounts(board);
+    this.ownerColors = new Color[] {constants.mtColor, constants.player1Color,
+      constants.player2Color};
+    this.player1Heat = new Color[constants.heatLevels];
+    this.player2Heat = new Color[constants.heatLevels];
+    for (int slack = 0; slack < constants.heatLevels; slack++) {
+      double amount = 0.75 * (constants.heatLevels - slack) / constants.heatLevels;
+      this.player1Heat[slack] = constants.tint(constants.player1Color, amount);
+      this.player2Heat[slack] = constants.tint(constants.player2Color, amount);
+    }
+    this.offBoard = constants.offBoardColor;
+    this.maxCellPixels = constants.cellSize;
+    this.heatLevels = constants.heatLevels;
+    this.cellPixels = Math.max(1, Math.min(this.maxCellPixels, windowPixels / this.size));
+    this.blockCells = this.maxBlockCells();
+    this.moved = true;
+  }
+
+  // constructor for a viewport through a window of the game's size
+  RasterRenderer(BoardState board) {
+    this(board, new GameConstants().windowPixels);
+  }
+
+  // a new scene showing the window, which keeps showing it as it is drawn
+  WorldScene newScene() {
+    WorldScene scene = new WorldScene(this.windowPixels, this.windowPixels);
+    scene.placeImageXY(this.image, this.windowPixels / 2, this.windowPixels / 2);
+    return scene;
+  }
+
+  // the number of cells across the window
+  int cellsAcross() {
+    return (this.windowPixels * this.blockCells + this.cellPixels - 1) / this.cellPixels;
+  }
+
+  // the most blocks of cells a pixel shows: just enough for the window to
+  // hold the whole board
+  int maxBlockCells() {
+    int blockCells = 1;
+    while (this.size > this.windowPixels * blockCells) {
+      blockCells *= 2;
+    }
+    return blockCells;
+  }
+
+  // EFFECT: doubles the size of the cells in the window, up to their full
+  // size, keeping the cell in the middle of the window there
+  void zoomIn() {
+    int middleCol = this.left + this.cellsAcross() / 2;
+    int middleRow = this.top + this.cellsAcross() / 2;
+    if (this.blockCells > 1) {
+      this.blockCells /= 2;
+    }
+    else {
+      this.cellPixels = Math.min(this.maxCellPixels, this.cellPixels * 2);
+    }
+    this.moveTo(middleCol - this.cellsAcross() / 2, middleRow - this.cellsAcross() / 2);
+  }
+
+  // EFFECT: halves the size of the cells in the window, down to showing
+  // the whole board, keeping the cell in the middle of the window there
+  void zoomOut() {
+    int middleCol = this.left + this.cellsAcross() / 2;
+    int middleRow = this.top + this.cellsAcross() / 2;
+    if (this.cellPixels > 1) {
+      this.cellPixels /= 2;
+    }
+    else if (this.blockCells < this.maxBlockCells()) {
+      this.blockCells *= 2;
+    }
+    this.moveTo(middleCol - this.cellsAcross() / 2, middleRow - this.cellsAcross() / 2);
+  }
+
+  // EFFECT: moves the view by the given fractions of the window across and
+  // down (negative to the left or up)
+  void pan(double across, double down) {
+    this.moveTo(this.left + (int) Math.round(across * this.cellsAcross()),
+        this.top + (int) Math.round(down * this.cellsAcross()));
+  }
+
+  // EFFECT: puts the cell at the given column and row at the top left of
+  // the window, as near as the edges of the board and blocks allow
+  void moveTo(int col, int row) {
+    int last = Math.max(0, this.size - this.cellsAcross());
+    this.left = Math.max(0, Math.min(col, last)) / this.blockCells * this.blockCells;
+    this.top = Math.max(0, Math.min(row, last)) / this.blockCells * this.blockCells;
+    this.moved = true;
+  }
+
+  // the cell (as column and row) under the given point of the window, or
+  // null if cells are too small there to pick one
+  Posn cellAt(Posn point) {
+    if (this.blockCells > 1) {
+      return null;
+    }
+    return new Posn(this.left + point.x / this.cellPixels, this.top + point.y / this.cellPixels);
+  }
+
+  // the point of the window in the middle of the cell at the given column
+  // and row, first bringing it into view at a pixel or more across if it
+  // is not
+  Posn reveal(int col, int row) {
+    if (this.blockCells > 1) {
+      this.blockCells = 1;
+      this.moved = true;
+    }
+    int across = this.cellsAcross();
+    if (col < this.left || col >= this.left + across - 1 || row < this.top
+        || row >= this.top + across - 1) {
+      this.moveTo(col - across / 2, row - across / 2);
+    }
+    return new Posn((col - this.left) * this.cellPixels + this.cellPixels / 2,
+        (row - this.top) * this.cellPixels + this.cellPixels / 2);
+  }
+
+  // EFFECT: counts the cell at the given column and row of the game for
+  // its owner
+  void count(BridgIt game, int col, int row) {
+    this.counts.update(col, row, game.grid.ownerAt(col, row));
+  }
+
+  // EFFECT: counts the cell at the given column and row of the game and
+  // draws it, or the block of cells holding it, if it is in view
+  void paint(BridgIt game, int col, int row) {
+    this.count(game, col, row);
+    if (this.blockCells == 1) {
+      this.paintCell(game, col, row);
+    }
+    else {
+      this.paintBlock(col / this.blockCells - this.left / this.blockCells,
+          row / this.blockCells - this.top / this.blockCells);
+    }
+  }
+
+  // EFFECT: draws the whole window for the view
+  void redraw(BridgIt game) {
+    this.fill(0, 0, this.windowPixels, this.windowPixels, this.offBoard);
+    if (this.blockCells == 1) {
+      int right = Math.min(this.size, this.left + this.cellsAcross());
+      int bottom = Math.min(this.size, this.top + this.cellsAcross());
+      for (int row = this.top; row < bottom; row++) {
+        for (int col = this.left; col < right; col++) {
+          this.paintCell(game, col, row);
+        }
+      }
+    }
+    else {
+      for (int y = 0; y < this.windowPixels; y++) {
+        for (int x = 0; x < this.windowPixels; x++) {
+          this.paintBlock(x, y);
+        }
+      }
+    }
+    this.moved = false;
+  }
+
+  // EFFECT: draws the cell at the given column and row, if in view, shaded
+  // by the heatmap and outlined as a hint if they are shown
+  void paintCell(BridgIt game, int col, int row) {
+    int x = (col - this.left) * this.cellPixels;
+    int y = (row - this.top) * this.cellPixels;
+    if (x < 0 || y < 0 || x >= this.windowPixels || y >= this.windowPixels) {
+      return;
+    }
+    int owner = game.grid.ownerAt(col, row);
+    this.fill(x, y, this.cellPixels, this.cellPixels, this.ownerColors[owner]);
+    int slack = game.heatAt(col, row);
+    int side = this.cellPixels * 3 / 4;
+    if (slack < this.heatLevels && owner == BoardState.EMPTY) {
+      this.fill(x + (this.cellPixels - side) / 2, y + (this.cellPixels - side) / 2, side, side,
+          game.turn ? this.player1Heat[slack] : this.player2Heat[slack]);
+    }
+    side = this.cellPixels / 2;
+    if (game.isHinted(col, row)) {
+      this.outline(x + (this.cellPixels - side) / 2, y + (this.cellPixels - side) / 2, side,
+          game.turn ? this.ownerColors[BoardState.PLAYER1] : this.ownerColors[BoardState.PLAYER2]);
+    }
+  }
+
+  // EFFECT: draws the pixel at the given point of the window, if in view,
+  // in the color of the majority owner of the block of cells it shows
+  void paintBlock(int x, int y) {
+    if (x < 0 || y < 0 || x >= this.windowPixels || y >= this.windowPixels) {
+      return;
+    }
+    int level = Integer.numberOfTrailingZeros(this.blockCells);
+    int bx = this.left / this.blockCells + x;
+    int by = this.top / this.blockCells + y;
+    if (bx >= this.counts.widths[level] || by >= this.counts.widths[level]) {
+      this.image.setPixel(x, y, this.offBoard);
+    }
+    else {
+      this.image.setPixel(x, y, this.ownerColors[this.counts.majority(level, bx, by)]);
+    }
+  }
+
+  // EFFECT: fills the part of the given rectangle of pixels that is in the
+  // window
+  void fill(int x, int y, int width, int height, Color color) {
+    int right = Math.min(x + width, this.windowPixels);
+    int bottom = Math.min(y + height, this.windowPixels);
+    for (int j = Math.max(y, 0); j < bottom; j++) {
+      for (int i = Math.max(x, 0); i < right; i++) {
+        this.image.setPixel(i, j, color);
+      }
+    }
+  }
+
+  // EFFECT: draws the edges of the given square of pixels, where they are
+  // in the window
+  void outline(int x, int y, int side, Color color) {
+    this.fill(x, y, side, 1, color);
+    this.fill(x, y + side - 1, side, 1, color);
+    this.fill(x, y, 1, side, color);
+    this.fill(x + side - 1, y, 1, side, color);
+  }
+}
@@ -0,0 +1,444 @@
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+
+// the conductance matrix of a resistor network, stored in compressed sparse
+// rows: the neighbors of node i are column[start[i], start[i + 1]) with
+// conductance value[] to each, and diagonal[i] is the total conductance at i.
+// Two nodes are held at fixed potentials (source at 1, sink at 0) and the
+// rest are solved for by Jacobi-preconditioned conjugate gradient
+class SparseLaplacian {
+  int nodes;
+  int[] start;
+  int[] column;
+  double[] value;
+  double[] diagonal;
+  int source;
+  int sink;
+
+  // nodes that carry current between the source and the sink
+  boolean[] free;
+
+  // scratch vectors for the solver
+  double[] residual;
+  double[] direction;
+  double[] product;
+  double[] scaled;
+
+  // constructor for networks of up to the given number of nodes and
+  // (directed) links
+  SparseLaplacian(int nodes, int links) {
+    this.nodes = nodes;
+    this.start = new int[nodes + 1];
+    this.column = new int[links];
+    this.value = new double[links];
+    this.diagonal = new double[nodes];
+    this.free = new boolean[nodes];
+    this.residual = new double[nodes];
+    this.direction = new double[nodes];
+    this.product = new double[nodes];
+    this.scaled = new double[nodes];
+  }
+
+  // EFFECT: empties the network and sets its number of nodes
+  void reset(int nodes) {
+    this.nodes = nodes;
+    Arrays.fill(this.start, 0, nodes + 1, 0);
+    Arrays.fill(this.diagonal, 0, nodes, 0);
+  }
+
+  // EFFECT: marks the nodes reached from the source as free to solve for,
+  // and returns whether the sink is one of them
+  boolean markReached(int[] worklist) {
+    Arrays.fill(this.free, 0, this.nodes, false);
+    int found = 1;
+    worklist[0] = this.source;
+    this.free[this.source] = true;
+    for (int done = 0; done < found; done++) {
+      int i = worklist[done];
+      for (int k = this.start[i]; k < this.start[i + 1]; k++) {
+        if (!this.free[this.column[k]]) {
+          this.free[this.column[k]] = true;
+          worklist[found] = this.column[k];
+          found++;
+        }
+      }
+    }
+    boolean reached = this.free[this.sink];
+    this.free[this.source] = false;
+    this.free[this.sink] = false;
+    return reached;
+  }
+
+  // EFFECT: sets product to the matrix times x over the free nodes, with the
+  // fixed nodes counted as zero
+  void multiply(double[] x) {
+    for (int i = 0; i < this.nodes; i++) {
+      if (this.free[i]) {
+        double sum = this.diagonal[i] * x[i];
+        for (int k = this.start[i]; k < this.start[i + 1]; k++) {
+          if (this.free[this.column[k]]) {
+            sum -= this.value[k] * x[this.column[k]];
+          }
+        }
+        this.product[i] = sum;
+      }
+    }
+  }
+
+  // EFFECT: solves for the potentials of the free nodes, starting from the
+  // ones given, until the residual falls below tolerance times the current
+  // fed in by the source. Returns the number of iterations taken
+  int solve(double[] potential, double tolerance) {
+    potential[this.source] = 1;
+    potential[this.sink] = 0;
+
+    // the residual is the current into each free node from the source,
+    // minus what the guessed potentials already account for
+    this.multiply(potential);
+    double target = 0;
+    for (int i = 0; i < this.nodes; i++) {
+      this.residual[i] = 0;
+    }
+    for (int k = this.start[this.source]; k < this.start[this.source + 1]; k++) {
+      this.residual[this.column[k]] += this.value[k];
+      target += this.value[k] * this.value[k];
+    }
+    double rho = 0;
+    for (int i = 0; i < this.nodes; i++) {
+      if (this.free[i]) {
+        this.residual[i] -= this.product[i];
+        this.scaled[i] = this.residual[i] / this.diagonal[i];
+        this.direction[i] = this.scaled[i];
+        rho += this.residual[i] * this.scaled[i];
+      }
+      else {
+        this.residual[i] = 0;
+        this.direction[i] = 0;
+      }
+    }
+
+    double limit = tolerance * tolerance * target;
+    int iterations = 0;
+    while (this.norm() > limit && iterations < this.nodes) {
+      this.multiply(this.direction);
+      double curvature = 0;
+      for (int i = 0; i < this.nodes; i++) {
+        if (this.free[i]) {
+          curvature += this.direction[i] * this.product[i];
+        }
+      }
+      double step = rho / curvature;
+
+      double next = 0;
+      for (int i = 0; i < this.nodes; i++) {
+        if (this.free[i]) {
+          potential[i] += step * this.direction[i];
+          this.residual[i] -= step * this.product[i];
+          this.scaled[i] = this.residual[i] / this.diagonal[i];
+          next += this.residual[i] * this.scaled[i];
+        }
+      }
+      for (int i = 0; i < this.nodes; i++) {
+        if (this.free[i]) {
+          this.direction[i] = this.scaled[i] + (next / rho) * this.direction[i];
+        }
+      }
+      rho = next;
+      iterations++;
+    }
+    return iterations;
+  }
+
+  // the squared length of the residual
+  double norm() {
+    double sum = 0;
+    for (int i = 0; i < this.nodes; i++) {
+      sum += this.residual[i] * this.residual[i];
+    }
+    return sum;
+  }
+
+  // the current leaving the source at the given potentials
+  double current(double[] potential) {
+    double current = 0;
+    for (int k = this.start[this.source]; k < this.start[this.source + 1]; k++) {
+      current += this.value[k] * (1 - potential[this.column[k]]);
+    }
+    return current;
+  }
+}
+
+// scores a position by the Hex resistance heuristic. For each player the
+// board becomes a resistor network: the player's cells are wires, empty
+// cells are unit resistors, and the opponent's cells and the unplayable
+// edge cells are open circuits. Two neighboring cells are joined by the sum
+// of their resistances, so a player's connected cells merge into one node,
+// and the player's goal lines are the source and sink. The player with the
+// lower resistance between its goals is ahead.
+//
+// Potentials are kept from one evaluation to the next and used as the
+// starting guess, so a position one move from the last needs a fraction of
+// the iterations of a fresh solve. An evaluator keeps this state, so each
+// search needs its own. Run it alone to time it over random games:
+//   java ResistanceEvaluator [size] [games] [tolerance]
+class ResistanceEvaluator implements Evaluator {
+  int size;
+  double tolerance;
+
+  // last potentials of each cell, for player1 and player2
+  double[][] potentials;
+
+  // scratch state, reused by every evaluation
+  SparseLaplacian[] networks;
+  DisjointSet groups;
+  int[] resistances;
+  int[] nodeOf;
+  int[] nodeAt;
+  int[] cellOf;
+  int[] worklist;
+  double[] potential;
+
+  // where the next link of each node goes while a network is filled in
+  int[] fill;
+
+  // results of the last evaluation
+  double lastPlayer1;
+  double lastPlayer2;
+  int lastIterations;
+
+  // constructor for an evaluator that solves to the given relative tolerance
+  ResistanceEvaluator(double tolerance) {
+    this.tolerance = tolerance;
+    this.size = 0;
+  }
+
+  public static void main(String[] args) {
+    int size = args.length > 0 ? Integer.parseInt(args[0]) : 21;
+    int games = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+    // evaluates every position of random games, as a search would see them
+    double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : 1e-3;
+    ResistanceEvaluator evaluator = new ResistanceEvaluator(tolerance);
+    SplittableRandom random = new SplittableRandom(42);
+    long evaluations = 0;
+    long iterations = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < games; i++) {
+      GameEngine game = new GameEngine(size);
+      while (!game.isOver()) {
+        evaluator.evaluate(game);
+        evaluations++;
+        iterations += evaluator.lastIterations;
+        game.applyMove(game.randomMove(random));
+      }
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.println(String.format(Locale.ROOT,
+        "%d evaluations in %.3f s (%.1f us each), %.1f iterations each",
+        evaluations, seconds, seconds * 1e6 / evaluations, (double) iterations / evaluations));
+  }
+
+  // an evaluator with networks of its own, solving to the same tolerance
+  public Evaluator forNewGame() {
+    return new ResistanceEvaluator(this.tolerance);
+  }
+
+  // score of the position for the player to move: the log of the
+  // opponent's resistance over the mover's, in hundredths
+  public int evaluate(GameEngine game) {
+    this.prepare(game.size());
+    this.lastIterations = 0;
+    this.lastPlayer1 = this.resistance(game.board, BoardState.PLAYER1);
+    this.lastPlayer2 = this.resistance(game.board, BoardState.PLAYER2);
+
+    double mine = game.turn ? this.lastPlayer1 : this.lastPlayer2;
+    double theirs = game.turn ? this.lastPlayer2 : this.lastPlayer1;
+    if (mine == theirs) {
+      return 0;
+    }
+    else if (Double.isInfinite(mine) || theirs == 0) {
+      return -5000;
+    }
+    else if (Double.isInfinite(theirs) || mine == 0) {
+      return 5000;
+    }
+    long score = Math.round(100 * Math.log(theirs / mine));
+    return (int) Math.max(-5000, Math.min(5000, score));
+  }
+
+  // EFFECT: sets up the scratch state for the board size, with each
+  // player's potentials falling evenly from its first goal line to its last
+  void prepare(int size) {
+    if (this.size == size) {
+      return;
+    }
+    int cells = size * size;
+    this.size = size;
+    this.networks = new SparseLaplacian[] { null, new SparseLaplacian(cells + 2, 4 * cells),
+        new SparseLaplacian(cells + 2, 4 * cells) };
+    this.groups = new DisjointSet(cells + 2);
+    this.resistances = new int[cells];
+    this.nodeOf = new int[cells + 2];
+    this.nodeAt = new int[cells + 2];
+    this.fill = new int[cells + 2];
+    this.cellOf = new int[cells + 2];
+    this.worklist = new int[cells + 2];
+    this.potential = new double[cells + 2];
+    this.potentials = new double[3][cells];
+    for (int cell = 0; cell < cells; cell++) {
+      this.potentials[BoardState.PLAYER1][cell] = 1 - (double) (cell % size) / (size - 1);
+      this.potentials[BoardState.PLAYER2][cell] = 1 - (double) (cell / size) / (size - 1);
+    }
+  }
+
+  // the effective resistance between the player's goal lines, or infinity
+  // if the opponent has cut them apart
+  double resistance(BoardState board, int player) {
+    SparseLaplacian network = this.network(board, player);
+    if (network.source == network.sink) {
+      return 0;
+    }
+    if (!network.markReached(this.worklist)) {
+      return Double.POSITIVE_INFINITY;
+    }
+
+    // starts from the potentials of the last evaluation, and keeps the new ones
+    double[] last = this.potentials[player];
+    for (int node = 0; node < network.nodes; node++) {
+      int cell = this.cellOf[node];
+      this.potential[node] = cell < last.length ? last[cell] : 0;
+    }
+    this.lastIterations += network.solve(this.potential, this.tolerance);
+    for (int cell = 0; cell < last.length; cell++) {
+      int node = this.nodeAt[cell];
+      if (node >= 0 && network.free[node]) {
+        last[cell] = this.potential[node];
+      }
+    }
+    return 1 / network.current(this.potential);
+  }
+
+  // the player's resistor network on the board. Cells are numbered
+  // row * size + col, and the two goal lines are the extra cells after them
+  SparseLaplacian network(BoardState board, int player) {
+    int size = this.size;
+    int cells = size * size;
+    int source = cells;
+    int sink = cells + 1;
+
+    // merges each group of touching cells of the player, and its goal lines
+    for (int cell = 0; cell < cells + 2; cell++) {
+      this.groups.add(cell);
+    }
+    for (int row = 0; row < size; row++) {
+      for (int col = 0; col < size; col++) {
+        int cell = row * size + col;
+        this.resistances[cell] = this.resistanceOf(board, col, row, player);
+        if (this.resistances[cell] == 0) {
+          if (col > 0 && this.resistances[cell - 1] == 0) {
+            this.groups.union(cell, cell - 1);
+          }
+          if (row > 0 && this.resistances[cell - size] == 0) {
+            this.groups.union(cell, cell - size);
+          }
+          int along = player == BoardState.PLAYER1 ? col : row;
+          if (along == 0) {
+            this.groups.union(cell, source);
+          }
+          else if (along == size - 1) {
+            this.groups.union(cell, sink);
+          }
+        }
+      }
+    }
+
+    // numbers the nodes: one per group, and one per empty playable cell
+    Arrays.fill(this.nodeOf, -1);
+    int nodes = 0;
+    for (int cell = 0; cell < cells + 2; cell++) {
+      if (cell >= cells || this.resistances[cell] >= 0) {
+        int root = this.groups.find(cell);
+        if (this.nodeOf[root] < 0) {
+          this.nodeOf[root] = nodes;
+          this.cellOf[nodes] = cell;
+          nodes++;
+        }
+        this.nodeAt[cell] = this.nodeOf[root];
+      }
+      else {
+        this.nodeAt[cell] = -1;
+      }
+    }
+
+    // links neighboring cells in different nodes, counting the links of
+    // each node first and then filling them in
+    SparseLaplacian network = this.networks[player];
+    network.reset(nodes);
+    network.source = this.nodeAt[source];
+    network.sink = this.nodeAt[sink];
+    for (int pass = 0; pass < 2; pass++) {
+      for (int row = 0; row < size; row++) {
+        for (int col = 0; col < size; col++) {
+          int cell = row * size + col;
+          if (col + 1 < size) {
+            this.link(network, cell, cell + 1, pass);
+          }
+          if (row + 1 < size) {
+            this.link(network, cell, cell + size, pass);
+          }
+        }
+      }
+      if (pass == 0) {
+        for (int node = 0; node < nodes; node++) {
+          network.start[node + 1] += network.start[node];
+        }
+        System.arraycopy(network.start, 0, this.fill, 0, nodes);
+      }
+    }
+    return network;
+  }
+
+  // EFFECT: counts (first pass) or records (second pass) the link between
+  // two neighboring cells, if current can flow between them
+  void link(SparseLaplacian network, int a, int b, int pass) {
+    int nodeA = this.nodeAt[a];
+    int nodeB = this.nodeAt[b];
+    if (nodeA < 0 || nodeB < 0 || nodeA == nodeB) {
+      return;
+    }
+
+    if (pass == 0) {
+      network.start[nodeA + 1]++;
+      network.start[nodeB + 1]++;
+    }
+    else {
+      double conductance = 1.0 / (this.resistances[a] + this.resistances[b]);
+      network.column[this.fill[nodeA]] = nodeB;
+      network.value[this.fill[nodeA]] = conductance;
+      this.fill[nodeA]++;
+      network.column[this.fill[nodeB]] = nodeA;
+      network.value[this.fill[nodeB]] = conductance;
+      this.fill[nodeB]++;
+      network.diagonal[nodeA] += conductance;
+      network.diagonal[nodeB] += conductance;
+    }
+  }
+
+  // the resistance of the cell to the player: 0 for its own cells, 1 for
+  // empty cells it may claim, and -1 for cells current cannot cross
+  int resistanceOf(BoardState board, int col, int row, int player) {
+    int owner = board.ownerAt(col, row);
+    if (owner == player) {
+      return 0;
+    }
+    else if (owner == BoardState.EMPTY && col > 0 && col < this.size - 1 && row > 0
+        && row < this.size - 1) {
+      return 1;
+    }
+    else {
+      return -1;
+    }
+  }
+}
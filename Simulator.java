@@ -0,0 +1,204 @@
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+// represents a way of choosing moves in a headless game. A strategy may
+// keep state from move to move (a search's tables or trees), so it plays
+// one game at a time: a simulator playing games on many threads asks it
+// for a strategy of its own for each game. Randomness comes from the
+// random source of the game being played
+interface Strategy {
+
+  // the number of the cell to claim next in the game
+  int chooseMove(GameEngine game, SplittableRandom random);
+
+  // a strategy playing the same way for one more game, which may be
+  // played at the same time as this strategy's: the strategy itself if it
+  // keeps no state between moves
+  default Strategy forNewGame() {
+    return this;
+  }
+}
+
+// a strategy that claims a uniformly random playable cell
+class RandomStrategy implements Strategy {
+
+  // picks any playable cell
+  public int chooseMove(GameEngine game, SplittableRandom random) {
+    return game.randomMove(random);
+  }
+}
+
+// a strategy that plays a fixed list of moves in order, skipping moves
+// that are no longer playable, then falls back to random moves
+class ScriptedStrategy implements Strategy {
+  int[] script;
+
+  // constructor for the given move numbers
+  ScriptedStrategy(int[] script) {
+    this.script = script;
+  }
+
+  // picks the first scripted move that is still playable
+  public int chooseMove(GameEngine game, SplittableRandom random) {
+    for (int move : this.script) {
+      if (game.isLegal(move / game.size(), move % game.size())) {
+        return move;
+      }
+    }
+    return game.randomMove(random);
+  }
+}
+
+// outcome counts of a batch of games
+class SimulationResult {
+  long games;
+  long player1Wins;
+  long player2Wins;
+  long ties;
+  long totalMoves;
+  long elapsedNanos;
+
+  // EFFECT: counts the outcome of a finished game
+  void record(GameEngine game) {
+    int winner = game.winner();
+    this.games++;
+    this.totalMoves += game.moves;
+    if (winner == BoardState.PLAYER1) {
+      this.player1Wins++;
+    }
+    else if (winner == BoardState.PLAYER2) {
+      this.player2Wins++;
+    }
+    else {
+      this.ties++;
+    }
+  }
+
+  // EFFECT: adds the counts of the other result to this one
+  void merge(SimulationResult other) {
+    this.games += other.games;
+    this.player1Wins += other.player1Wins;
+    this.player2Wins += other.player2Wins;
+    this.ties += other.ties;
+    this.totalMoves += other.totalMoves;
+  }
+
+  // games played per second of wall time
+  double gamesPerSecond() {
+    return this.games / (this.elapsedNanos / 1e9);
+  }
+
+  // summary of the batch
+  public String toString() {
+    return String.format(Locale.ROOT,
+        "%d games in %.3f s (%.0f games/s): player1 %.2f%%, player2 %.2f%%, ties %.2f%%, "
+        + "%.2f moves/game",
+        this.games, this.elapsedNanos / 1e9, this.gamesPerSecond(),
+        100.0 * this.player1Wins / this.games, 100.0 * this.player2Wins / this.games,
+        100.0 * this.ties / this.games, (double) this.totalMoves / this.games);
+  }
+}
+
+// plays the games numbered [from, to), splitting the range between
+// workers until it is small enough to play directly. A range played
+// directly reuses one game, reset from a starting position before each
+// game instead of building a new board
+class SimulationTask extends RecursiveTask<SimulationResult> {
+  private static final long serialVersionUID = 1L;
+
+  // tasks are never serialized, so the simulator they share is not either
+  transient BatchSimulator simulator;
+  long from;
+  long to;
+
+  // constructor for the given range of games
+  SimulationTask(BatchSimulator simulator, long from, long to) {
+    this.simulator = simulator;
+    this.from = from;
+    this.to = to;
+  }
+
+  // plays the range, or its two halves in parallel
+  protected SimulationResult compute() {
+    if (this.to - this.from <= this.simulator.batchSize) {
+      SimulationResult result = new SimulationResult();
+      GameEngine start = new GameEngine(this.simulator.size);
+      GameEngine engine = start.copy();
+      for (long game = this.from; game < this.to; game++) {
+        engine.copyFrom(start);
+        result.record(this.simulator.play(game, engine));
+      }
+      return result;
+    }
+
+    long middle = (this.from + this.to) >>> 1;
+    SimulationTask left = new SimulationTask(this.simulator, this.from, middle);
+    left.fork();
+    SimulationResult result = new SimulationTask(this.simulator, middle, this.to).compute();
+    result.merge(left.join());
+    return result;
+  }
+}
+
+// plays many headless games in parallel on a ForkJoinPool, each between
+// strategies of its own made by the players' forNewGame. Game i draws its
+// random moves from a source seeded by (seed, i), so a batch gives the
+// same outcomes however its games are spread across threads, as long as
+// the strategies are deterministic. Run it with:
+//   java BatchSimulator <size> <games> [seed] [threads]
+class BatchSimulator {
+  int size;
+  Strategy player1;
+  Strategy player2;
+  long seed;
+  int batchSize;
+
+  // constructor for games of the given size between the two strategies
+  BatchSimulator(int size, Strategy player1, Strategy player2, long seed) {
+    this.size = size;
+    this.player1 = player1;
+    this.player2 = player2;
+    this.seed = seed;
+    this.batchSize = 256;
+  }
+
+  public static void main(String[] args) {
+    int size = args.length > 0 ? Integer.parseInt(args[0]) : 11;
+    long games = args.length > 1 ? Long.parseLong(args[1]) : 1000000;
+    long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+    int threads = args.length > 3 ? Integer.parseInt(args[3])
+        : Runtime.getRuntime().availableProcessors();
+
+    BatchSimulator simulator = new BatchSimulator(size, new RandomStrategy(),
+        new RandomStrategy(), seed);
+    System.out.println(simulator.run(games, new ForkJoinPool(threads)));
+  }
+
+  // plays the numbered game to the end
+  GameEngine play(long game) {
+    return this.play(game, new GameEngine(this.size));
+  }
+
+  // plays the numbered game to the end on the given new game
+  GameEngine play(long game, GameEngine engine) {
+    SplittableRandom random = new SplittableRandom(this.seed ^ (game * 0x9E3779B97F4A7C15L));
+    Strategy player1 = this.player1.forNewGame();
+    Strategy player2 = this.player2.forNewGame();
+    while (!engine.isOver()) {
+      Strategy mover = engine.turn ? player1 : player2;
+      engine.applyMove(mover.chooseMove(engine, random));
+    }
+    return engine;
+  }
+
+  // plays the given number of games on the pool and times them
+  SimulationResult run(long games, ForkJoinPool pool) {
+    long start = System.nanoTime();
+    SimulationResult result = pool.invoke(new SimulationTask(this, 0, games));
+    result.elapsedNanos = System.nanoTime() - start;
+    return result;
+  }
+}
@@ -0,0 +1,496 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+
+// BridgIt as a Shannon switching game. player1's cells are the dots of a
+// graph: the left column is one dot S, the right column is one dot T, and
+// every empty cell is an edge between the two player1 cells on either side
+// of it. player1 claiming a cell keeps its edge, player2 claiming it cuts
+// the edge, and player1 wins by joining S to T with kept edges.
+//
+// player1 wins by Gross's pairing strategy: it opens in the top left
+// corner, and every other edge is paired with one next to it at one of
+// player2's dots, so that whenever player2 cuts an edge player1 keeps its
+// partner. player2 can never hold both edges of a pair, and the pairs are
+// laid out so that no path of player2's crosses the board without doing
+// so. Each answer is one table lookup
+class SwitchingGame {
+  static final byte OPEN = 0;
+  static final byte CUT = 1;
+  static final byte KEPT = 2;
+
+  int size;
+  int half;
+  int dots;
+
+  // edge e is the cell numbered cellOf[e], joining dots tail[e] and head[e],
+  // paired with edge partner[e] (-1 for the opening) and in the given
+  // state; edgeAt[cell] is the edge of a cell or -1
+  int[] cellOf;
+  int[] tail;
+  int[] head;
+  int[] partner;
+  byte[] state;
+  int[] edgeAt;
+
+  // moves played so far and the last edge kept
+  int opening;
+  int played;
+  int lastKept;
+
+  // constructor for the graph and pairing of a board of the given size
+  SwitchingGame(int size) {
+    if (size % 2 == 0 || size < 3) {
+      throw new IllegalArgumentException("board size must be odd and greater than 3");
+    }
+    this.size = size;
+    this.half = size / 2;
+    this.dots = (this.half - 1) * this.half + 2;
+
+    int edges = 2 * this.half * this.half - 2 * this.half + 1;
+    this.cellOf = new int[edges];
+    this.tail = new int[edges];
+    this.head = new int[edges];
+    this.partner = new int[edges];
+    this.state = new byte[edges];
+    this.edgeAt = new int[size * size];
+    Arrays.fill(this.edgeAt, -1);
+    Arrays.fill(this.partner, -1);
+
+    // horizontal edges join the dots left and right of an empty cell, and
+    // vertical edges the dots above and below one
+    int e = 0;
+    for (int r = 0; r < this.half; r++) {
+      for (int c = 0; c < this.half; c++) {
+        this.addEdge(e, this.dot(c, r), this.dot(c + 1, r), 2 * r + 1, 2 * c + 1);
+        e++;
+      }
+    }
+    for (int c = 1; c < this.half; c++) {
+      for (int r = 0; r < this.half - 1; r++) {
+        this.addEdge(e, this.dot(c, r), this.dot(c, r + 1), 2 * r + 2, 2 * c);
+        e++;
+      }
+    }
+
+    this.pairEdges();
+    this.opening = this.edgeAt[size + 1];
+    this.state[this.opening] = KEPT;
+    this.played = 0;
+    this.lastKept = -1;
+  }
+
+  // the dot at column c, row r of player1's cells, where column 0 is S and
+  // column half is T
+  int dot(int c, int r) {
+    if (c == 0) {
+      return 0;
+    }
+    else if (c == this.half) {
+      return 1;
+    }
+    else {
+      return 2 + (c - 1) * this.half + r;
+    }
+  }
+
+  // EFFECT: records edge e between the two dots at the given cell
+  void addEdge(int e, int from, int to, int row, int col) {
+    this.cellOf[e] = row * this.size + col;
+    this.tail[e] = from;
+    this.head[e] = to;
+    this.edgeAt[row * this.size + col] = e;
+  }
+
+  // EFFECT: pairs two of the edges at each of player2's dots off the top
+  // and bottom rows. With those dots numbered a = 0 to half - 1 across and
+  // b = 1 to half - 1 down, the dots on the left side pair their right and
+  // lower edges, and the rest their upper and right edges when
+  // a + b < half, their upper and lower edges when a + b = half, and their
+  // left and lower edges when a + b > half. That pairs every edge but the
+  // opening exactly once
+  void pairEdges() {
+    for (int b = 1; b < this.half; b++) {
+      for (int a = 0; a < this.half; a++) {
+        int center = 2 * b * this.size + 2 * a + 1;
+        int up = center - this.size;
+        int down = center + this.size;
+        if (a == 0) {
+          this.pair(center + 1, down);
+        }
+        else if (a + b < this.half) {
+          this.pair(up, center + 1);
+        }
+        else if (a + b == this.half) {
+          this.pair(up, down);
+        }
+        else {
+          this.pair(center - 1, down);
+        }
+      }
+    }
+  }
+
+  // EFFECT: pairs the edges at the two numbered cells
+  void pair(int first, int second) {
+    this.partner[this.edgeAt[first]] = this.edgeAt[second];
+    this.partner[this.edgeAt[second]] = this.edgeAt[first];
+  }
+
+  // the number of the cell player1 claims first
+  int openingMove() {
+    return this.cellOf[this.opening];
+  }
+
+  // EFFECT: records that player2 claimed the numbered cell, and returns the
+  // number of the cell player1 claims in answer: its partner, which is
+  // still open because player1 has only ever kept the partners of cuts
+  int respond(int cell) {
+    int e = cell >= 0 && cell < this.edgeAt.length ? this.edgeAt[cell] : -1;
+    if (e < 0 || this.state[e] != OPEN) {
+      throw new IllegalArgumentException("cell " + cell + " is not an open edge");
+    }
+
+    int kept = this.partner[e];
+    if (this.state[kept] != OPEN) {
+      throw new IllegalStateException("partner of cell " + cell + " is not open");
+    }
+    this.state[e] = CUT;
+    this.state[kept] = KEPT;
+    this.lastKept = kept;
+    this.played += 2;
+    return this.cellOf[kept];
+  }
+
+  // does the game continue the moves played here, with player2's answer
+  // to the last one added?
+  boolean continues(GameEngine game) {
+    int claimed = this.cellOf.length - game.openCount;
+    if (game.size() != this.size || !game.turn) {
+      return false;
+    }
+    else if (this.played == 0) {
+      return claimed == 0;
+    }
+    else {
+      int last = this.cellOf[this.lastKept >= 0 ? this.lastKept : this.opening];
+      return claimed == this.played + 1
+          && game.board.ownerAt(last % this.size, last / this.size) == BoardState.PLAYER1;
+    }
+  }
+
+  // EFFECT: plays player1's next move in the game, which must continue the
+  // moves played here
+  int nextMove(GameEngine game) {
+    if (this.played == 0) {
+      this.played = 1;
+      return this.openingMove();
+    }
+    else {
+      return this.respond(this.lastCut(game));
+    }
+  }
+
+  // the cell player2 claimed since player1's last move. Engines remember
+  // their last move; otherwise every edge is checked
+  int lastCut(GameEngine game) {
+    if (game.lastMove >= 0 && this.edgeAt[game.lastMove] >= 0
+        && this.state[this.edgeAt[game.lastMove]] == OPEN
+        && game.board.ownerAt(game.lastMove % this.size, game.lastMove / this.size)
+        == BoardState.PLAYER2) {
+      return game.lastMove;
+    }
+    for (int e = 0; e < this.cellOf.length; e++) {
+      if (this.state[e] == OPEN && game.board.ownerAt(this.cellOf[e] % this.size,
+          this.cellOf[e] / this.size) == BoardState.PLAYER2) {
+        return this.cellOf[e];
+      }
+    }
+    throw new IllegalStateException("player2 has not moved");
+  }
+}
+
+// a perfect player1: plays Gross's pairing strategy, so it wins every
+// game it plays from the first move, whatever player2 does. Each thread
+// keeps the game it is playing, and a game that does not continue it
+// starts a new one. Run it alone to check it against random play:
+//   java SwitchingPlayer [size] [games] [threads]
+class SwitchingPlayer implements Strategy {
+  ThreadLocal<SwitchingGame> games;
+
+  // constructor for a player with no game in progress
+  SwitchingPlayer() {
+    this.games = new ThreadLocal<SwitchingGame>();
+  }
+
+  public static void main(String[] args) {
+    int size = args.length > 0 ? Integer.parseInt(args[0]) : 1001;
+    long games = args.length > 1 ? Long.parseLong(args[1]) : 16;
+    int threads = args.length > 2 ? Integer.parseInt(args[2])
+        : Runtime.getRuntime().availableProcessors();
+
+    BatchSimulator simulator = new BatchSimulator(size, new SwitchingPlayer(),
+        new RandomStrategy(), 42);
+    System.out.println(simulator.run(games, new ForkJoinPool(threads)));
+  }
+
+  // answers player2's last move with the partner of the cell it claimed
+  public int chooseMove(GameEngine game, SplittableRandom random) {
+    if (!game.turn) {
+      throw new IllegalStateException("the switching strategy only plays player1");
+    }
+
+    SwitchingGame current = this.games.get();
+    if (current == null || !current.continues(game)) {
+      current = new SwitchingGame(game.size());
+      this.games.set(current);
+      if (!current.continues(game)) {
+        throw new IllegalStateException("the switching strategy only plays games from the start");
+      }
+    }
+    return current.nextMove(game);
+  }
+}
+
+// decides any position exactly by Lehman's theorem: with player2 to move,
+// player1 wins if and only if the graph of open edges, with player1's
+// edges contracted, has two edge-disjoint trees on the same dots that both
+// join S to T. With player1 to move, player1 wins if and only if keeping
+// some open edge leads to such a graph. The test packs the open edges into
+// two forests (Edmonds' matroid partition, growing the packing along
+// shortest exchange paths), then tries to add a virtual edge from S to T:
+// it fits if and only if no such pair of trees exists, since otherwise the
+// trees would already span S and T in both forests
+class LehmanSolver {
+  SwitchingGame graph;
+  int edges;
+
+  // the dot each dot is merged into by player1's edges, and the ends, the
+  // forest (0 for none) and the usability of every edge in the packing,
+  // with the virtual edge last
+  DisjointSet merged;
+  int[] from;
+  int[] to;
+  int[] forest;
+  boolean[] usable;
+
+  // scratch state for one exchange search
+  int[] parent;
+  int[] via;
+  int[] queue;
+  int[][] adjacency;
+  int[][] adjacent;
+  int[] degree;
+  int[] previous;
+  int[] edgeTo;
+  int[] dotQueue;
+
+  // constructor for a solver of positions on boards of the given size
+  LehmanSolver(int size) {
+    this.graph = new SwitchingGame(size);
+    this.edges = this.graph.cellOf.length;
+    this.merged = new DisjointSet(this.graph.dots);
+    this.from = new int[this.edges + 1];
+    this.to = new int[this.edges + 1];
+    this.forest = new int[this.edges + 1];
+    this.usable = new boolean[this.edges + 1];
+    this.parent = new int[this.edges + 1];
+    this.via = new int[this.edges + 1];
+    this.queue = new int[this.edges + 1];
+    this.adjacency = new int[3][this.graph.dots * 4 + 8];
+    this.adjacent = new int[3][this.graph.dots * 4 + 8];
+    this.degree = new int[this.graph.dots];
+    this.previous = new int[this.graph.dots];
+    this.edgeTo = new int[this.graph.dots];
+    this.dotQueue = new int[this.graph.dots];
+  }
+
+  // does player1 win the game with best play on both sides?
+  boolean player1Wins(GameEngine game) {
+    if (game.isOver()) {
+      return game.winner() == BoardState.PLAYER1;
+    }
+    else if (game.turn) {
+      return this.winningKeep(game, -1) >= 0;
+    }
+    else {
+      return this.player1WinsSecond(game, -1, -1);
+    }
+  }
+
+  // a best move for the player to move: one that wins if any does,
+  // otherwise the first playable cell
+  int bestMove(GameEngine game) {
+    if (game.isOver()) {
+      throw new IllegalStateException("game is over");
+    }
+    if (game.turn) {
+      int e = this.winningKeep(game, -1);
+      return e >= 0 ? this.graph.cellOf[e] : game.open[0];
+    }
+
+    // player2 wins by cutting an edge after which player1 has no winning
+    // edge to keep
+    if (!this.player1WinsSecond(game, -1, -1)) {
+      for (int e = 0; e < this.edges; e++) {
+        if (this.ownerOf(game, e) == BoardState.EMPTY && this.winningKeep(game, e) < 0) {
+          return this.graph.cellOf[e];
+        }
+      }
+    }
+    return game.open[0];
+  }
+
+  // an open edge (other than the cut one) that player1 can keep and then
+  // win with player2 to move, or -1 if there is none
+  int winningKeep(GameEngine game, int cut) {
+    for (int e = 0; e < this.edges; e++) {
+      if (e != cut && this.ownerOf(game, e) == BoardState.EMPTY
+          && this.player1WinsSecond(game, e, cut)) {
+        return e;
+      }
+    }
+    return -1;
+  }
+
+  // the owner of the cell of edge e
+  int ownerOf(GameEngine game, int e) {
+    int cell = this.graph.cellOf[e];
+    return game.board.ownerAt(cell % this.graph.size, cell / this.graph.size);
+  }
+
+  // does player1 win the game with player2 to move, once player1 also
+  // keeps edge kept and player2 also cuts edge cut (-1 for none)?
+  boolean player1WinsSecond(GameEngine game, int kept, int cut) {
+    for (int d = 0; d < this.graph.dots; d++) {
+      this.merged.add(d);
+    }
+    for (int e = 0; e < this.edges; e++) {
+      if (e == kept || (e != cut && this.ownerOf(game, e) == BoardState.PLAYER1)) {
+        this.merged.union(this.graph.tail[e], this.graph.head[e]);
+      }
+    }
+    int source = this.merged.find(0);
+    int sink = this.merged.find(1);
+    if (source == sink) {
+      return true;
+    }
+
+    for (int e = 0; e < this.edges; e++) {
+      this.from[e] = this.merged.find(this.graph.tail[e]);
+      this.to[e] = this.merged.find(this.graph.head[e]);
+      this.forest[e] = 0;
+      this.usable[e] = e != kept && e != cut && this.from[e] != this.to[e]
+          && this.ownerOf(game, e) == BoardState.EMPTY;
+    }
+    this.from[this.edges] = source;
+    this.to[this.edges] = sink;
+    this.forest[this.edges] = 0;
+    this.usable[this.edges] = false;
+
+    for (int e = 0; e < this.edges; e++) {
+      if (this.usable[e]) {
+        this.insert(e);
+      }
+    }
+    return !this.insert(this.edges);
+  }
+
+  // EFFECT: tries to fit edge x into the packing, moving edges between
+  // the forests along a shortest chain of swaps, and returns whether it fit
+  boolean insert(int x) {
+    this.buildAdjacency();
+    Arrays.fill(this.parent, -2);
+    this.parent[x] = -1;
+    this.queue[0] = x;
+    int found = 1;
+    for (int done = 0; done < found; done++) {
+      int y = this.queue[done];
+      for (int f = 1; f <= 2; f++) {
+        if (this.forest[y] == f) {
+          continue;
+        }
+
+        // y fits in forest f if its ends are not joined there yet;
+        // otherwise every edge on the path joining them could make room
+        if (!this.findPath(f, this.from[y], this.to[y])) {
+          this.forest[y] = f;
+          int z = y;
+          while (this.parent[z] >= 0) {
+            int p = this.parent[z];
+            this.forest[p] = this.via[z];
+            z = p;
+          }
+          return true;
+        }
+        for (int d = this.to[y]; d != this.from[y]; d = this.previous[d]) {
+          int w = this.edgeTo[d];
+          if (this.parent[w] == -2) {
+            this.parent[w] = y;
+            this.via[w] = f;
+            this.queue[found] = w;
+            found++;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  // EFFECT: lists the edges of both forests at every dot
+  void buildAdjacency() {
+    for (int f = 1; f <= 2; f++) {
+      Arrays.fill(this.degree, 0);
+      for (int e = 0; e <= this.edges; e++) {
+        if (this.forest[e] == f) {
+          this.degree[this.from[e]]++;
+          this.degree[this.to[e]]++;
+        }
+      }
+      int[] start = this.adjacency[f];
+      start[0] = 0;
+      for (int d = 0; d < this.graph.dots; d++) {
+        start[d + 1] = start[d] + this.degree[d];
+      }
+      int[] next = Arrays.copyOf(start, this.graph.dots);
+      int[] list = this.adjacent[f];
+      for (int e = 0; e <= this.edges; e++) {
+        if (this.forest[e] == f) {
+          list[next[this.from[e]]] = e;
+          next[this.from[e]]++;
+          list[next[this.to[e]]] = e;
+          next[this.to[e]]++;
+        }
+      }
+    }
+  }
+
+  // does forest f join dots a and b? If so, previous and edgeTo lead back
+  // from b to a along the path
+  boolean findPath(int f, int a, int b) {
+    int[] start = this.adjacency[f];
+    int[] list = this.adjacent[f];
+    Arrays.fill(this.previous, -1);
+    this.previous[a] = a;
+    this.dotQueue[0] = a;
+    int found = 1;
+    for (int done = 0; done < found; done++) {
+      int d = this.dotQueue[done];
+      if (d == b) {
+        return true;
+      }
+      for (int i = start[d]; i < start[d + 1]; i++) {
+        int e = list[i];
+        int other = this.from[e] == d ? this.to[e] : this.from[e];
+        if (this.previous[other] < 0) {
+          this.previous[other] = d;
+          this.edgeTo[other] = e;
+          this.dotQueue[found] = other;
+          found++;
+        }
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,381 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+// a player entered in a tournament. It makes new engines for every game it
+// plays: engines such as AlphaBetaPlayer keep their tables from move to
+// move, so an engine reused across games would make a game's result depend
+// on the games its thread happened to play before it
+abstract class Entrant {
+  String name;
+
+  // nanoseconds each of the entrant's moves took to choose, in every game
+  Histogram moveTimes;
+
+  // constructor for an entrant with the given name
+  Entrant(String name) {
+    this.name = name;
+    this.moveTimes = new Histogram(name, "ns");
+  }
+
+  // a new engine for one game
+  abstract Strategy newEngine();
+}
+
+// the results of the games of a tournament played so far: the points each
+// entrant scored against each other one (1 for a win, half for a tie) and
+// the games they played, with the totals over every game
+class Standings {
+  double[][] points;
+  long[][] played;
+  long games;
+  long moves;
+  long player1Wins;
+  long elapsedNanos;
+
+  // constructor for standings of the given number of entrants with no
+  // games played
+  Standings(int entrants) {
+    this.points = new double[entrants][entrants];
+    this.played = new long[entrants][entrants];
+  }
+
+  // EFFECT: counts the outcome of a finished game between the two
+  // entrants, the first of which was player1
+  void record(int first, int second, GameEngine game) {
+    int winner = game.winner();
+    this.games++;
+    this.moves += game.moves;
+    this.played[first][second]++;
+    this.played[second][first]++;
+    if (winner == BoardState.PLAYER1) {
+      this.player1Wins++;
+      this.points[first][second] += 1;
+    }
+    else if (winner == BoardState.PLAYER2) {
+      this.points[second][first] += 1;
+    }
+    else {
+      this.points[first][second] += 0.5;
+      this.points[second][first] += 0.5;
+    }
+  }
+
+  // EFFECT: adds the results of the other standings to these
+  void merge(Standings other) {
+    for (int i = 0; i < this.points.length; i++) {
+      for (int j = 0; j < this.points.length; j++) {
+        this.points[i][j] += other.points[i][j];
+        this.played[i][j] += other.played[i][j];
+      }
+    }
+    this.games += other.games;
+    this.moves += other.moves;
+    this.player1Wins += other.player1Wins;
+  }
+
+  // the points the entrant scored against everyone
+  double score(int entrant) {
+    double score = 0;
+    for (double points : this.points[entrant]) {
+      score += points;
+    }
+    return score;
+  }
+
+  // the games the entrant played
+  long gamesOf(int entrant) {
+    long games = 0;
+    for (long played : this.played[entrant]) {
+      games += played;
+    }
+    return games;
+  }
+
+  // the Elo rating of each entrant, averaging 0: the maximum-likelihood
+  // fit of the Bradley-Terry model to every result, found by Hunter's MM
+  // iteration. Each pair that played gets one extra tied game, so an
+  // entrant that won every game still has a finite rating
+  double[] ratings() {
+    int n = this.points.length;
+    double[] strength = new double[n];
+    Arrays.fill(strength, 1);
+    for (int round = 0; round < 10000; round++) {
+      double change = 0;
+      for (int i = 0; i < n; i++) {
+        double won = 0;
+        double expected = 0;
+        for (int j = 0; j < n; j++) {
+          if (this.played[i][j] > 0) {
+            won += this.points[i][j] + 0.5;
+            expected += (this.played[i][j] + 1) / (strength[i] + strength[j]);
+          }
+        }
+        double next = expected > 0 ? won / expected : 1;
+        change = Math.max(change, Math.abs(Math.log(next / strength[i])));
+        strength[i] = next;
+      }
+      if (change < 1e-12) {
+        break;
+      }
+    }
+
+    double[] ratings = new double[n];
+    double mean = 0;
+    for (int i = 0; i < n; i++) {
+      ratings[i] = 400 * Math.log10(strength[i]);
+      mean += ratings[i] / n;
+    }
+    for (int i = 0; i < n; i++) {
+      ratings[i] -= mean;
+    }
+    return ratings;
+  }
+
+  // the half-width of the 95% confidence interval of each of the given
+  // ratings, from the Fisher information of the games the entrant played
+  double[] margins(double[] ratings) {
+    int n = ratings.length;
+    double[] margins = new double[n];
+    for (int i = 0; i < n; i++) {
+      double information = 0;
+      for (int j = 0; j < n; j++) {
+        double expected = 1 / (1 + Math.pow(10, (ratings[j] - ratings[i]) / 400));
+        information += this.played[i][j] * expected * (1 - expected);
+      }
+      margins[i] = information > 0
+          ? 1.96 * 400 / Math.log(10) / Math.sqrt(information) : Double.POSITIVE_INFINITY;
+    }
+    return margins;
+  }
+
+  // games played per second of wall time
+  double gamesPerSecond() {
+    return this.games / (this.elapsedNanos / 1e9);
+  }
+}
+
+// plays games of a tournament on one thread, taking the next unplayed
+// game each time until none are left, so threads that draw quick games
+// play more of them
+class TournamentWorker implements Callable<Standings> {
+  Tournament tournament;
+  AtomicLong next;
+
+  // constructor for a worker taking games from the given counter
+  TournamentWorker(Tournament tournament, AtomicLong next) {
+    this.tournament = tournament;
+    this.next = next;
+  }
+
+  // plays games until every game has been taken
+  public Standings call() {
+    Standings standings = new Standings(this.tournament.entrants.length);
+    for (long game = this.next.getAndIncrement(); game < this.tournament.games();
+        game = this.next.getAndIncrement()) {
+      this.tournament.play(game, standings);
+    }
+    return standings;
+  }
+}
+
+// plays matches between entrants on headless GameEngines, in parallel on a
+// fixed number of threads (not a ForkJoinPool, whose workers would play
+// other games while waiting on a searching engine's own pool, and count
+// them in its move times): every pair of entrants (round robin), or the first entrant
+// against each of the others (gauntlet). Each pairing plays its games in
+// pairs that share a random seed, drawn from (seed, pair), with the
+// entrants taking turns to move first, so neither gets the better of the
+// first move or the random draws. Game i is the same game however the
+// games are spread across threads, as long as the engines are
+// deterministic (depth or playout budgets rather than time limits). Run
+// it with:
+//   java Tournament [size] [games per pairing] [seed] [threads] [roundrobin|gauntlet]
+class Tournament {
+  int size;
+  Entrant[] entrants;
+  int[][] pairings;
+  long gamesPerPairing;
+  long seed;
+
+  // constructor for a tournament of games of the given size, in which
+  // every pairing plays the given number of games
+  Tournament(int size, Entrant[] entrants, boolean gauntlet, long gamesPerPairing, long seed) {
+    if (entrants.length < 2) {
+      throw new IllegalArgumentException("a tournament needs two entrants");
+    }
+    this.size = size;
+    this.entrants = entrants;
+    this.gamesPerPairing = gamesPerPairing;
+    this.seed = seed;
+
+    ArrayList<int[]> pairings = new ArrayList<int[]>();
+    for (int i = 0; i < entrants.length; i++) {
+      for (int j = i + 1; j < entrants.length && (i == 0 || !gauntlet); j++) {
+        pairings.add(new int[] {i, j});
+      }
+    }
+    this.pairings = pairings.toArray(new int[pairings.size()][]);
+  }
+
+  public static void main(String[] args) {
+    int size = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+    long games = args.length > 1 ? Long.parseLong(args[1]) : 100;
+    long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+    int threads = args.length > 3 ? Integer.parseInt(args[3])
+        : Runtime.getRuntime().availableProcessors();
+    boolean gauntlet = args.length > 4 && args[4].equals("gauntlet");
+
+    // playout searches share one pool rather than each starting its own
+    final ForkJoinPool searches = new ForkJoinPool(threads);
+    Entrant[] entrants = {
+      new Entrant("alphabeta-distance") {
+        Strategy newEngine() {
+          return new AlphaBetaPlayer(3, 0, new DistanceEvaluator(), 1 << 16);
+        }
+      },
+      new Entrant("alphabeta-resistance") {
+        Strategy newEngine() {
+          return new AlphaBetaPlayer(3, 0, new ResistanceEvaluator(1e-3), 1 << 16);
+        }
+      },
+      new Entrant("mcts") {
+        Strategy newEngine() {
+          return new MctsPlayer(2000, 0, 1, searches);
+        }
+      },
+      new Entrant("random") {
+        Strategy newEngine() {
+          return new RandomStrategy();
+        }
+      }};
+
+    Tournament tournament = new Tournament(size, entrants, gauntlet, games, seed);
+    try {
+      System.out.print(tournament.report(tournament.run(threads)));
+    }
+    finally {
+      searches.shutdown();
+    }
+  }
+
+  // the number of games in the tournament
+  long games() {
+    return this.pairings.length * this.gamesPerPairing;
+  }
+
+  // the entrants of the numbered game, player1 first
+  int[] playersOf(long game) {
+    int[] pairing = this.pairings[(int) (game / this.gamesPerPairing)];
+    if (game % this.gamesPerPairing % 2 == 0) {
+      return pairing;
+    }
+    return new int[] {pairing[1], pairing[0]};
+  }
+
+  // the number of the pair of games, counted across every pairing, that
+  // the numbered game belongs to. With an odd number of games per pairing
+  // the last game of each pairing is a pair of its own
+  long pairOf(long game) {
+    long pairsPerPairing = (this.gamesPerPairing + 1) / 2;
+    return game / this.gamesPerPairing * pairsPerPairing + game % this.gamesPerPairing / 2;
+  }
+
+  // EFFECT: plays the numbered game to the end with new engines, timing
+  // every move, and counts it in the standings
+  GameEngine play(long game, Standings standings) {
+    int[] players = this.playersOf(game);
+    Entrant first = this.entrants[players[0]];
+    Entrant second = this.entrants[players[1]];
+    Strategy player1 = first.newEngine();
+    Strategy player2 = second.newEngine();
+
+    // both games of a pair draw from the same source
+    SplittableRandom random =
+        new SplittableRandom(this.seed ^ (this.pairOf(game) * 0x9E3779B97F4A7C15L));
+    GameEngine engine = new GameEngine(this.size);
+    while (!engine.isOver()) {
+      Entrant mover = engine.turn ? first : second;
+      long start = System.nanoTime();
+      int move = (engine.turn ? player1 : player2).chooseMove(engine, random);
+      mover.moveTimes.record(System.nanoTime() - start);
+      engine.applyMove(move);
+    }
+    standings.record(players[0], players[1], engine);
+    return engine;
+  }
+
+  // plays every game of the tournament on the given number of threads and
+  // times them
+  Standings run(int threads) {
+    ArrayList<TournamentWorker> workers = new ArrayList<TournamentWorker>();
+    AtomicLong next = new AtomicLong();
+    for (int i = 0; i < threads; i++) {
+      workers.add(new TournamentWorker(this, next));
+    }
+
+    long start = System.nanoTime();
+    Standings standings = new Standings(this.entrants.length);
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      for (Future<Standings> played : pool.invokeAll(workers)) {
+        standings.merge(played.get());
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("tournament was interrupted", e);
+    }
+    catch (ExecutionException e) {
+      throw new IllegalStateException("a game failed", e.getCause());
+    }
+    finally {
+      pool.shutdown();
+    }
+    standings.elapsedNanos = System.nanoTime() - start;
+    return standings;
+  }
+
+  // a table of the entrants by rating, with their scores and move times,
+  // followed by the totals
+  String report(Standings standings) {
+    double[] ratings = standings.ratings();
+    double[] margins = standings.margins(ratings);
+    Integer[] ranks = new Integer[this.entrants.length];
+    for (int i = 0; i < ranks.length; i++) {
+      ranks[i] = i;
+    }
+    Arrays.sort(ranks, new Comparator<Integer>() {
+      public int compare(Integer a, Integer b) {
+        return Double.compare(ratings[b], ratings[a]);
+      }
+    });
+
+    StringBuilder report = new StringBuilder(String.format(Locale.ROOT,
+        "%-22s %6s %6s %13s   %s%n", "entrant", "elo", "+/-", "score", "move ms p50/p90/p99/max"));
+    for (int i : ranks) {
+      Histogram times = this.entrants[i].moveTimes;
+      report.append(String.format(Locale.ROOT,
+          "%-22s %6.0f %6.0f %6.1f/%-6d   %.2f/%.2f/%.2f/%.2f%n",
+          this.entrants[i].name, ratings[i], margins[i], standings.score(i), standings.gamesOf(i),
+          times.percentile(50) / 1e6, times.percentile(90) / 1e6, times.percentile(99) / 1e6,
+          times.max() / 1e6));
+    }
+    report.append(String.format(Locale.ROOT,
+        "%d games of %dx%d in %.3f s (%.1f games/s), player1 won %.2f%%, %.2f moves/game%n",
+        standings.games, this.size, this.size, standings.elapsedNanos / 1e9,
+        standings.gamesPerSecond(), 100.0 * standings.player1Wins / standings.games,
+        (double) standings.moves / standings.games));
+    return report.toString();
+  }
+}
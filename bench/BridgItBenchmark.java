@@ -0,0 +1,580 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Random;
+
+import javalib.worldimages.*;
+
+
+// class representing the settings of a benchmark run, read from the
+// command line as --name value pairs
+class BenchmarkSettings {
+  int[] sizes = {5, 11, 51, 201, 1001};
+  String[] fills = {"empty", "random", "nearWin"};
+  String only = "";
+  int warmupIterations = 3;
+  int measurementIterations = 5;
+  long iterationNanos = 200000000L;
+  long seed = 42;
+  String out = "bench_output.json";
+
+  // constructor reading the settings from the command line
+  BenchmarkSettings(String[] args) {
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      String value = args[i + 1];
+      if (args[i].equals("--sizes")) {
+        String[] parts = value.split(",");
+        this.sizes = new int[parts.length];
+        for (int j = 0; j < parts.length; j++) {
+          this.sizes[j] = Integer.parseInt(parts[j].trim());
+        }
+      }
+      else if (args[i].equals("--fills")) {
+        this.fills = value.split(",");
+      }
+      else if (args[i].equals("--only")) {
+        this.only = value;
+      }
+      else if (args[i].equals("--warmup")) {
+        this.warmupIterations = Integer.parseInt(value);
+      }
+      else if (args[i].equals("--iterations")) {
+        this.measurementIterations = Integer.parseInt(value);
+      }
+      else if (args[i].equals("--millis")) {
+        this.iterationNanos = Long.parseLong(value) * 1000000L;
+      }
+      else if (args[i].equals("--seed")) {
+        this.seed = Long.parseLong(value);
+      }
+      else if (args[i].equals("--out")) {
+        this.out = value;
+      }
+      else {
+        throw new IllegalArgumentException("unknown option " + args[i]);
+      }
+    }
+  }
+
+  // should the benchmark with the given name run?
+  boolean includes(String name) {
+    return this.only.isEmpty() || ("," + this.only + ",").contains("," + name + ",");
+  }
+}
+
+// class representing a board filled for a benchmark. Every fill is made
+// through onMouseClicked so the tracker and scene cache stay consistent,
+// and random fills come from a fixed seed
+class BenchmarkBoard {
+  BridgIt game;
+  ArrayList<Posn> remaining;
+
+  // constructor for a board of the given size and fill
+  BenchmarkBoard(int size, String fill, long seed) {
+    this.game = new BridgIt(size);
+    this.remaining = new ArrayList<Posn>();
+
+    // collects the playable cells
+    for (int col = 1; col < size - 1; col++) {
+      for (int row = 1; row < size - 1; row++) {
+        if (this.game.grid.ownerAt(col, row) == BoardState.EMPTY) {
+          this.remaining.add(new Posn(col, row));
+        }
+      }
+    }
+    Collections.shuffle(this.remaining, new Random(seed));
+
+    if (fill.equals("random")) {
+      int half = this.remaining.size() / 2;
+      for (int i = 0; i < half; i++) {
+        this.click(this.remaining.remove(this.remaining.size() - 1));
+      }
+    }
+    else if (fill.equals("nearWin")) {
+      this.fillNearWin(size);
+    }
+    else if (!fill.equals("empty")) {
+      throw new IllegalArgumentException("unknown fill " + fill);
+    }
+  }
+
+  // EFFECT: lets player1 build the second row from the left edge up to one
+  // cell short of the right edge, while player2 answers along the second
+  // to last row
+  void fillNearWin(int size) {
+    for (int col = 1; col < size - 2; col += 2) {
+      this.claim(new Posn(col, 1));
+      this.claim(new Posn(col, size - 2));
+    }
+  }
+
+  // EFFECT: clicks the cell and removes it from the remaining cells
+  void claim(Posn cell) {
+    for (int i = 0; i < this.remaining.size(); i++) {
+      Posn p = this.remaining.get(i);
+      if (p.x == cell.x && p.y == cell.y) {
+        this.remaining.remove(i);
+        break;
+      }
+    }
+    this.click(cell);
+  }
+
+  // EFFECT: clicks the middle of the cell at the given column and row,
+  // moving the view to show it first if the board is drawn through one
+  void click(Posn cell) {
+    this.game.onMouseClicked(this.game.sceneCache.pointOf(cell.x, cell.y));
+  }
+}
+
+// represents one benchmarked operation. A batch prepares a fresh board
+// outside the timed region, then the operation runs once per index
+abstract class BenchmarkCase {
+  String name;
+  BenchmarkBoard board;
+  Object sink;
+
+  // constructor for a case with the given name
+  BenchmarkCase(String name) {
+    this.name = name;
+  }
+
+  // EFFECT: prepares a batch, returning how many operations it can run
+  int prepare(int size, String fill, long seed) {
+    this.board = new BenchmarkBoard(size, fill, seed);
+    return 1000;
+  }
+
+  // EFFECT: runs the i-th operation of the batch
+  abstract void run(int i);
+}
+
+// benchmarks building a board from scratch
+class InitializeGameCase extends BenchmarkCase {
+  InitializeGameCase() {
+    super("initializeGame");
+  }
+
+  int prepare(int size, String fill, long seed) {
+    super.prepare(size, fill, seed);
+    return 1;
+  }
+
+  void run(int i) {
+    this.board.game.initializeGame();
+    this.sink = this.board.game.grid;
+  }
+}
+
+// benchmarks starting a new game on the same board with the "r" key
+class ResetCase extends BenchmarkCase {
+  ResetCase() {
+    super("reset");
+  }
+
+  int prepare(int size, String fill, long seed) {
+    super.prepare(size, fill, seed);
+    return 1;
+  }
+
+  void run(int i) {
+    this.board.game.onKeyEvent("r");
+  }
+}
+
+// benchmarks building a headless game, which needs no cells and so can
+// be measured on boards far larger than the world can show. The fill is
+// ignored: a new game always starts on the lattice
+class NewGameEngineCase extends BenchmarkCase {
+  int size;
+
+  NewGameEngineCase() {
+    super("newGameEngine");
+  }
+
+  int prepare(int size, String fill, long seed) {
+    this.size = size;
+    return 1;
+  }
+
+  void run(int i) {
+    this.sink = new GameEngine(this.size);
+  }
+}
+
+// benchmarks relinking the neighbors of every cell. The world's own
+// cells are views that find their neighbors by index arithmetic, so this
+// runs on a board of linked cells copied from the filled one, which is
+// the only kind updateLocation still links
+class UpdateLocationCase extends BenchmarkCase {
+  BridgIt linked;
+
+  UpdateLocationCase() {
+    super("updateLocation");
+  }
+
+  int prepare(int size, String fill, long seed) {
+    super.prepare(size, fill, seed);
+    ArrayList<ArrayList<Cell>> cells = new ArrayList<ArrayList<Cell>>();
+    for (int col = 0; col < size; col++) {
+      ArrayList<Cell> column = new ArrayList<Cell>();
+      for (int row = 0; row < size; row++) {
+        column.add(new Cell(this.board.game.board.get(col).get(row).color,
+            null, null, null, null, new Posn(col, row)));
+      }
+      cells.add(column);
+    }
+    this.linked = new BridgIt(cells, true, size);
+    return 1;
+  }
+
+  void run(int i) {
+    this.linked.updateLocation();
+  }
+}
+
+// benchmarks claiming a cell with a click
+class OnMouseClickedCase extends BenchmarkCase {
+  OnMouseClickedCase() {
+    super("onMouseClicked");
+  }
+
+  int prepare(int size, String fill, long seed) {
+    super.prepare(size, fill, seed);
+    return this.board.remaining.size();
+  }
+
+  void run(int i) {
+    this.board.click(this.board.remaining.get(i));
+  }
+}
+
+// benchmarks looking up whether either player has a path
+class CheckPathCase extends BenchmarkCase {
+  CheckPathCase() {
+    super("checkPath");
+  }
+
+  void run(int i) {
+    this.sink = this.board.game.checkPath();
+  }
+}
+
+// benchmarks the full traversal kept as the reference for checkPath
+class CheckPathTraversalCase extends BenchmarkCase {
+  CheckPathTraversalCase() {
+    super("checkPathTraversal");
+  }
+
+  int prepare(int size, String fill, long seed) {
+    super.prepare(size, fill, seed);
+    return 10;
+  }
+
+  void run(int i) {
+    this.sink = this.board.game.checkHorizontalPath() || this.board.game.checkVerticalPath();
+  }
+}
+
+// benchmarks checking for empty cells
+class AnyWhiteLeftCase extends BenchmarkCase {
+  AnyWhiteLeftCase() {
+    super("anyWhiteLeft");
+  }
+
+  void run(int i) {
+    this.sink = this.board.game.anyWhiteLeft();
+  }
+}
+
+// benchmarks a frame after one cell changed, placing an image per cell
+class MakeSceneCase extends BenchmarkCase {
+  MakeSceneCase() {
+    super("makeScene");
+  }
+
+  int prepare(int size, String fill, long seed) {
+    super.prepare(size, fill, seed);
+    this.board.game.sceneCache.raster = null;
+    this.board.game.makeScene();
+    return 1000;
+  }
+
+  void run(int i) {
+    this.board.game.sceneCache.markDirty(1, 1);
+    this.sink = this.board.game.makeScene();
+  }
+}
+
+// benchmarks a frame that redraws the whole board, placing an image per
+// cell
+class MakeSceneFullCase extends BenchmarkCase {
+  MakeSceneFullCase() {
+    super("makeSceneFull");
+  }
+
+  int prepare(int size, String fill, long seed) {
+    super.prepare(size, fill, seed);
+    this.board.game.sceneCache.raster = null;
+    return 1;
+  }
+
+  void run(int i) {
+    this.board.game.sceneCache.invalidate();
+    this.sink = this.board.game.makeScene();
+  }
+}
+
+// benchmarks a frame after one cell changed, drawing through a viewport
+// showing the whole board
+class MakeRasterSceneCase extends BenchmarkCase {
+  MakeRasterSceneCase() {
+    super("makeRasterScene");
+  }
+
+  int prepare(int size, String fill, long seed) {
+    super.prepare(size, fill, seed);
+    this.board.game.sceneCache.raster = new RasterRenderer(this.board.game.grid);
+    this.board.game.makeScene();
+    return 1000;
+  }
+
+  void run(int i) {
+    this.board.game.sceneCache.markDirty(1, 1);
+    this.sink = this.board.game.makeScene();
+  }
+}
+
+// benchmarks a frame that redraws the whole window of a viewport showing
+// the whole board, which costs the window's pixels however large the
+// board is
+class MakeRasterSceneFullCase extends BenchmarkCase {
+  MakeRasterSceneFullCase() {
+    super("makeRasterSceneFull");
+  }
+
+  int prepare(int size, String fill, long seed) {
+    super.prepare(size, fill, seed);
+    this.board.game.sceneCache.raster = new RasterRenderer(this.board.game.grid);
+    return 1;
+  }
+
+  void run(int i) {
+    this.board.game.sceneCache.invalidate();
+    this.sink = this.board.game.makeScene();
+  }
+}
+
+// runs every benchmark case over each board size and fill and writes the
+// results as JSON in the layout JMH uses, so runs can be compared across
+// releases. Compile it together with the game sources and run:
+//   java -cp javalib.jar:tester.jar:. BridgItBenchmark --sizes 5,11 --out results.json
+class BridgItBenchmark {
+  BenchmarkSettings settings;
+  ArrayList<BenchmarkCase> cases;
+  ArrayList<String> results;
+
+  // constructor for a run with the given settings
+  BridgItBenchmark(BenchmarkSettings settings) {
+    this.settings = settings;
+    this.cases = new ArrayList<BenchmarkCase>();
+    this.results = new ArrayList<String>();
+    this.cases.add(new InitializeGameCase());
+    this.cases.add(new ResetCase());
+    this.cases.add(new NewGameEngineCase());
+    this.cases.add(new UpdateLocationCase());
+    this.cases.add(new OnMouseClickedCase());
+    this.cases.add(new CheckPathCase());
+    this.cases.add(new CheckPathTraversalCase());
+    this.cases.add(new AnyWhiteLeftCase());
+    this.cases.add(new MakeSceneCase());
+    this.cases.add(new MakeSceneFullCase());
+    this.cases.add(new MakeRasterSceneCase());
+    this.cases.add(new MakeRasterSceneFullCase());
+  }
+
+  public static void main(String[] args) throws IOException {
+    BridgItBenchmark benchmark = new BridgItBenchmark(new BenchmarkSettings(args));
+    benchmark.runAll();
+    benchmark.write();
+  }
+
+  // EFFECT: runs every selected case at every size and fill
+  void runAll() {
+    for (BenchmarkCase c : this.cases) {
+      if (!this.settings.includes(c.name)) {
+        continue;
+      }
+      for (int size : this.settings.sizes) {
+        for (String fill : this.settings.fills) {
+          this.measure(c, size, fill);
+        }
+      }
+    }
+  }
+
+  // EFFECT: measures one case, recording nanoseconds per operation for
+  // each measurement iteration
+  void measure(BenchmarkCase c, int size, String fill) {
+    int total = this.settings.warmupIterations + this.settings.measurementIterations;
+    double[] scores = new double[this.settings.measurementIterations];
+
+    for (int iteration = 0; iteration < total; iteration++) {
+      long elapsed = 0;
+      long ops = 0;
+      long batch = 0;
+
+      // runs batches until the iteration has taken long enough
+      while (elapsed < this.settings.iterationNanos) {
+        int count = c.prepare(size, fill, this.settings.seed + batch);
+        batch++;
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+          c.run(i);
+        }
+        elapsed += System.nanoTime() - start;
+        ops += count;
+
+        // an operation with nothing to do still counts as time spent
+        if (count == 0) {
+          elapsed += 1;
+        }
+      }
+
+      if (iteration >= this.settings.warmupIterations) {
+        scores[iteration - this.settings.warmupIterations] = ops == 0 ? 0 : (double) elapsed / ops;
+      }
+    }
+
+    this.record(c.name, size, fill, scores);
+  }
+
+  // EFFECT: records the scores of one case as a JSON object, with the
+  // error as the 99.9% confidence half-width
+  void record(String name, int size, String fill, double[] scores) {
+    double mean = 0;
+    for (double score : scores) {
+      mean += score;
+    }
+    mean /= scores.length;
+
+    double variance = 0;
+    for (double score : scores) {
+      variance += (score - mean) * (score - mean);
+    }
+    double error = scores.length < 2 ? Double.NaN
+        : this.studentT(0.9995, scores.length - 1)
+            * Math.sqrt(variance / (scores.length - 1)) / Math.sqrt(scores.length);
+
+    StringBuilder raw = new StringBuilder();
+    for (int i = 0; i < scores.length; i++) {
+      raw.append(i == 0 ? "" : ", ").append(String.format(Locale.ROOT, "%.3f", scores[i]));
+    }
+
+    System.out.println(String.format(Locale.ROOT, "%-20s size=%-5d fill=%-8s %14.3f ns/op",
+        name, size, fill, mean));
+    this.results.add(String.format(Locale.ROOT,
+        "  {\n    \"benchmark\" : \"BridgIt.%s\",\n    \"mode\" : \"avgt\",\n"
+        + "    \"warmupIterations\" : %d,\n    \"measurementIterations\" : %d,\n"
+        + "    \"params\" : { \"size\" : \"%d\", \"fill\" : \"%s\", \"seed\" : \"%d\" },\n"
+        + "    \"primaryMetric\" : { \"score\" : %.3f, \"scoreError\" : %s, "
+        + "\"scoreUnit\" : \"ns/op\", \"rawData\" : [ [ %s ] ] }\n  }",
+        name, this.settings.warmupIterations, this.settings.measurementIterations,
+        size, fill, this.settings.seed, mean,
+        Double.isNaN(error) ? "\"NaN\"" : String.format(Locale.ROOT, "%.3f", error), raw));
+  }
+
+  // the p-quantile of Student's t distribution with the given degrees of
+  // freedom, found by bisection on its distribution function (the quantile
+  // JMH takes for its error, so few iterations give a wide bound)
+  double studentT(double p, int freedom) {
+    double low = 0;
+    double high = 1;
+    while (this.studentTDistribution(high, freedom) < p) {
+      high *= 2;
+    }
+    for (int i = 0; i < 100; i++) {
+      double mid = (low + high) / 2;
+      if (this.studentTDistribution(mid, freedom) < p) {
+        low = mid;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return (low + high) / 2;
+  }
+
+  // the probability that Student's t with the given degrees of freedom is
+  // at most t, for t at least 0
+  double studentTDistribution(double t, int freedom) {
+    return 1 - 0.5 * this.incompleteBeta(freedom / (freedom + t * t), freedom / 2.0, 0.5);
+  }
+
+  // the regularized incomplete beta function I_x(a, b), summed as a
+  // continued fraction (Numerical Recipes, section 6.4)
+  double incompleteBeta(double x, double a, double b) {
+    if (x <= 0 || x >= 1) {
+      return x <= 0 ? 0 : 1;
+    }
+    double front = Math.exp(this.logGamma(a + b) - this.logGamma(a) - this.logGamma(b)
+        + a * Math.log(x) + b * Math.log(1 - x));
+    if (x < (a + 1) / (a + b + 2)) {
+      return front * this.betaFraction(x, a, b) / a;
+    }
+    else {
+      return 1 - front * this.betaFraction(1 - x, b, a) / b;
+    }
+  }
+
+  // the continued fraction of the incomplete beta function, by Lentz's method
+  double betaFraction(double x, double a, double b) {
+    double tiny = 1e-300;
+    double c = 1;
+    double d = 1 - (a + b) * x / (a + 1);
+    d = 1 / (Math.abs(d) < tiny ? tiny : d);
+    double result = d;
+    for (int m = 1; m <= 300; m++) {
+      for (int half = 0; half < 2; half++) {
+        double numerator = half == 0
+            ? m * (b - m) * x / ((a + 2 * m - 1) * (a + 2 * m))
+            : -(a + m) * (a + b + m) * x / ((a + 2 * m) * (a + 2 * m + 1));
+        d = 1 + numerator * d;
+        d = 1 / (Math.abs(d) < tiny ? tiny : d);
+        c = 1 + numerator / c;
+        c = Math.abs(c) < tiny ? tiny : c;
+        result *= d * c;
+      }
+      if (Math.abs(d * c - 1) < 1e-15) {
+        break;
+      }
+    }
+    return result;
+  }
+
+  // the log of the gamma function, by the Lanczos approximation
+  double logGamma(double x) {
+    double[] coefficients = {76.18009172947146, -86.50532032941677, 24.01409824083091,
+        -1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5};
+    double series = 1.000000000190015;
+    for (int i = 0; i < coefficients.length; i++) {
+      series += coefficients[i] / (x + i + 1);
+    }
+    double shifted = x + 5.5;
+    return (x + 0.5) * Math.log(shifted) - shifted + Math.log(2.5066282746310005 * series / x);
+  }
+
+  // EFFECT: writes the recorded results to the output file
+  void write() throws IOException {
+    PrintWriter out = new PrintWriter(new FileWriter(this.settings.out));
+    out.println("[");
+    for (int i = 0; i < this.results.size(); i++) {
+      out.println(this.results.get(i) + (i < this.results.size() - 1 ? "," : ""));
+    }
+    out.println("]");
+    out.close();
+  }
+}
@@ -0,0 +1,29 @@
+import bridgit.jmh.BoardOperation;
+
+// a case of BridgItBenchmark as an operation the JMH benchmarks can run
+public class CaseOperation implements BoardOperation {
+  BenchmarkCase benchmarkCase;
+
+  // constructor for the case with the given name
+  public CaseOperation(String name) {
+    for (BenchmarkCase c : new BridgItBenchmark(new BenchmarkSettings(new String[0])).cases) {
+      if (c.name.equals(name)) {
+        this.benchmarkCase = c;
+      }
+    }
+    if (this.benchmarkCase == null) {
+      throw new IllegalArgumentException("unknown benchmark " + name);
+    }
+  }
+
+  // EFFECT: prepares a batch of the case
+  public int prepare(int size, String fill, long seed) {
+    return this.benchmarkCase.prepare(size, fill, seed);
+  }
+
+  // EFFECT: runs the i-th operation of the batch
+  public Object run(int i) {
+    this.benchmarkCase.run(i);
+    return this.benchmarkCase.sink;
+  }
+}
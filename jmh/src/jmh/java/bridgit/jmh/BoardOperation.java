@@ -0,0 +1,15 @@
+package bridgit.jmh;
+
+// one benchmarked operation of the game, as seen from the benchmarks. The
+// game and its benchmark cases live in the default package, which code in
+// a package cannot name, so the benchmarks reach them through this
+// interface (implemented by CaseOperation)
+public interface BoardOperation {
+
+  // EFFECT: prepares a batch on a fresh board, returning how many
+  // operations it can run
+  int prepare(int size, String fill, long seed);
+
+  // EFFECT: runs the i-th operation of the batch, returning its result
+  Object run(int i);
+}
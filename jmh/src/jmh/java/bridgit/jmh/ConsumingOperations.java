@@ -0,0 +1,68 @@
+package bridgit.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// benchmarks operations that use up the board they run on (clicks claim
+// cells, setups replace the board). Each batch gets a freshly filled
+// board, made outside the measured time once the last batch runs out,
+// with the seed moving on so random fills differ from batch to batch
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ConsumingOperations {
+
+  @Param({"initializeGame", "reset", "newGameEngine", "updateLocation", "onMouseClicked",
+      "makeSceneFull", "makeRasterSceneFull"})
+  String operation;
+
+  @Param({"5", "11", "51", "201", "1001"})
+  int size;
+
+  @Param({"empty", "random", "nearWin"})
+  String fill;
+
+  @Param({"42"})
+  long seed;
+
+  BoardOperation board;
+  long batch;
+  int count;
+  int next;
+
+  // EFFECT: finds the operation for the trial
+  @Setup
+  public void find() {
+    this.board = Operations.named(this.operation);
+  }
+
+  // EFFECT: fills a new board when the current batch has run out
+  @Setup(Level.Invocation)
+  public void refill() {
+    if (this.next >= this.count) {
+      this.count = this.board.prepare(this.size, this.fill, this.seed + this.batch);
+      this.batch++;
+      this.next = 0;
+      if (this.count == 0) {
+        throw new IllegalStateException(this.operation + " has nothing to run on a "
+            + this.fill + " board of size " + this.size);
+      }
+    }
+  }
+
+  @Benchmark
+  public Object run() {
+    Object result = this.board.run(this.next);
+    this.next++;
+    return result;
+  }
+}
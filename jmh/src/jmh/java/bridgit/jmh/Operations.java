@@ -0,0 +1,23 @@
+package bridgit.jmh;
+
+import java.lang.reflect.InvocationTargetException;
+
+// finds the benchmark case with a given name in the default package
+final class Operations {
+  private Operations() {}
+
+  // the operation of the case with the given name
+  static BoardOperation named(String name) {
+    try {
+      return (BoardOperation) Class.forName("CaseOperation")
+          .getConstructor(String.class).newInstance(name);
+    }
+    catch (ClassNotFoundException | NoSuchMethodException | InstantiationException
+        | IllegalAccessException e) {
+      throw new IllegalStateException("cannot load the benchmark cases", e);
+    }
+    catch (InvocationTargetException e) {
+      throw new IllegalArgumentException(e.getCause().getMessage(), e.getCause());
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package bridgit.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// benchmarks operations that leave the board as they found it, so one
+// filled board serves the whole trial
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RepeatedOperations {
+
+  @Param({"checkPath", "checkPathTraversal", "anyWhiteLeft", "makeScene",
+      "makeRasterScene"})
+  String operation;
+
+  @Param({"5", "11", "51", "201", "1001"})
+  int size;
+
+  @Param({"empty", "random", "nearWin"})
+  String fill;
+
+  @Param({"42"})
+  long seed;
+
+  BoardOperation board;
+
+  // EFFECT: fills the board once for the trial
+  @Setup
+  public void fill() {
+    this.board = Operations.named(this.operation);
+    this.board.prepare(this.size, this.fill, this.seed);
+  }
+
+  @Benchmark
+  public Object run() {
+    return this.board.run(0);
+  }
+}